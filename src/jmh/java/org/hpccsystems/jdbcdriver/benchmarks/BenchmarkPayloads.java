@@ -0,0 +1,102 @@
+package org.hpccsystems.jdbcdriver.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.hpccsystems.jdbcdriver.HPCCConnection;
+import org.hpccsystems.jdbcdriver.HPCCJDBCUtils;
+import org.hpccsystems.jdbcdriver.HPCCResultSet;
+
+/**
+ * WsSQL result payloads for the benchmarks, built from a recorded response (wssqlresult.xml):
+ * the recorded schema followed by the recorded rows repeated up to the requested row count.
+ */
+public class BenchmarkPayloads
+{
+    private static final String RECORDEDRESULT = "wssqlresult.xml";
+    private static final String DATASETSTART = "<Dataset name='WsSQLResult'>";
+    private static final String DATASETEND = "</Dataset>";
+
+    private static String       schema;
+    private static List<String> recordedRows;
+
+    private static synchronized void loadRecordedResult() throws IOException
+    {
+        if (recordedRows != null)
+            return;
+
+        InputStream in = BenchmarkPayloads.class.getResourceAsStream(RECORDEDRESULT);
+        if (in == null)
+            throw new IOException("Recorded WsSQL result not found: " + RECORDEDRESULT);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try
+        {
+            byte [] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) != -1)
+                bytes.write(buffer, 0, length);
+        }
+        finally
+        {
+            in.close();
+        }
+
+        String recorded = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        int datasetStart = recorded.indexOf(DATASETSTART);
+        int datasetEnd = recorded.indexOf(DATASETEND, datasetStart);
+        schema = recorded.substring(0, datasetStart);
+
+        List<String> rows = new ArrayList<String>();
+        int rowStart = recorded.indexOf("<Row>", datasetStart);
+        while (rowStart >= 0 && rowStart < datasetEnd)
+        {
+            int rowEnd = recorded.indexOf("</Row>", rowStart) + "</Row>".length();
+            rows.add(recorded.substring(rowStart, rowEnd));
+            rowStart = recorded.indexOf("<Row>", rowEnd);
+        }
+        recordedRows = rows;
+    }
+
+    /**
+     * Raw WsSQL result as passed to HPCCResultSet.parseResult: schema, result dataset and row count dataset.
+     */
+    public static String createResult(int rowCount) throws IOException
+    {
+        loadRecordedResult();
+
+        StringBuilder payload = new StringBuilder(schema.length() + rowCount * 400);
+        payload.append(schema).append(DATASETSTART);
+        for (int i = 0; i < rowCount; i++)
+            payload.append(recordedRows.get(i % recordedRows.size()));
+        payload.append(DATASETEND);
+        payload.append("<Dataset name='WsSQLCount'><Row><WSSQLSelectQueryResultCount>").append(rowCount)
+               .append("</WSSQLSelectQueryResultCount></Row></Dataset>");
+
+        return payload.toString();
+    }
+
+    /**
+     * Connection used only for its result parsing configuration, no HPCC server is contacted.
+     */
+    public static HPCCConnection createOfflineConnection(String resultParser, boolean columnarStorage)
+    {
+        HPCCJDBCUtils.initTracing("OFF", false);
+
+        Properties props = new Properties();
+        props.setProperty("ServerAddress", "");
+        props.setProperty("ResultParser", resultParser);
+        props.setProperty("ColumnarStorage", String.valueOf(columnarStorage));
+        return new HPCCConnection(props);
+    }
+
+    public static HPCCResultSet createResultSet(HPCCConnection connection)
+    {
+        return new HPCCResultSet(connection, "W20240101-000000", "persons");
+    }
+}
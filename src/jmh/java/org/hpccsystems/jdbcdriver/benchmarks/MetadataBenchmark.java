@@ -0,0 +1,107 @@
+package org.hpccsystems.jdbcdriver.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hpccsystems.jdbcdriver.HPCCConnection;
+import org.hpccsystems.jdbcdriver.HPCCDriver;
+import org.hpccsystems.jdbcdriver.HPCCJDBCUtils;
+import org.hpccsystems.jdbcdriver.HPCCResultSet;
+import org.hpccsystems.jdbcdriver.HPCCResultSetMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Column lookups on result set metadata and the SQL/XSD/ECL type mappings in HPCCJDBCUtils.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MetadataBenchmark
+{
+    private static final String [] LABELS      = {"personid", "firstname", "zip", "active"};
+    private static final String [] XSDTYPES    = {"xs:long", "string15", "xs:decimal", "xs:boolean"};
+    private static final String [] ECLTYPES    = {"UNSIGNED8", "STRING15", "DECIMAL10_2", "BOOLEAN"};
+    private static final int []    SQLTYPES    = {java.sql.Types.BIGINT, java.sql.Types.VARCHAR, java.sql.Types.DECIMAL, java.sql.Types.BOOLEAN};
+
+    private HPCCResultSetMetadata metadata;
+    private int                   columnCount;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        HPCCConnection connection = BenchmarkPayloads.createOfflineConnection(HPCCDriver.RESULTPARSERSTAX, false);
+        HPCCResultSet resultSet = BenchmarkPayloads.createResultSet(connection);
+        resultSet.parseResult(BenchmarkPayloads.createResult(1));
+        metadata = (HPCCResultSetMetadata) resultSet.getMetaData();
+        columnCount = metadata.getColumnCount();
+    }
+
+    @Benchmark
+    public void getColumnIndex(Blackhole bh)
+    {
+        for (String label : LABELS)
+            bh.consume(metadata.getColumnIndex(label));
+    }
+
+    @Benchmark
+    public void getColByNameOrAlias(Blackhole bh)
+    {
+        for (String label : LABELS)
+            bh.consume(metadata.getColByNameOrAlias(label));
+    }
+
+    @Benchmark
+    public void getColumnType(Blackhole bh) throws Exception
+    {
+        for (int column = 1; column <= columnCount; column++)
+            bh.consume(metadata.getColumnType(column));
+    }
+
+    @Benchmark
+    public void getColumnConverter(Blackhole bh) throws Exception
+    {
+        for (int column = 1; column <= columnCount; column++)
+            bh.consume(metadata.getColumnConverter(column));
+    }
+
+    @Benchmark
+    public void mapXSDTypeName2SQLtype(Blackhole bh)
+    {
+        for (String xsdtype : XSDTYPES)
+            bh.consume(HPCCJDBCUtils.mapXSDTypeName2SQLtype(xsdtype));
+    }
+
+    @Benchmark
+    public void mapECLtype2SQLtype(Blackhole bh)
+    {
+        for (String ecltype : ECLTYPES)
+            bh.consume(HPCCJDBCUtils.mapECLtype2SQLtype(ecltype));
+    }
+
+    @Benchmark
+    public void convertSQLtype2JavaClassName(Blackhole bh)
+    {
+        for (int sqltype : SQLTYPES)
+            bh.consume(HPCCJDBCUtils.convertSQLtype2JavaClassName(sqltype));
+    }
+
+    @Benchmark
+    public void getSQLTypeName(Blackhole bh) throws Exception
+    {
+        for (int sqltype : SQLTYPES)
+            bh.consume(HPCCJDBCUtils.getSQLTypeName(sqltype));
+    }
+}
@@ -0,0 +1,86 @@
+package org.hpccsystems.jdbcdriver.benchmarks;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+import org.hpccsystems.jdbcdriver.HPCCPreparedStatement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parameter serialization performed for every bound value of a prepared statement execution.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PreparedStatementBenchmark
+{
+    private Object  intValue        = Integer.valueOf(123456);
+    private Object  longValue       = Long.valueOf(9876543210L);
+    private Object  doubleValue     = Double.valueOf(0.8125);
+    private Object  decimalValue    = new BigDecimal("10234.56");
+    private Object  stringValue     = "Boca Raton";
+    private Object  booleanValue    = Boolean.TRUE;
+    private Object  dateValue       = Date.valueOf("2024-01-01");
+    private Object  timestampValue  = Timestamp.valueOf("2024-01-01 12:30:45");
+
+    @Benchmark
+    public String integerToString() throws Exception
+    {
+        return HPCCPreparedStatement.primitiveToString(intValue);
+    }
+
+    @Benchmark
+    public String longToString() throws Exception
+    {
+        return HPCCPreparedStatement.primitiveToString(longValue);
+    }
+
+    @Benchmark
+    public String doubleToString() throws Exception
+    {
+        return HPCCPreparedStatement.primitiveToString(doubleValue);
+    }
+
+    @Benchmark
+    public String bigDecimalToString() throws Exception
+    {
+        return HPCCPreparedStatement.primitiveToString(decimalValue);
+    }
+
+    @Benchmark
+    public String stringToString() throws Exception
+    {
+        return HPCCPreparedStatement.primitiveToString(stringValue);
+    }
+
+    @Benchmark
+    public String booleanToString() throws Exception
+    {
+        return HPCCPreparedStatement.primitiveToString(booleanValue);
+    }
+
+    @Benchmark
+    public String dateToString() throws Exception
+    {
+        return HPCCPreparedStatement.primitiveToString(dateValue);
+    }
+
+    @Benchmark
+    public String timestampToString() throws Exception
+    {
+        return HPCCPreparedStatement.primitiveToString(timestampValue);
+    }
+}
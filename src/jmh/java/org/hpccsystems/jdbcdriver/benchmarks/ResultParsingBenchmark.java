@@ -0,0 +1,79 @@
+package org.hpccsystems.jdbcdriver.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hpccsystems.jdbcdriver.HPCCConnection;
+import org.hpccsystems.jdbcdriver.HPCCDriver;
+import org.hpccsystems.jdbcdriver.HPCCResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of WsSQL result windows of several sizes into an HPCCResultSet.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultParsingBenchmark
+{
+    @Param({"100", "10000", "100000"})
+    public int              rows;
+
+    private String          result;
+    private HPCCConnection  connection;
+
+    @State(Scope.Benchmark)
+    public static class ParserConfig
+    {
+        @Param({HPCCDriver.RESULTPARSERSTAX, HPCCDriver.RESULTPARSERDOM})
+        public String           parser;
+
+        private HPCCConnection  connection;
+
+        @Setup(Level.Trial)
+        public void setup()
+        {
+            connection = BenchmarkPayloads.createOfflineConnection(parser, false);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        result = BenchmarkPayloads.createResult(rows);
+        connection = BenchmarkPayloads.createOfflineConnection(HPCCDriver.RESULTPARSERDOM, false);
+    }
+
+    /*
+     * The path taken for every statement result: schema, rows and row count parsed with the configured parser.
+     */
+    @Benchmark
+    public int parseResult(ParserConfig config) throws Exception
+    {
+        HPCCResultSet resultSet = BenchmarkPayloads.createResultSet(config.connection);
+        return resultSet.parseResult(result);
+    }
+
+    /*
+     * DOM document based parsing, independent of the ResultParser setting.
+     */
+    @Benchmark
+    public int parseDataset() throws Exception
+    {
+        HPCCResultSet resultSet = BenchmarkPayloads.createResultSet(connection);
+        return resultSet.parseDataset("<root>" + result + "</root>");
+    }
+}
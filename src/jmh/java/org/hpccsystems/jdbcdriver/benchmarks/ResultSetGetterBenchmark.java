@@ -0,0 +1,165 @@
+package org.hpccsystems.jdbcdriver.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hpccsystems.jdbcdriver.HPCCConnection;
+import org.hpccsystems.jdbcdriver.HPCCDriver;
+import org.hpccsystems.jdbcdriver.HPCCJDBCUtils;
+import org.hpccsystems.jdbcdriver.HPCCResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Typed getters over a parsed result window, each invocation walks every row once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultSetGetterBenchmark
+{
+    private static final int ROWS            = 10000;
+
+    //column indexes into the recorded wssqlresult.xml schema
+    private static final int PERSONID        = 1;
+    private static final int FIRSTNAME       = 2;
+    private static final int CITY            = 5;
+    private static final int AGE             = 8;
+    private static final int BALANCE         = 9;
+    private static final int SCORE           = 10;
+
+    @Param({"false", "true"})
+    public boolean          columnarStorage;
+
+    private String          result;
+    private HPCCConnection  connection;
+    private HPCCResultSet   resultSet;
+    private int             columnCount;
+    private int []          columnTypes;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        result = BenchmarkPayloads.createResult(ROWS);
+        connection = BenchmarkPayloads.createOfflineConnection(HPCCDriver.RESULTPARSERSTAX, columnarStorage);
+    }
+
+    /*
+     * Result sets are forward only, each invocation walks a freshly parsed window. The window
+     * is large enough for the setup cost to stay out of the measured time without distortion.
+     */
+    @Setup(Level.Invocation)
+    public void parseWindow() throws Exception
+    {
+        resultSet = BenchmarkPayloads.createResultSet(connection);
+        resultSet.parseResult(result);
+        columnCount = resultSet.getMetaData().getColumnCount();
+
+        if (columnTypes == null)
+        {
+            columnTypes = new int[columnCount];
+            for (int column = 1; column <= columnCount; column++)
+                columnTypes[column - 1] = resultSet.getMetaData().getColumnType(column);
+        }
+    }
+
+    @Benchmark
+    public void getString(Blackhole bh) throws Exception
+    {
+        while (resultSet.next())
+        {
+            bh.consume(resultSet.getString(FIRSTNAME));
+            bh.consume(resultSet.getString(CITY));
+        }
+    }
+
+    @Benchmark
+    public void getStringByLabel(Blackhole bh) throws Exception
+    {
+        while (resultSet.next())
+        {
+            bh.consume(resultSet.getString("firstname"));
+            bh.consume(resultSet.getString("city"));
+        }
+    }
+
+    @Benchmark
+    public void getInt(Blackhole bh) throws Exception
+    {
+        while (resultSet.next())
+            bh.consume(resultSet.getInt(AGE));
+    }
+
+    @Benchmark
+    public void getLong(Blackhole bh) throws Exception
+    {
+        while (resultSet.next())
+            bh.consume(resultSet.getLong(PERSONID));
+    }
+
+    @Benchmark
+    public void getDouble(Blackhole bh) throws Exception
+    {
+        while (resultSet.next())
+            bh.consume(resultSet.getDouble(SCORE));
+    }
+
+    @Benchmark
+    public void getBigDecimal(Blackhole bh) throws Exception
+    {
+        while (resultSet.next())
+            bh.consume(resultSet.getBigDecimal(BALANCE));
+    }
+
+    @Benchmark
+    public void getObject(Blackhole bh) throws Exception
+    {
+        while (resultSet.next())
+        {
+            for (int column = 1; column <= columnCount; column++)
+                bh.consume(resultSet.getObject(column));
+        }
+    }
+
+    /*
+     * Baseline for getObject: the reflective String constructor lookup it performed for every cell
+     * before conversions were resolved per column.
+     */
+    @Benchmark
+    public void getObjectReflective(Blackhole bh) throws Exception
+    {
+        while (resultSet.next())
+        {
+            for (int column = 1; column <= columnCount; column++)
+                bh.consume(reflectiveConvert(columnTypes[column - 1], resultSet.getString(column)));
+        }
+    }
+
+    private static Object reflectiveConvert(int type, String strrepresentation)
+    {
+        if (strrepresentation == null)
+            return null;
+
+        try
+        {
+            return Class.forName(HPCCJDBCUtils.convertSQLtype2JavaClassName(type)).getConstructor(String.class).newInstance(strrepresentation);
+        }
+        catch (Exception e)
+        {
+            return strrepresentation;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import java.util.regex.Pattern;
 import org.hpccsystems.ws.client.wrappers.gen.wssql.HPCCColumnWrapper;
 import org.hpccsystems.ws.client.wrappers.gen.wssql.HPCCTableWrapper;
 import org.hpccsystems.ws.client.utils.FileFormat;
+import org.hpccsystems.ws.client.wrappers.wsdfu.DFULogicalFileWrapper;
 
 public class DFUFile
 {
@@ -60,7 +61,7 @@ public class DFUFile
     private String              csvSeparate = null;
     private String              csvTerminate = null;
     private String              csvQuote = null;
-    private String              ecl = null;
+    private volatile String     ecl = null;
     private Properties          fields = new Properties();
     private Properties          keyedColumns = new Properties();
     private Properties          nonKeyedColumns = new Properties();
@@ -129,6 +130,23 @@ public class DFUFile
 
     public DFUFile() {}
 
+    /**
+     * Light-weight DFUFile built from a WsDFU logical file listing entry, record definition is not populated.
+     */
+    public DFUFile(DFULogicalFileWrapper logicalFile)
+    {
+        String contentType = logicalFile.getContentType();
+        setFormat(FileFormat.getFileFormat(contentType));
+        setFullyQualifiedName(logicalFile.getName());
+        setOwner(logicalFile.getOwner());
+        setDescription(logicalFile.getDescription());
+
+        Boolean isSuperFile = logicalFile.getIsSuperfile();
+        setSuperFile(isSuperFile == null ? false : isSuperFile);
+
+        setIsKeyFile("key".equals(contentType));
+    }
+
     public String getFileName()
     {
         return fileName;
@@ -229,7 +247,7 @@ public class DFUFile
             }
         }
         else
-            HPCCJDBCUtils.traceoutln(Level.SEVERE, "Could not determine related index for file: " + this.getFullyQualifiedName());
+            HPCCJDBCUtils.traceoutln(Level.SEVERE, "Could not determine related index for file: {}", this.getFullyQualifiedName());
     }
 
     public int getParts()
@@ -404,7 +422,8 @@ public class DFUFile
 
     public void setFileFields(String eclString)
     {
-        ecl = "";
+        //published once all fields are in place, see setColumns
+        StringBuilder recdef = new StringBuilder();
         if (eclString != null && eclString.length() > 0)
         {
             try
@@ -448,7 +467,7 @@ public class DFUFile
                             columnmeta.setEclType(type.toString());
                             columnmeta.setTableName(this.fullyQualifiedName);
 
-                            ecl += type + " " + name + "; ";
+                            recdef.append(type).append(" ").append(name).append("; ");
                             fields.put(name.toUpperCase(), columnmeta);
 
                             index++;
@@ -458,10 +477,10 @@ public class DFUFile
             }
             catch (Exception e)
             {
-                HPCCJDBCUtils.traceoutln(Level.SEVERE,   "Invalid ECL Record definition found in " + this.getFullyQualifiedName()                        + " details.");
-                return;
+                HPCCJDBCUtils.traceoutln(Level.SEVERE,   "Invalid ECL Record definition found in {} details.", this.getFullyQualifiedName());
             }
         }
+        ecl = recdef.toString();
     }
 
     public Enumeration<Object> getAllFields()
@@ -537,7 +556,7 @@ public class DFUFile
             }
             catch (Exception e)
             {
-                HPCCJDBCUtils.traceoutln(Level.SEVERE,   "Invalid file format detected, treating as FLAT format" + (fullyQualifiedName == null ? "!" : ": " + fullyQualifiedName));
+                HPCCJDBCUtils.traceoutln(Level.SEVERE,   "Invalid file format detected, treating as FLAT format{}", (fullyQualifiedName == null ? "!" : ": " + fullyQualifiedName));
             }
         }
     }
@@ -879,19 +898,36 @@ public class DFUFile
 
     public void setColumns(List<HPCCColumnWrapper> columnList)
     {
-        ecl = "";
+        String [] names = new String[columnList.size()];
+        String [] types = new String[columnList.size()];
         for (int index = 0; index < columnList.size(); index++)
         {
-            HPCCColumnWrapper column = columnList.get(index);
-            String name = column.getName();
-            String type = column.getType();
+            names[index] = columnList.get(index).getName();
+            types[index] = columnList.get(index).getType();
+        }
+
+        setColumns(names, types);
+    }
+
+    /**
+     * Sets the record definition from column names and their ECL types, in record order.
+     */
+    public void setColumns(String [] names, String [] types)
+    {
+        //record definition is published last, hasFileRecDef() implies the fields are in place
+        StringBuilder recdef = new StringBuilder();
+        for (int index = 0; index < names.length; index++)
+        {
+            String name = names[index];
+            String type = types[index];
             HPCCColumnMetaData columnmeta = new HPCCColumnMetaData(name, index,java.sql.Types.OTHER);
 
             columnmeta.setEclType(type);
             columnmeta.setTableName(this.fullyQualifiedName);
 
-            ecl += type + " " + name + "; ";
+            recdef.append(type).append(" ").append(name).append("; ");
             fields.put(name.toUpperCase(), columnmeta);
         }
+        ecl = recdef.toString();
     }
 }
@@ -0,0 +1,206 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.logging.Level;
+
+/**
+ * Turns the raw (string) value of a result cell into the Java object returned by getObject for the
+ * column's SQL type. One converter is selected per column when the result metadata is known, so the
+ * per cell work is a direct parse rather than a reflective constructor lookup.
+ *
+ * Types without a String based representation (dates, times, binaries, characters) are returned as
+ * the raw string, as they always have been. Malformed values fall back to the raw string as well.
+ */
+public abstract class HPCCColumnConverter
+{
+    private final int       sqlType;
+    private volatile boolean malformedReported = false;
+
+    protected HPCCColumnConverter(int sqlType)
+    {
+        this.sqlType = sqlType;
+    }
+
+    public int getSqlType()
+    {
+        return sqlType;
+    }
+
+    public Object convert(Object value)
+    {
+        if (value == null)
+            return null;
+
+        String str = value.toString();
+        if (str.isEmpty())
+            return str;
+
+        try
+        {
+            return parse(str);
+        }
+        catch (NumberFormatException e)
+        {
+            reportMalformed(str);
+            return str;
+        }
+    }
+
+    /**
+     * Converts the cell of a columnar page, numeric converters read the value decoded at parse time.
+     */
+    public Object convert(HPCCColumnarPage page, int row, int column)
+    {
+        return convert(page.getString(row, column));
+    }
+
+    protected abstract Object parse(String value);
+
+    /*
+     * Reported once per column, rather than for every malformed cell.
+     */
+    private void reportMalformed(String value)
+    {
+        if (!malformedReported)
+        {
+            malformedReported = true;
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "HPCC JDBC: Field of type: java.sql.Types-{} could not be cast to native Java type (treat as String): {}", sqlType, value);
+        }
+    }
+
+    public static HPCCColumnConverter forSqlType(int sqlType)
+    {
+        switch (sqlType)
+        {
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return new HPCCColumnConverter(sqlType)
+                {
+                    protected Object parse(String value)
+                    {
+                        return new BigDecimal(value);
+                    }
+                };
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return new HPCCColumnConverter(sqlType)
+                {
+                    public Object convert(Object value)
+                    {
+                        return value != null ? Boolean.valueOf(value.toString()) : null;
+                    }
+
+                    protected Object parse(String value)
+                    {
+                        return Boolean.valueOf(value);
+                    }
+                };
+            case Types.TINYINT:
+                return new HPCCColumnConverter(sqlType)
+                {
+                    protected Object parse(String value)
+                    {
+                        return Byte.valueOf(value);
+                    }
+                };
+            case Types.SMALLINT:
+                return new HPCCColumnConverter(sqlType)
+                {
+                    protected Object parse(String value)
+                    {
+                        return Short.valueOf(value);
+                    }
+                };
+            case Types.INTEGER:
+                return new HPCCColumnConverter(sqlType)
+                {
+                    protected Object parse(String value)
+                    {
+                        return Integer.valueOf(value);
+                    }
+
+                    public Object convert(HPCCColumnarPage page, int row, int column)
+                    {
+                        if (page.hasIntValue(row, column))
+                            return Integer.valueOf(page.getIntValue(row, column));
+
+                        return super.convert(page, row, column);
+                    }
+                };
+            case Types.BIGINT:
+                return new HPCCColumnConverter(sqlType)
+                {
+                    protected Object parse(String value)
+                    {
+                        return Long.valueOf(value);
+                    }
+
+                    public Object convert(HPCCColumnarPage page, int row, int column)
+                    {
+                        if (page.hasLongValue(row, column))
+                            return Long.valueOf(page.getLongValue(row, column));
+
+                        return super.convert(page, row, column);
+                    }
+                };
+            case Types.REAL:
+                return new HPCCColumnConverter(sqlType)
+                {
+                    protected Object parse(String value)
+                    {
+                        return Float.valueOf(value);
+                    }
+                };
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return new HPCCColumnConverter(sqlType)
+                {
+                    protected Object parse(String value)
+                    {
+                        return Double.valueOf(value);
+                    }
+
+                    public Object convert(HPCCColumnarPage page, int row, int column)
+                    {
+                        if (page.hasDoubleValue(row, column))
+                            return Double.valueOf(page.getDoubleValue(row, column));
+
+                        return super.convert(page, row, column);
+                    }
+                };
+            default:
+                return new HPCCColumnConverter(sqlType)
+                {
+                    public Object convert(Object value)
+                    {
+                        return value != null ? value.toString() : null;
+                    }
+
+                    protected Object parse(String value)
+                    {
+                        return value;
+                    }
+                };
+        }
+    }
+}
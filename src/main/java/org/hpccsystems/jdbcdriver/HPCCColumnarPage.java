@@ -0,0 +1,443 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Column oriented storage for one result window.
+ *
+ * Integer and floating point columns are decoded once, while the window is parsed, into primitive
+ * arrays; all other columns are kept as dictionary encoded strings. The page is also a List of rows
+ * so it can be used wherever the result set expects List based rows, each row being a light view
+ * which exposes the original string representation of the cells.
+ *
+ * Numeric values whose text is not in canonical form (leading zeros, exponents, out of range...)
+ * keep their original text, the typed accessors only report a primitive value when it is an exact
+ * representation of the text received from the server.
+ */
+public class HPCCColumnarPage extends AbstractList<List>
+{
+    private static final byte     STRINGCOLUMN = 0;
+    private static final byte     INTCOLUMN = 1;
+    private static final byte     LONGCOLUMN = 2;
+    private static final byte     DOUBLECOLUMN = 3;
+    private static final byte     CONSTANTCOLUMN = 4;
+
+    private static final int      DICTIONARYCHECKROWS = 1024;
+    private static final int      MINCAPACITY = 16;
+
+    private final int             columnCount;
+    private final byte []         columnKinds;
+    private final String []       constants;
+    private final Object []       values;        // int[], long[] or double[]; int[] dictionary codes or String[] for strings
+    private final String [][]     texts;         // original text of numeric cells not held exactly by the primitive value
+    private final BitSet []       present;
+    private final String [][]     dictionaries;
+    private final int []          dictionarySizes;
+    private final HashMap<String, Integer> [] dictionaryCodes;
+    private int                   capacity;
+    private int                   rowCount = 0;
+    private long                  parsedLong;
+
+    @SuppressWarnings("unchecked")
+    public HPCCColumnarPage(HPCCResultSetMetadata metadata, int initialCapacity)
+    {
+        List<HPCCColumnMetaData> columns = metadata.getColumnList();
+        columnCount = columns.size();
+        capacity = Math.max(MINCAPACITY, initialCapacity);
+
+        columnKinds = new byte[columnCount];
+        constants = new String[columnCount];
+        values = new Object[columnCount];
+        texts = new String[columnCount][];
+        present = new BitSet[columnCount];
+        dictionaries = new String[columnCount][];
+        dictionarySizes = new int[columnCount];
+        dictionaryCodes = new HashMap[columnCount];
+
+        for (int column = 0; column < columnCount; column++)
+        {
+            HPCCColumnMetaData col = columns.get(column);
+            if (col.isConstant())
+            {
+                columnKinds[column] = CONSTANTCOLUMN;
+                constants[column] = col.getConstantValue();
+                continue;
+            }
+
+            present[column] = new BitSet(capacity);
+            switch (col.getSqlType())
+            {
+                case java.sql.Types.TINYINT:
+                case java.sql.Types.SMALLINT:
+                case java.sql.Types.INTEGER:
+                    columnKinds[column] = INTCOLUMN;
+                    values[column] = new int[capacity];
+                    break;
+                case java.sql.Types.BIGINT:
+                    columnKinds[column] = LONGCOLUMN;
+                    values[column] = new long[capacity];
+                    break;
+                case java.sql.Types.REAL:
+                case java.sql.Types.FLOAT:
+                case java.sql.Types.DOUBLE:
+                    columnKinds[column] = DOUBLECOLUMN;
+                    values[column] = new double[capacity];
+                    break;
+                default:
+                    columnKinds[column] = STRINGCOLUMN;
+                    values[column] = new int[capacity];
+                    dictionaries[column] = new String[MINCAPACITY];
+                    dictionaryCodes[column] = new HashMap<String, Integer>();
+                    break;
+            }
+        }
+    }
+
+    public static HPCCColumnarPage fromRows(HPCCResultSetMetadata metadata, List<List> rows)
+    {
+        HPCCColumnarPage page = new HPCCColumnarPage(metadata, rows.size());
+        for (List row : rows)
+        {
+            page.startRow();
+            for (int column = 0; column < page.columnCount && column < row.size(); column++)
+            {
+                Object value = row.get(column);
+                if (value != null)
+                    page.setCell(column, value.toString());
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Appends a row, all of its cells are null until set.
+     */
+    public void startRow()
+    {
+        if (rowCount == capacity)
+            grow();
+        rowCount++;
+    }
+
+    /**
+     * Sets the cell of the last row started.
+     */
+    public void setCell(int column, String value)
+    {
+        int row = rowCount - 1;
+        switch (columnKinds[column])
+        {
+            case CONSTANTCOLUMN:
+                return;
+            case INTCOLUMN:
+                if (parseCanonicalLong(value) && parsedLong >= Integer.MIN_VALUE && parsedLong <= Integer.MAX_VALUE)
+                    ((int[]) values[column])[row] = (int) parsedLong;
+                else
+                    setText(column, row, value);
+                break;
+            case LONGCOLUMN:
+                if (parseCanonicalLong(value))
+                    ((long[]) values[column])[row] = parsedLong;
+                else
+                    setText(column, row, value);
+                break;
+            case DOUBLECOLUMN:
+                try
+                {
+                    double parsed = Double.parseDouble(value);
+                    ((double[]) values[column])[row] = parsed;
+                    if (!Double.toString(parsed).equals(value))
+                        setText(column, row, value);
+                }
+                catch (NumberFormatException e)
+                {
+                    setText(column, row, value);
+                }
+                break;
+            default:
+                setString(column, row, value);
+                break;
+        }
+        present[column].set(row);
+    }
+
+    @Override
+    public int size()
+    {
+        return rowCount;
+    }
+
+    @Override
+    public List get(int row)
+    {
+        if (row < 0 || row >= rowCount)
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + rowCount);
+
+        return new RowView(row);
+    }
+
+    public int getColumnCount()
+    {
+        return columnCount;
+    }
+
+    public boolean isNull(int row, int column)
+    {
+        if (columnKinds[column] == CONSTANTCOLUMN)
+            return constants[column] == null;
+
+        return !present[column].get(row);
+    }
+
+    public String getString(int row, int column)
+    {
+        switch (columnKinds[column])
+        {
+            case CONSTANTCOLUMN:
+                return constants[column];
+            case STRINGCOLUMN:
+                if (!present[column].get(row))
+                    return null;
+                Object columnValues = values[column];
+                if (columnValues instanceof String[])
+                    return ((String[]) columnValues)[row];
+                return dictionaries[column][((int[]) columnValues)[row]];
+            default:
+                if (!present[column].get(row))
+                    return null;
+                if (texts[column] != null && texts[column][row] != null)
+                    return texts[column][row];
+                if (columnKinds[column] == INTCOLUMN)
+                    return Integer.toString(((int[]) values[column])[row]);
+                if (columnKinds[column] == LONGCOLUMN)
+                    return Long.toString(((long[]) values[column])[row]);
+                return Double.toString(((double[]) values[column])[row]);
+        }
+    }
+
+    /**
+     * True if the cell holds an integral value which can be read with getLongValue.
+     */
+    public boolean hasLongValue(int row, int column)
+    {
+        byte kind = columnKinds[column];
+        return (kind == INTCOLUMN || kind == LONGCOLUMN) && hasExactValue(row, column);
+    }
+
+    /**
+     * True if the cell holds an integral value in the int range.
+     */
+    public boolean hasIntValue(int row, int column)
+    {
+        if (columnKinds[column] == INTCOLUMN)
+            return hasExactValue(row, column);
+
+        if (columnKinds[column] == LONGCOLUMN && hasExactValue(row, column))
+        {
+            long value = ((long[]) values[column])[row];
+            return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+        }
+
+        return false;
+    }
+
+    /**
+     * True if the cell holds a numeric value which can be read with getDoubleValue.
+     */
+    public boolean hasDoubleValue(int row, int column)
+    {
+        byte kind = columnKinds[column];
+        return (kind == INTCOLUMN || kind == LONGCOLUMN || kind == DOUBLECOLUMN) && hasExactValue(row, column);
+    }
+
+    public int getIntValue(int row, int column)
+    {
+        if (columnKinds[column] == INTCOLUMN)
+            return ((int[]) values[column])[row];
+        return (int) ((long[]) values[column])[row];
+    }
+
+    public long getLongValue(int row, int column)
+    {
+        if (columnKinds[column] == INTCOLUMN)
+            return ((int[]) values[column])[row];
+        return ((long[]) values[column])[row];
+    }
+
+    public double getDoubleValue(int row, int column)
+    {
+        switch (columnKinds[column])
+        {
+            case INTCOLUMN:
+                return ((int[]) values[column])[row];
+            case LONGCOLUMN:
+                return ((long[]) values[column])[row];
+            default:
+                return ((double[]) values[column])[row];
+        }
+    }
+
+    private boolean hasExactValue(int row, int column)
+    {
+        return present[column].get(row) && (texts[column] == null || texts[column][row] == null);
+    }
+
+    private void setText(int column, int row, String value)
+    {
+        if (texts[column] == null)
+            texts[column] = new String[capacity];
+        texts[column][row] = value;
+    }
+
+    private void setString(int column, int row, String value)
+    {
+        Object columnValues = values[column];
+        if (columnValues instanceof String[])
+        {
+            ((String[]) columnValues)[row] = value;
+            return;
+        }
+
+        HashMap<String, Integer> codes = dictionaryCodes[column];
+        Integer code = codes.get(value);
+        if (code == null)
+        {
+            // Mostly distinct values do not benefit from the dictionary, store them as plain strings
+            if (rowCount >= DICTIONARYCHECKROWS && dictionarySizes[column] > rowCount / 2)
+            {
+                String [] strings = new String[capacity];
+                int [] rowcodes = (int[]) columnValues;
+                String [] dictionary = dictionaries[column];
+                for (int i = 0; i < row; i++)
+                {
+                    if (present[column].get(i))
+                        strings[i] = dictionary[rowcodes[i]];
+                }
+                strings[row] = value;
+                values[column] = strings;
+                dictionaries[column] = null;
+                dictionaryCodes[column] = null;
+                return;
+            }
+
+            code = dictionarySizes[column]++;
+            if (code == dictionaries[column].length)
+                dictionaries[column] = Arrays.copyOf(dictionaries[column], code * 2);
+            dictionaries[column][code] = value;
+            codes.put(value, code);
+        }
+        ((int[]) columnValues)[row] = code;
+    }
+
+    private void grow()
+    {
+        capacity *= 2;
+        for (int column = 0; column < columnCount; column++)
+        {
+            Object columnValues = values[column];
+            if (columnValues instanceof int[])
+                values[column] = Arrays.copyOf((int[]) columnValues, capacity);
+            else if (columnValues instanceof long[])
+                values[column] = Arrays.copyOf((long[]) columnValues, capacity);
+            else if (columnValues instanceof double[])
+                values[column] = Arrays.copyOf((double[]) columnValues, capacity);
+            else if (columnValues instanceof String[])
+                values[column] = Arrays.copyOf((String[]) columnValues, capacity);
+
+            if (texts[column] != null)
+                texts[column] = Arrays.copyOf(texts[column], capacity);
+        }
+    }
+
+    /**
+     * Parses integers written as -?(0|[1-9][0-9]*), the only form for which the text can be
+     * rebuilt from the value. Result is left in parsedLong.
+     */
+    private boolean parseCanonicalLong(String value)
+    {
+        int length = value.length();
+        if (length == 0 || length > 20)
+            return false;
+
+        int pos = 0;
+        boolean negative = value.charAt(0) == '-';
+        if (negative && ++pos == length)
+            return false;
+
+        char first = value.charAt(pos);
+        if (first == '0')
+        {
+            parsedLong = 0;
+            return length == 1;
+        }
+
+        long result = 0;
+        for (; pos < length; pos++)
+        {
+            int digit = value.charAt(pos) - '0';
+            if (digit < 0 || digit > 9)
+                return false;
+            if (result < (Long.MIN_VALUE + digit) / 10)
+                return false;
+            result = result * 10 - digit; // accumulate negatively to reach Long.MIN_VALUE
+        }
+
+        if (!negative)
+        {
+            if (result == Long.MIN_VALUE)
+                return false;
+            result = -result;
+        }
+
+        parsedLong = result;
+        return true;
+    }
+
+    private class RowView extends AbstractList<Object>
+    {
+        private final int row;
+
+        RowView(int row)
+        {
+            this.row = row;
+        }
+
+        @Override
+        public Object get(int column)
+        {
+            if (column < 0 || column >= columnCount)
+                throw new IndexOutOfBoundsException("Column: " + column + ", Size: " + columnCount);
+
+            return getString(row, column);
+        }
+
+        @Override
+        public int size()
+        {
+            return columnCount;
+        }
+    }
+}
@@ -18,6 +18,7 @@ along with this program. If not, see <http://www.gnu.org/licenses/>.
 
 package org.hpccsystems.jdbcdriver;
 
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.sql.Array;
@@ -28,6 +29,7 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.NClob;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
@@ -35,22 +37,33 @@ import java.sql.SQLXML;
 import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Struct;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 
+import org.hpccsystems.ws.client.HPCCWsClient;
 import org.hpccsystems.ws.client.HPCCWsSQLClient;
 import org.hpccsystems.ws.client.platform.Cluster;
 import org.hpccsystems.ws.client.platform.DataQuerySet;
 import org.hpccsystems.ws.client.platform.Platform;
 import org.hpccsystems.ws.client.platform.Version;
+import org.hpccsystems.ws.client.platform.Workunit;
 
 import org.hpccsystems.ws.client.wrappers.gen.wssql.HPCCQuerySetWrapper;
 import org.hpccsystems.ws.client.wrappers.gen.wssql.HPCCTableWrapper;
 import org.hpccsystems.ws.client.wrappers.gen.wssql.NamedValueWrapper;
 import org.hpccsystems.ws.client.wrappers.wsdfu.DFULogicalFileWrapper;
+import org.hpccsystems.ws.client.wrappers.wsworkunits.WorkunitWrapper;
 import org.hpccsystems.ws.client.wrappers.gen.wssql.ExecuteSQLResponseWrapper;
 import org.hpccsystems.ws.client.wrappers.gen.wssql.ExecutePreparedSQLResponseWrapper;
 import org.hpccsystems.ws.client.wrappers.gen.wssql.GetResultsResponseWrapper;
@@ -64,19 +77,29 @@ import org.hpccsystems.ws.client.wrappers.gen.wssql.ECLWorkunitWrapper;
  * The JDBC-HPCC connection consists of up to two distinct service end points.
  * The services are WsSQL and WsECLWatch, which can share the same hostname and port,
  * but could also reside on distinct hosts and/or port
+ *
+ * A connection can be shared by any number of threads, each running its own statements in parallel.
+ * Statements and result sets themselves are not thread safe and should be confined to one thread.
+ * The connection keeps no per request state: the WsSQL client is shared with other connections anyway,
+ * WsECLWatch clients are checked out of the platform for the duration of each call, the warnings chain
+ * is appended lock free, the prepared SQL cache has its own monitor and the metadata caches are concurrent maps.
+ * closedLock only orders initialization against close(), requests in flight when the connection
+ * is closed either complete or fail with an SQLException.
  */
 public class HPCCConnection implements Connection
 {
-    protected final Object       closedLock = new Object();
-    private boolean              closed = true;
-    private HPCCDatabaseMetaData metadata;
-    private Properties           connectionProps;
-    private Properties           clientInfo;
-    private SQLWarning           warnings = null;
-    private String               catalog = HPCCJDBCUtils.HPCCCATALOGNAME;
-
-    private Platform                    hpccPlatform              = null;
-    private HPCCWsSQLClient             wsSQLClient               = null;
+    protected final Object                    closedLock = new Object();
+    private volatile boolean                  closed = true;
+    private volatile HPCCDatabaseMetaData     metadata;
+    private Properties                        connectionProps;
+    private volatile Properties               clientInfo;
+    private final AtomicReference<SQLWarning> warnings = new AtomicReference<SQLWarning>();
+    private volatile String                   catalog = HPCCJDBCUtils.HPCCCATALOGNAME;
+
+    private volatile Platform           hpccPlatform              = null;
+    private String                      hpccPlatformKey           = null;
+    private String                      metaDataCacheKey          = null;
+    private volatile HPCCWsSQLClient    wsSQLClient               = null;
 
     private String                      targetcluster;
     private String                      queryset;
@@ -86,7 +109,28 @@ public class HPCCConnection implements Connection
     private int                         connectTimeoutMillis;
     private int                         readTimoutMillis;
     private int                         eclResultLimit;
+    private boolean                     domResultParser = false;
+    private boolean                     columnarStorage = false;
+    private int                         prefetchWindows = 0;
+    private double                      prefetchThreshold = 0.5;
+    private int                         dfuCatalogChunkSize;
+    private int                         dfuCatalogThreads;
+    private int                         columnFetchThreads;
+    private File                        metaDataSnapshotFile      = null;
+    private int                         preparedSQLCacheSize;
+    private int                         batchInFlightLimit;
+    private int                         workunitPollMillis;
+    private boolean                     adaptiveFetch = false;
+    private int                         adaptiveFetchMaxSize;
+    private long                        adaptiveFetchMemoryBytes;
+    private int                         parallelFetchWindows;
+    private long                        parallelFetchMinRows;
+    private int                         scrollWindowsInMemory;
+    private File                        scrollSpillDirectory      = null;
+    private long                        slowQueryThresholdMillis;
+    private Map<String, ECLWorkunitWrapper> preparedSQLCache;
     private boolean                     hasTargetWsSQLBeenReached = false;
+    private final HPCCMetrics           metrics = new HPCCMetrics(HPCCMetrics.getDriverMetrics());
 
     public HPCCConnection(Properties props)
     {
@@ -121,124 +165,222 @@ public class HPCCConnection implements Connection
         this.connectTimeoutMillis = HPCCJDBCUtils.stringToInt(props.getProperty("ConnectTimeoutMilli"), Integer.valueOf(HPCCDriver.CONNECTTIMEOUTMILDEFAULT));
         this.readTimoutMillis = HPCCJDBCUtils.stringToInt(props.getProperty("ReadTimeoutMilli"), Integer.valueOf(HPCCDriver.READTIMEOUTMILDEFAULT));
         this.eclResultLimit = HPCCJDBCUtils.stringToInt(props.getProperty("EclResultLimit"),HPCCDriver.ECLRESULTLIMDEFAULTINT);
-        HPCCJDBCUtils.traceoutln(Level.INFO, "HPCCDatabaseMetaData ServerAddress: " + wsSQLAddress + " TargetCluster: " + targetcluster);
+        this.domResultParser = HPCCDriver.RESULTPARSERDOM.equalsIgnoreCase(props.getProperty("ResultParser", HPCCDriver.RESULTPARSERDEFAULT).trim());
+        this.columnarStorage = Boolean.parseBoolean(props.getProperty("ColumnarStorage", HPCCDriver.COLUMNARSTORAGEDEFAULT));
+        this.prefetchWindows = Math.max(0, HPCCJDBCUtils.stringToInt(props.getProperty("PrefetchWindows"), Integer.valueOf(HPCCDriver.PREFETCHWINDOWSDEFAULT)));
+        this.prefetchThreshold = HPCCJDBCUtils.stringToDouble(props.getProperty("PrefetchThreshold"), Double.valueOf(HPCCDriver.PREFETCHTHRESHOLDDEFAULT));
+        if (prefetchThreshold < 0 || prefetchThreshold > 1)
+            prefetchThreshold = Double.valueOf(HPCCDriver.PREFETCHTHRESHOLDDEFAULT);
+        this.dfuCatalogChunkSize = Math.max(1, HPCCJDBCUtils.stringToInt(props.getProperty("DFUCatalogChunkSize"), Integer.valueOf(HPCCDriver.DFUCATALOGCHUNKDEFAULT)));
+        this.dfuCatalogThreads = Math.max(1, HPCCJDBCUtils.stringToInt(props.getProperty("DFUCatalogThreads"), Integer.valueOf(HPCCDriver.DFUCATALOGTHREADSDEFAULT)));
+        this.columnFetchThreads = Math.max(1, HPCCJDBCUtils.stringToInt(props.getProperty("ColumnFetchThreads"), Integer.valueOf(HPCCDriver.COLFETCHTHREADSDEFAULT)));
+        this.adaptiveFetch = Boolean.parseBoolean(props.getProperty("AdaptiveFetch", HPCCDriver.ADAPTIVEFETCHDEFAULT));
+        this.adaptiveFetchMaxSize = Math.max(1, HPCCJDBCUtils.stringToInt(props.getProperty("AdaptiveFetchMaxSize"), Integer.valueOf(HPCCDriver.ADAPTIVEFETCHMAXDEFAULT)));
+        this.adaptiveFetchMemoryBytes = 1024L * 1024L * Math.max(1, HPCCJDBCUtils.stringToInt(props.getProperty("AdaptiveFetchMemoryMB"), Integer.valueOf(HPCCDriver.ADAPTIVEFETCHMEMDEFAULT)));
+        this.parallelFetchWindows = Math.max(0, HPCCJDBCUtils.stringToInt(props.getProperty("ParallelFetchWindows"), Integer.valueOf(HPCCDriver.PARALLELFETCHDEFAULT)));
+        this.parallelFetchMinRows = Math.max(0, HPCCJDBCUtils.stringToLong(props.getProperty("ParallelFetchMinRows"), Long.valueOf(HPCCDriver.PARALLELFETCHMINDEFAULT)));
+        this.scrollWindowsInMemory = Math.max(1, HPCCJDBCUtils.stringToInt(props.getProperty("ScrollWindowsInMemory"), Integer.valueOf(HPCCDriver.SCROLLWINDOWSDEFAULT)));
+        String spilldir = props.getProperty("ScrollSpillDirectory", HPCCDriver.SCROLLSPILLDIRDEFAULT).trim();
+        if (!spilldir.isEmpty())
+            this.scrollSpillDirectory = new File(spilldir);
+        this.slowQueryThresholdMillis = Math.max(0, HPCCJDBCUtils.stringToLong(props.getProperty("SlowQueryThresholdMillis"), Long.valueOf(HPCCDriver.SLOWQUERYMILLISDEFAULT)));
+        this.batchInFlightLimit = Math.max(1, HPCCJDBCUtils.stringToInt(props.getProperty("BatchInFlightLimit"), Integer.valueOf(HPCCDriver.BATCHINFLIGHTDEFAULT)));
+        this.workunitPollMillis = Math.max(1, HPCCJDBCUtils.stringToInt(props.getProperty("WorkunitPollMillis"), Integer.valueOf(HPCCDriver.WUPOLLMILLISDEFAULT)));
+        this.preparedSQLCacheSize = Math.max(0, HPCCJDBCUtils.stringToInt(props.getProperty("PreparedStatementCacheSize"), Integer.valueOf(HPCCDriver.PREPSTMTCACHESIZEDEFAULT)));
+        this.preparedSQLCache = new LinkedHashMap<String, ECLWorkunitWrapper>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ECLWorkunitWrapper> eldest)
+            {
+                return size() > preparedSQLCacheSize;
+            }
+        };
+        String snapshotfile = props.getProperty("MetaDataSnapshotFile", HPCCDriver.METADATASNAPSHOTDEFAULT).trim();
+        if (!snapshotfile.isEmpty())
+            this.metaDataSnapshotFile = new File(snapshotfile);
+        HPCCJDBCUtils.traceoutln(Level.INFO, "HPCCDatabaseMetaData ServerAddress: {} TargetCluster: {}", wsSQLAddress, targetcluster);
 
         synchronized (closedLock)
         {
+            boolean initialized = false;
             try
             {
-                URL wsECLWatchURL = null;
                 try
                 {
-                    wsECLWatchURL = new URL(!wsECLWatchAddress.isEmpty() ? wsECLWatchAddress : wsSQLAddress);
+                    URL wsECLWatchURL = null;
+                    try
+                    {
+                        wsECLWatchURL = new URL(!wsECLWatchAddress.isEmpty() ? wsECLWatchAddress : wsSQLAddress);
+                    }
+                    catch (MalformedURLException e)
+                    {
+                        wsECLWatchURL = new URL(HPCCJDBCUtils.defaultprotocol+HPCCJDBCUtils.protocolsep+wsECLWatchAddress);
+                        SQLWarning warn = new SQLWarning("wsECLWatchAddress URL could not be parsed, defaulting to: '" + wsECLWatchURL.toString() + "'");
+                        addWarning(warn);
+                        HPCCJDBCUtils.traceoutln(Level.SEVERE, warn.getMessage());
+                    }
+
+                    int wsEclWatchPort = -1;
+                    if (wsECLWatchURL.getPort() == -1)
+                        wsEclWatchPort =  HPCCJDBCUtils.stringToInt(props.getProperty("WsSQLPort"), Integer.valueOf(HPCCDriver.WSSQLPORTDEFAULT));
+                    else
+                    {
+                        wsEclWatchPort = wsECLWatchURL.getPort();
+                    }
+
+                    boolean refreshPlatform = Boolean.parseBoolean(props.getProperty("RefreshPlatform", HPCCDriver.REFRESHPLATFORMDEFAULT));
+                    hpccPlatformKey = HPCCPlatformRegistry.createKey(wsECLWatchURL.getProtocol(), wsECLWatchURL.getHost(), wsEclWatchPort, userName);
+                    hpccPlatform = HPCCPlatformRegistry.acquire(wsECLWatchURL.getProtocol(), wsECLWatchURL.getHost(), wsEclWatchPort, userName, props.getProperty("password", ""), refreshPlatform);
+                    if (hpccPlatform.isDisabled())
+                    {
+                        SQLWarning warn = new SQLWarning("ECLWatch not accessible on " + wsECLWatchURL.getProtocol() + "://" + wsECLWatchURL.getHost() + ":" + wsEclWatchPort);
+                        addWarning(warn);
+                        HPCCJDBCUtils.traceoutln(Level.SEVERE, warn.getMessage());
+                        return;
+                    }
+
+                    URL wsSQLURL = null;
+                    try
+                    {
+                        wsSQLURL = new URL(wsSQLAddress);
+                    }
+                    catch (MalformedURLException e)
+                    {
+                        wsSQLURL = new URL(HPCCJDBCUtils.defaultprotocol+HPCCJDBCUtils.protocolsep+wsSQLAddress);
+                        SQLWarning warn = new SQLWarning("wsSQL (ServerAddress) URL could not be parsed, defaulting to: '" +wsSQLURL.toString() + "'");
+                        addWarning(warn);
+                        HPCCJDBCUtils.traceoutln(Level.SEVERE, warn.getMessage());
+                    }
+
+                    int wsSQLPort = -1;
+                    if (wsSQLURL.getPort() == -1)
+                        wsSQLPort =  HPCCJDBCUtils.stringToInt(props.getProperty("WsSQLPort"), Integer.valueOf(HPCCDriver.WSSQLPORTDEFAULT));
+                    else
+                        wsSQLPort = wsSQLURL.getPort();
+
+                    wsSQLClient = HPCCWsSQLClient.get(wsSQLURL.getProtocol(), wsSQLURL.getHost(), Integer.toString(wsSQLPort), userName, props.getProperty("password", ""));
+                    metaDataCacheKey = HPCCMetaDataCache.createKey(wsECLWatchURL.getProtocol(), wsECLWatchURL.getHost(), wsEclWatchPort, userName,
+                            props.getProperty("password", ""), wsSQLURL.getHost(), wsSQLPort);
+
+                    if (!wsSQLClient.isWsSQLReachable())
+                    {
+                        SQLWarning warn = new SQLWarning("The HPCC WsSQL service could not be reached on " + wsSQLURL + " on port '" + wsSQLPort + "'");
+                        addWarning(warn);
+                        HPCCJDBCUtils.traceoutln(Level.SEVERE, warn.getMessage());
+                        return;
+                    }
+                    else
+                        hasTargetWsSQLBeenReached = true;
+
+                    HPCCJDBCUtils.traceoutln(Level.INFO, "HPCCDatabaseMetaData initialized");
                 }
                 catch (MalformedURLException e)
                 {
-                    wsECLWatchURL = new URL(HPCCJDBCUtils.defaultprotocol+HPCCJDBCUtils.protocolsep+wsECLWatchAddress);
-                    SQLWarning warn = new SQLWarning("wsECLWatchAddress URL could not be parsed, defaulting to: '" + wsECLWatchURL.toString() + "'");
+                    SQLWarning warn = new SQLWarning("Error initializing HPCCDatabaseMetaData:" + e.getLocalizedMessage());
                     addWarning(warn);
                     HPCCJDBCUtils.traceoutln(Level.SEVERE, warn.getMessage());
+                    return;
                 }
-
-                int wsEclWatchPort = -1;
-                if (wsECLWatchURL.getPort() == -1)
-                    wsEclWatchPort =  HPCCJDBCUtils.stringToInt(props.getProperty("WsSQLPort"), Integer.valueOf(HPCCDriver.WSSQLPORTDEFAULT));
-                else
-                {
-                    wsEclWatchPort = wsECLWatchURL.getPort();
-                }
-
-                hpccPlatform = Platform.get(wsECLWatchURL.getProtocol(), wsECLWatchURL.getHost(), wsEclWatchPort, userName, props.getProperty("password", ""));
-                if (hpccPlatform.isDisabled())
+                catch (Exception e)
                 {
-                    SQLWarning warn = new SQLWarning("ECLWatch not accessible on " + wsECLWatchURL.getProtocol() + "://" + wsECLWatchURL.getHost() + ":" + wsEclWatchPort);
+                    SQLWarning warn = new SQLWarning("Error initializing WsClient in HPCCDatabaseMetaData:" + e.getLocalizedMessage());
                     addWarning(warn);
                     HPCCJDBCUtils.traceoutln(Level.SEVERE, warn.getMessage());
                     return;
                 }
 
-                URL wsSQLURL = null;
-                try
-                {
-                    wsSQLURL = new URL(wsSQLAddress);
-                }
-                catch (MalformedURLException e)
+                // TODO not doing anything w/ this yet, just exposing it to comply w/ API definition...
+                clientInfo = new Properties();
+
+                if (hasTargetWsSQLBeenReached())
                 {
-                    wsSQLURL = new URL(HPCCJDBCUtils.defaultprotocol+HPCCJDBCUtils.protocolsep+wsSQLAddress);
-                    SQLWarning warn = new SQLWarning("wsSQL (ServerAddress) URL could not be parsed, defaulting to: '" +wsSQLURL.toString() + "'");
-                    addWarning(warn);
-                    HPCCJDBCUtils.traceoutln(Level.SEVERE, warn.getMessage());
+                    synchronized (closedLock)
+                    {
+                        closed = false;
+                    }
+
+                    //considering that metadata keeps a copy of this connection, I wish metadata would not be exposed by the connection as well
+                    metadata = new HPCCDatabaseMetaData(this);
+
+                    if (Boolean.parseBoolean(props.getProperty("RegisterMBeans", HPCCDriver.REGISTERMBEANSDEFAULT)))
+                    {
+                        HPCCMetrics.getDriverMetrics().registerMBean("Driver");
+                        metrics.registerMBean("Connection");
+                    }
+
+                    HPCCJDBCUtils.traceoutln(Level.INFO,  "HPCCConnection initialized - server: {}", this.connectionProps.getProperty("ServerAddress"));
+                    initialized = true;
                 }
-
-                int wsSQLPort = -1;
-                if (wsSQLURL.getPort() == -1)
-                    wsSQLPort =  HPCCJDBCUtils.stringToInt(props.getProperty("WsSQLPort"), Integer.valueOf(HPCCDriver.WSSQLPORTDEFAULT));
                 else
-                    wsSQLPort = wsSQLURL.getPort();
-
-                wsSQLClient = HPCCWsSQLClient.get(wsSQLURL.getProtocol(), wsSQLURL.getHost(), Integer.toString(wsSQLPort), userName, props.getProperty("password", ""));
-
-                if (!wsSQLClient.isWsSQLReachable())
                 {
-                    SQLWarning warn = new SQLWarning("The HPCC WsSQL service could not be reached on " + wsSQLURL + " on port '" + wsSQLPort + "'");
+                    SQLWarning warn = new SQLWarning("HPCCConnection not initialized - server: " + this.connectionProps.getProperty("ServerAddress"));
                     addWarning(warn);
-                    HPCCJDBCUtils.traceoutln(Level.SEVERE, warn.getMessage());
-                    return;
+                    HPCCJDBCUtils.traceoutln(Level.INFO, warn.getMessage());
                 }
-                else
-                    hasTargetWsSQLBeenReached = true;
-
-                HPCCJDBCUtils.traceoutln(Level.INFO, "HPCCDatabaseMetaData initialized");
             }
-            catch (MalformedURLException e)
+            finally
             {
-                SQLWarning warn = new SQLWarning("Error initializing HPCCDatabaseMetaData:" + e.getLocalizedMessage());
-                addWarning(warn);
-                HPCCJDBCUtils.traceoutln(Level.SEVERE, warn.getMessage());
-                return;
-            }
-            catch (Exception e)
-            {
-                SQLWarning warn = new SQLWarning("Error initializing WsClient in HPCCDatabaseMetaData:" + e.getLocalizedMessage());
-                addWarning(warn);
-                HPCCJDBCUtils.traceoutln(Level.SEVERE, warn.getMessage());
-                return;
-            }
-
-            // TODO not doing anything w/ this yet, just exposing it to comply w/ API definition...
-            clientInfo = new Properties();
-
-            if (hasTargetWsSQLBeenReached())
-            {
-                synchronized (closedLock)
+                //the connection is not usable, it must not keep its reference to the shared platform
+                if (!initialized)
                 {
-                    closed = false;
+                    closed = true;
+                    releaseHPCCPlatform();
                 }
-
-                //considering that metadata keeps a copy of this connection, I wish metadata would not be exposed by the connection as well
-                metadata = new HPCCDatabaseMetaData(this);
-
-                HPCCJDBCUtils.traceoutln(Level.INFO,  "HPCCConnection initialized - server: " + this.connectionProps.getProperty("ServerAddress"));
-            }
-            else
-            {
-                SQLWarning warn = new SQLWarning("HPCCConnection not initialized - server: " + this.connectionProps.getProperty("ServerAddress"));
-                addWarning(warn);
-                HPCCJDBCUtils.traceoutln(Level.INFO, warn.getMessage());
             }
         }
     }
 
     private void addWarning(SQLWarning warning)
     {
-        if (warnings == null)
-            warnings = new SQLWarning();
-        warnings.setNextException(warning);
+        SQLWarning head = warnings.get();
+        while (head == null) //a concurrent clearWarnings can drop the head again
+        {
+            warnings.compareAndSet(null, new SQLWarning());
+            head = warnings.get();
+        }
+        //setNextException appends atomically
+        head.setNextException(warning);
+    }
+
+    /*
+     * The fields are cleared by close(), possibly while other threads are still executing statements,
+     * so they are read once per request.
+     */
+    HPCCWsSQLClient getWsSQLClient() throws SQLException
+    {
+        if (isClosed())
+            throw new SQLException("ERROR: HPCCConnection is closed");
+
+        HPCCWsSQLClient client = wsSQLClient;
+        if (client == null)
+            throw new SQLException("ERROR: WsSQLClient not available");
+
+        return client;
+    }
+
+    private Platform getOpenHPCCPlatform() throws SQLException
+    {
+        Platform platform = hpccPlatform;
+        if (isClosed() || platform == null)
+            throw new SQLException("ERROR: HPCCConnection is closed");
+
+        return platform;
     }
 
     public DFUSearchDataResponseWrapper getDFUData(DFUSearchDataRequestWrapper dfuDataRequest) throws ArrayOfEspExceptionWrapper, Exception
     {
-        return hpccPlatform.checkOutHPCCWsClient().getWsDFUClient().getDFUData(dfuDataRequest);
+        Platform platform = getOpenHPCCPlatform();
+        HPCCWsClient wsClient = platform.checkOutHPCCWsClient();
+        try
+        {
+            return wsClient.getWsDFUClient().getDFUData(dfuDataRequest);
+        }
+        finally
+        {
+            platform.checkInHPCCWsClient(wsClient);
+        }
     }
 
     public int getPageSize()
@@ -246,6 +388,118 @@ public class HPCCConnection implements Connection
         return pageSize;
     }
 
+    public int getEclResultLimit()
+    {
+        return eclResultLimit;
+    }
+
+    public int getPageOffset()
+    {
+        return pageOffset;
+    }
+
+    public int getDFUCatalogChunkSize()
+    {
+        return dfuCatalogChunkSize;
+    }
+
+    public int getDFUCatalogThreads()
+    {
+        return dfuCatalogThreads;
+    }
+
+    public int getColumnFetchThreads()
+    {
+        return columnFetchThreads;
+    }
+
+    public int getBatchInFlightLimit()
+    {
+        return batchInFlightLimit;
+    }
+
+    /**
+     * Time WsSQL waits for a query workunit, and the interval at which one still running is polled afterwards.
+     */
+    public int getWorkunitPollMillis()
+    {
+        return workunitPollMillis;
+    }
+
+    public int getParallelFetchWindows()
+    {
+        return parallelFetchWindows;
+    }
+
+    public long getParallelFetchMinRows()
+    {
+        return parallelFetchMinRows;
+    }
+
+    public int getScrollWindowsInMemory()
+    {
+        return scrollWindowsInMemory;
+    }
+
+    /**
+     * @return directory of scroll insensitive result spill files, or null for the default temporary directory
+     */
+    public File getScrollSpillDirectory()
+    {
+        return scrollSpillDirectory;
+    }
+
+    /**
+     * Result sets whose query took at least this long are logged with their HPCCQueryTimings on close, 0 if disabled.
+     */
+    public long getSlowQueryThresholdMillis()
+    {
+        return slowQueryThresholdMillis;
+    }
+
+    public boolean isAdaptiveFetch()
+    {
+        return adaptiveFetch;
+    }
+
+    public int getAdaptiveFetchMaxSize()
+    {
+        return adaptiveFetchMaxSize;
+    }
+
+    public long getAdaptiveFetchMemoryBytes()
+    {
+        return adaptiveFetchMemoryBytes;
+    }
+
+    /**
+     * @return file HPCC metadata is persisted to, or null if metadata snapshots are disabled
+     */
+    public File getMetaDataSnapshotFile()
+    {
+        return metaDataSnapshotFile;
+    }
+
+    public boolean isDOMResultParser()
+    {
+        return domResultParser;
+    }
+
+    public boolean isColumnarStorage()
+    {
+        return columnarStorage;
+    }
+
+    public int getPrefetchWindows()
+    {
+        return prefetchWindows;
+    }
+
+    public double getPrefetchThreshold()
+    {
+        return prefetchThreshold;
+    }
+
     public static String createBasicAuth(String username, String passwd)
     {
         return "Basic " + HPCCJDBCUtils.Base64Encode((username + ":" + passwd).getBytes(), false);
@@ -259,7 +513,7 @@ public class HPCCConnection implements Connection
 
     public String getProperty(String propname)
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  "HPCCConnection: getProperty( " + propname + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  "HPCCConnection: getProperty( {} )", propname);
         return connectionProps.getProperty(propname, "");
     }
 
@@ -271,7 +525,7 @@ public class HPCCConnection implements Connection
 
     public void setServerAddress(String serverAddress)
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  "HPCCConnection: setServerAddress( " + serverAddress + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  "HPCCConnection: setServerAddress( {} )", serverAddress);
         this.connectionProps.setProperty("ServerAddress", serverAddress);
     }
 
@@ -295,7 +549,7 @@ public class HPCCConnection implements Connection
 
     public PreparedStatement prepareStatement(String query) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.INFO,  "HPCCConnection: prepareStatement( " + query + " )");
+        HPCCJDBCUtils.traceoutln(Level.INFO,  "HPCCConnection: prepareStatement( {} )", query);
         HPCCPreparedStatement p = new HPCCPreparedStatement(this, query);
         SQLWarning prepstmtexcp = p.getWarnings();
         if (prepstmtexcp != null)
@@ -345,20 +599,30 @@ public class HPCCConnection implements Connection
             {
                 closed = true;
                 metadata = null;
-                hpccPlatform = null;
                 wsSQLClient = null;
             }
+
+            releaseHPCCPlatform();
+
+            metrics.unregisterMBean();
         }
     }
 
-    public boolean isClosed()
+    private void releaseHPCCPlatform()
     {
-        synchronized (closedLock)
+        if (hpccPlatform != null)
         {
-            return closed;
+            HPCCPlatformRegistry.release(hpccPlatformKey, hpccPlatform);
+            hpccPlatform = null;
         }
     }
 
+    public boolean isClosed()
+    {
+        //not taken under closedLock, the constructor holds that lock while metadata workers check the connection
+        return closed;
+    }
+
     public DatabaseMetaData getMetaData() throws SQLException
     {
         return metadata;
@@ -401,26 +665,53 @@ public class HPCCConnection implements Connection
     public SQLWarning getWarnings() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST,  "HPCCConnection: getWarnings");
-        return warnings;
+        return warnings.get();
     }
 
     public void clearWarnings() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST,  "HPCCConnection: clearWarnings.");
-        warnings = null;
+        warnings.set(null);
     }
 
     public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  "HPCCConnection: createStatement(resulttype, resultsetcon)##");
-        return new HPCCPreparedStatement(this, null);
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  "HPCCConnection: createStatement({}, {})", resultSetType, resultSetConcurrency);
+        return new HPCCStatement(this, resolveResultSetType(resultSetType, resultSetConcurrency));
     }
 
     public PreparedStatement prepareStatement(String query, int resultSetType, int resultSetConcurrency)
             throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  "HPCCConnection: prepareStatement(" + query + ", resultsetype, resultsetcon)##");
-        return new HPCCPreparedStatement(this, query);
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  "HPCCConnection: prepareStatement({}, {}, {})", query, resultSetType, resultSetConcurrency);
+        HPCCPreparedStatement p = new HPCCPreparedStatement(this, query, resolveResultSetType(resultSetType, resultSetConcurrency));
+        SQLWarning prepstmtexcp = p.getWarnings();
+        if (prepstmtexcp != null)
+            throw (SQLException)prepstmtexcp.getNextException();
+
+        return p;
+    }
+
+    /*
+     * HPCC results are read only snapshots: scroll sensitive requests are served scroll insensitive,
+     * updatable ones read only, and a warning is added to the connection as the JDBC spec prescribes.
+     */
+    private int resolveResultSetType(int resultSetType, int resultSetConcurrency) throws SQLException
+    {
+        if (resultSetType != ResultSet.TYPE_FORWARD_ONLY && resultSetType != ResultSet.TYPE_SCROLL_INSENSITIVE
+                && resultSetType != ResultSet.TYPE_SCROLL_SENSITIVE)
+            throw new SQLException("HPCCConnection: Invalid result set type: " + resultSetType);
+
+        if (resultSetType == ResultSet.TYPE_SCROLL_SENSITIVE)
+        {
+            addWarning(new SQLWarning("HPCCConnection: TYPE_SCROLL_SENSITIVE not supported, using TYPE_SCROLL_INSENSITIVE"));
+            resultSetType = ResultSet.TYPE_SCROLL_INSENSITIVE;
+        }
+
+        if (resultSetConcurrency != ResultSet.CONCUR_READ_ONLY)
+            addWarning(new SQLWarning("HPCCConnection: Only CONCUR_READ_ONLY result sets are supported"));
+
+        return resultSetType;
     }
 
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException
@@ -537,18 +828,64 @@ public class HPCCConnection implements Connection
         throw new UnsupportedOperationException("HPCCConnection: createSQLXML Not supported yet.");
     }
 
+    /**
+     * Pings the WsSQL service on the driver executor and waits at most timeout seconds for the answer.
+     *
+     * @param timeout seconds to wait for the WsSQL service, 0 waits until the request returns
+     */
     public boolean isValid(int timeout) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  "HPCCConnection: isValid");
-        if (!isClosed())
-            return hasTargetWsSQLBeenReached();
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  "HPCCConnection: isValid({})", timeout);
+
+        if (timeout < 0)
+            throw new SQLException("HPCCConnection: isValid timeout must be >= 0");
 
-        return false;
+        if (isClosed() || !hasTargetWsSQLBeenReached())
+            return false;
+
+        final HPCCWsSQLClient client = getWsSQLClient();
+        Future<Boolean> probe;
+        try
+        {
+            probe = HPCCDriverExecutor.getSharedExecutor().submit(new Callable<Boolean>()
+            {
+                public Boolean call() throws Exception
+                {
+                    return client.isWsSQLReachable();
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            return false;
+        }
+
+        try
+        {
+            return timeout > 0 ? probe.get(timeout, TimeUnit.SECONDS) : probe.get();
+        }
+        catch (TimeoutException e)
+        {
+            probe.cancel(true);
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "HPCCConnection: WsSQL did not respond within {}s", timeout);
+            return false;
+        }
+        catch (ExecutionException e)
+        {
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "HPCCConnection: WsSQL could not be reached: {}", e.getCause().getLocalizedMessage());
+            return false;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            probe.cancel(true);
+            return false;
+        }
     }
 
     public void setClientInfo(String name, String value) throws SQLClientInfoException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  "HPCCCONNECTION SETCLIENTINFO(" + name + ", " + value + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  "HPCCCONNECTION SETCLIENTINFO({}, {})", name, value);
         clientInfo.put(name, value);
     }
 
@@ -584,12 +921,24 @@ public class HPCCConnection implements Connection
 
     public <T> T unwrap(Class<T> iface) throws SQLException
     {
-        throw new UnsupportedOperationException("HPCCConnection: unwrap(Class<T> iface) Not supported yet.");
+        if (iface != null && iface.isInstance(this))
+            return iface.cast(this);
+
+        throw new SQLException("HPCCConnection: not a wrapper for " + iface);
     }
 
     public boolean isWrapperFor(Class<?> iface) throws SQLException
     {
-        throw new UnsupportedOperationException("HPCCConnection: isWrapperFor(Class<?> iface) sNot supported yet.");
+        return iface != null && iface.isInstance(this);
+    }
+
+    /**
+     * Runtime metrics of this connection, including those of its statements.
+     * Reachable through Connection.unwrap(HPCCConnection.class), also for pooled connections.
+     */
+    public HPCCMetrics getMetrics()
+    {
+        return metrics;
     }
 
     public boolean hasTargetWsSQLBeenReached()
@@ -602,31 +951,131 @@ public class HPCCConnection implements Connection
         return hpccPlatform;
     }
 
+    /**
+     * Key of the JVM wide metadata cache entry shared by connections to the same end points with the same credentials.
+     */
+    public String getMetaDataCacheKey()
+    {
+        return metaDataCacheKey;
+    }
+
     public ExecuteSQLResponseWrapper executeSQL(String sqlquery) throws Exception
     {
-        if (isClosed())
-            throw new SQLException("ERROR: HPCCConnection is closed");
+        return executeSQL(sqlquery, 0);
+    }
 
-        if (wsSQLClient == null)
-            throw new SQLException("ERROR: WsSQLClient not available");
+    /**
+     * @param timeoutMillis time WsSQL waits for the workunit to complete, 0 waits up to ReadTimeoutMilli
+     */
+    public ExecuteSQLResponseWrapper executeSQL(String sqlquery, int timeoutMillis) throws Exception
+    {
+        return executeSQL(sqlquery, timeoutMillis, eclResultLimit, pageSize);
+    }
 
-        return wsSQLClient.executeSQLFullResponse(sqlquery, targetcluster, queryset, eclResultLimit, pageSize,pageOffset, false, false, userName, readTimoutMillis);
+    /**
+     * @param resultLimit       maximum number of result rows, i.e. Statement.getMaxRows
+     * @param resultWindowCount number of rows returned with the response, further rows are fetched in windows of this size
+     */
+    public ExecuteSQLResponseWrapper executeSQL(String sqlquery, int timeoutMillis, int resultLimit, int resultWindowCount) throws Exception
+    {
+        return getWsSQLClient().executeSQLFullResponse(sqlquery, targetcluster, queryset, resultLimit, resultWindowCount, pageOffset, false, false, userName, getWaitMillis(timeoutMillis));
+    }
+
+    private int getWaitMillis(int timeoutMillis)
+    {
+        return timeoutMillis > 0 ? timeoutMillis : readTimoutMillis;
+    }
+
+    /**
+     * WsSQL returns once its wait time expires, even if the workunit is still executing.
+     */
+    public static boolean isWorkunitRunning(ECLWorkunitWrapper workunit)
+    {
+        return workunit != null && isWorkunitRunning(workunit.getState());
+    }
+
+    public static boolean isWorkunitRunning(String workunitState)
+    {
+        if (workunitState == null)
+            return false;
+
+        String state = workunitState.toLowerCase();
+        return state.equals("submitted") || state.equals("compiling") || state.equals("running") || state.equals("blocked")
+                || state.equals("wait") || state.equals("scheduled") || state.equals("uploading_files") || state.equals("debug_running")
+                || state.equals("debugging");
+    }
+
+    /**
+     * Aborts the workunit on the HPCC cluster, releasing its Thor/Roxie capacity.
+     */
+    public void abortWorkunit(String wuid) throws Exception
+    {
+        Platform platform = getOpenHPCCPlatform();
+
+        HPCCJDBCUtils.traceoutln(Level.INFO, "Aborting workunit: {}", wuid);
+        HPCCWsClient wsClient = platform.checkOutHPCCWsClient();
+        try
+        {
+            wsClient.getWsWorkunitsClient().abortWU(wuid);
+        }
+        finally
+        {
+            platform.checkInHPCCWsClient(wsClient);
+        }
+    }
+
+    /**
+     * Current state of the workunit as reported by WsWorkunits, see isWorkunitRunning(String).
+     */
+    public String getWorkunitState(String wuid) throws Exception
+    {
+        Platform platform = getOpenHPCCPlatform();
+        HPCCWsClient wsClient = platform.checkOutHPCCWsClient();
+        try
+        {
+            WorkunitWrapper workunit = wsClient.getWsWorkunitsClient().getWUInfo(wuid);
+            return workunit != null ? workunit.getState() : null;
+        }
+        finally
+        {
+            platform.checkInHPCCWsClient(wsClient);
+        }
     }
 
     public List<DFULogicalFileWrapper> getHPCCTables(String filenamefilter) throws Exception
     {
-        if (isClosed())
-            throw new SQLException("ERROR: HPCCConnection is closed");
+        Platform platform = getOpenHPCCPlatform();
+        HPCCWsClient wsClient = platform.checkOutHPCCWsClient();
+        try
+        {
+            return wsClient.getWsDFUClient().getLogicalFiles(filenamefilter, "", pageSize, pageOffset, pageSize);
+        }
+        finally
+        {
+            platform.checkInHPCCWsClient(wsClient);
+        }
+    }
 
-        return hpccPlatform.checkOutHPCCWsClient().getWsDFUClient().getLogicalFiles(filenamefilter, "", pageSize, pageOffset, pageSize);
+    /**
+     * Fetches one page of the logical file listing.
+     */
+    public List<DFULogicalFileWrapper> getHPCCTables(String filenamefilter, int pageStart, int count) throws Exception
+    {
+        Platform platform = getOpenHPCCPlatform();
+        HPCCWsClient wsClient = platform.checkOutHPCCWsClient();
+        try
+        {
+            return wsClient.getWsDFUClient().getLogicalFiles(filenamefilter, "", pageStart + count, pageStart, count);
+        }
+        finally
+        {
+            platform.checkInHPCCWsClient(wsClient);
+        }
     }
 
     public Columns_type1Wrapper getHPCCTableColumns(String filenamefilter) throws Exception
     {
-        if (isClosed())
-            throw new SQLException("ERROR: HPCCConnection is closed");
-
-        HPCCTableWrapper[] table = wsSQLClient.getTables(filenamefilter);
+        HPCCTableWrapper[] table = getWsSQLClient().getTables(filenamefilter);
         if (table != null && table.length > 0)
             return table[0].getColumns();
 
@@ -635,65 +1084,129 @@ public class HPCCConnection implements Connection
 
     public HPCCQuerySetWrapper[] getStoredProcedures(String querysetname) throws Exception
     {
-        if (isClosed())
-            throw new SQLException("ERROR: HPCCConnection is closed");
-
-        return wsSQLClient.getStoredProcedures(querysetname);
+        return getWsSQLClient().getStoredProcedures(querysetname);
     }
 
     public DataQuerySet[] getDataQuerySets() throws SQLException
     {
-        if (isClosed())
-            throw new SQLException("ERROR: HPCCConnection is closed");
-
-        return hpccPlatform.getDataQuerySets();
+        return getOpenHPCCPlatform().getDataQuerySets();
     }
 
     public Cluster[] getClusters() throws SQLException
     {
-        if (isClosed())
-            throw new SQLException("ERROR: HPCCConnection is closed");
-
-        return hpccPlatform.getClusters();
+        return getOpenHPCCPlatform().getClusters();
     }
 
     public Version getVersion() throws SQLException
     {
-        if (isClosed())
-            throw new SQLException("ERROR: HPCCConnection is closed");
-
-        return wsSQLClient.getVersion();
+        return getWsSQLClient().getVersion();
     }
 
+    /**
+     * Compiles the SQL on the target cluster, unless the same (normalized) SQL was already compiled
+     * for this cluster and queryset, in which case the cached workunit is returned.
+     */
     public ECLWorkunitWrapper prepareSQL(String sqlQuery) throws Exception
     {
         if (isClosed())
             throw new SQLException("ERROR: HPCCConnection is closed");
 
-        return wsSQLClient.prepareSQL(sqlQuery, targetcluster, queryset, connectTimeoutMillis);
+        String cachekey = getPreparedSQLCacheKey(sqlQuery);
+        if (preparedSQLCacheSize > 0)
+        {
+            ECLWorkunitWrapper cached;
+            synchronized (preparedSQLCache)
+            {
+                cached = preparedSQLCache.get(cachekey);
+            }
+
+            if (cached != null)
+            {
+                HPCCJDBCUtils.traceoutln(Level.FINE, "Reusing prepared SQL workunit {}", cached.getWuid());
+                return cached;
+            }
+        }
+
+        ECLWorkunitWrapper preparedSQL = getWsSQLClient().prepareSQL(sqlQuery, targetcluster, queryset, connectTimeoutMillis);
+
+        if (preparedSQLCacheSize > 0 && preparedSQL != null && preparedSQL.getWuid() != null && !preparedSQL.getWuid().isEmpty()
+                && !Workunit.isFailedState(preparedSQL.getState()))
+        {
+            synchronized (preparedSQLCache)
+            {
+                preparedSQLCache.put(cachekey, preparedSQL);
+            }
+        }
+
+        return preparedSQL;
     }
 
-    public ExecutePreparedSQLResponseWrapper executePreparedSQL(String wuid, NamedValueWrapper[] variables) throws Exception
+    /**
+     * Drops the cached workunit for the SQL, i.e. after it could not be executed, so the next prepare recompiles it.
+     */
+    public void evictPreparedSQL(String sqlQuery)
     {
-        if (isClosed())
-            throw new SQLException("ERROR: HPCCConnection is closed");
+        synchronized (preparedSQLCache)
+        {
+            preparedSQLCache.remove(getPreparedSQLCacheKey(sqlQuery));
+        }
+    }
 
-        if (wsSQLClient == null)
-            throw new SQLException("ERROR: WsSQLClient not available");
+    public void clearPreparedSQLCache()
+    {
+        synchronized (preparedSQLCache)
+        {
+            preparedSQLCache.clear();
+        }
+    }
 
+    public int getPreparedSQLCacheCount()
+    {
+        synchronized (preparedSQLCache)
+        {
+            return preparedSQLCache.size();
+        }
+    }
 
-        return wsSQLClient.executePreparedSQL(wuid, targetcluster, variables, readTimoutMillis, eclResultLimit, pageOffset, pageSize, userName, false, false);
+    private String getPreparedSQLCacheKey(String sqlQuery)
+    {
+        return targetcluster + "|" + queryset + "|" + HPCCJDBCUtils.normalizeSQL(sqlQuery);
     }
 
-    public GetResultsResponseWrapper fetchResults(String wuid, int resultWindowStart, int resultWindowCount) throws Exception
+    public ExecutePreparedSQLResponseWrapper executePreparedSQL(String wuid, NamedValueWrapper[] variables) throws Exception
     {
-        if (isClosed())
-            throw new SQLException("ERROR: HPCCConnection is closed");
+        return executePreparedSQL(wuid, variables, 0);
+    }
 
-        if (wsSQLClient == null)
-            throw new SQLException("ERROR: WsSQLClient not available");
+    /**
+     * @param timeoutMillis time WsSQL waits for the workunit to complete, 0 waits up to ReadTimeoutMilli
+     */
+    public ExecutePreparedSQLResponseWrapper executePreparedSQL(String wuid, NamedValueWrapper[] variables, int timeoutMillis) throws Exception
+    {
+        return executePreparedSQL(wuid, variables, timeoutMillis, eclResultLimit, pageSize);
+    }
 
-        return wsSQLClient.getResultResponse(wuid, resultWindowStart, resultWindowCount, true);
+    /**
+     * @param resultLimit       maximum number of result rows, i.e. Statement.getMaxRows
+     * @param resultWindowCount number of rows returned with the response, further rows are fetched in windows of this size
+     */
+    public ExecutePreparedSQLResponseWrapper executePreparedSQL(String wuid, NamedValueWrapper[] variables, int timeoutMillis,
+            int resultLimit, int resultWindowCount) throws Exception
+    {
+        return getWsSQLClient().executePreparedSQL(wuid, targetcluster, variables, getWaitMillis(timeoutMillis), resultLimit, pageOffset, resultWindowCount, userName, false, false);
+    }
+
+    public GetResultsResponseWrapper fetchResults(String wuid, int resultWindowStart, int resultWindowCount) throws Exception
+    {
+        return fetchResults(wuid, resultWindowStart, resultWindowCount, false);
+    }
+
+    /**
+     * @param includeSchema request the result schema with the window, i.e. for the first window of a polled workunit
+     */
+    public GetResultsResponseWrapper fetchResults(String wuid, int resultWindowStart, int resultWindowCount, boolean includeSchema) throws Exception
+    {
+        return getWsSQLClient().getResultResponse(wuid, resultWindowStart, resultWindowCount, !includeSchema);
     }
 
     //Introduced in java 1.7@Override
@@ -0,0 +1,238 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.hpccsystems.ws.client.HPCCWsClient;
+import org.hpccsystems.ws.client.platform.Platform;
+import org.hpccsystems.ws.client.wrappers.wsdfu.DFULogicalFileWrapper;
+
+/**
+ * Loads the HPCC logical file catalog in chunks fetched concurrently from WsDFU.
+ *
+ * A bounded number of workers on the driver executor claim consecutive chunks until the configured
+ * file count has been reached or WsDFU returns a short chunk. Files are published to the metadata
+ * cache entry as each chunk arrives, so callers only need to wait for the first chunk.
+ *
+ * The loader outlives the connection which started it, it is kept by the JVM wide cache entry. It therefore
+ * talks to WsDFU through the shared Platform rather than the connection, and drops it once loading ended.
+ */
+public class HPCCDFUCatalogLoader
+{
+    private volatile Platform               platform;
+    private final HPCCMetaDataCache.Entry   cacheEntry;
+    private final HPCCLogicalFiles          targetFiles;
+    private final int                       catalogStart;
+    private final int                       catalogSize;
+    private final int                       chunkSize;
+    private final int                       workerCount;
+
+    private final AtomicInteger             nextChunk = new AtomicInteger(0);
+    private final AtomicInteger             activeWorkers = new AtomicInteger(0);
+    private final AtomicInteger             filesLoaded = new AtomicInteger(0);
+    private final CountDownLatch            firstChunkLatch = new CountDownLatch(1);
+    private final CountDownLatch            doneLatch = new CountDownLatch(1);
+    private volatile boolean                exhausted = false;
+    private volatile boolean                failed = false;
+
+    /**
+     * @param catalogStart  offset of the first logical file to load
+     * @param catalogSize   maximum number of logical files to load
+     */
+    public HPCCDFUCatalogLoader(Platform platform, HPCCMetaDataCache.Entry cacheEntry, int catalogStart,
+            int catalogSize, int chunkSize, int workerCount)
+    {
+        this(platform, cacheEntry, null, catalogStart, catalogSize, chunkSize, workerCount);
+    }
+
+    /**
+     * @param targetFiles   files are published here rather than to the cache entry, null publishes to the entry
+     */
+    public HPCCDFUCatalogLoader(Platform platform, HPCCMetaDataCache.Entry cacheEntry, HPCCLogicalFiles targetFiles,
+            int catalogStart, int catalogSize, int chunkSize, int workerCount)
+    {
+        this.platform = platform;
+        this.cacheEntry = cacheEntry;
+        this.targetFiles = targetFiles;
+        this.catalogStart = Math.max(0, catalogStart);
+        this.catalogSize = Math.max(0, catalogSize);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.workerCount = Math.max(1, Math.min(workerCount, (this.catalogSize + this.chunkSize - 1) / this.chunkSize));
+    }
+
+    public void start()
+    {
+        HPCCJDBCUtils.traceoutln(Level.INFO, "Fetching HPCC tables in chunks of {} using {} worker(s)...", chunkSize, workerCount);
+
+        activeWorkers.set(workerCount);
+        for (int i = 0; i < workerCount; i++)
+        {
+            HPCCDriverExecutor.getSharedExecutor().execute(new Runnable()
+            {
+                public void run()
+                {
+                    loadChunks();
+                }
+            });
+        }
+    }
+
+    private void loadChunks()
+    {
+        try
+        {
+            while (!exhausted && !failed)
+            {
+                int chunkStart = nextChunk.getAndIncrement() * chunkSize;
+                if (chunkStart >= catalogSize)
+                    break;
+
+                int chunkCount = Math.min(chunkSize, catalogSize - chunkStart);
+                List<DFULogicalFileWrapper> files = fetchChunk(catalogStart + chunkStart, chunkCount);
+
+                int published = publish(files);
+                if (published < chunkCount)
+                    exhausted = true;
+
+                firstChunkLatch.countDown();
+            }
+        }
+        catch (Exception e)
+        {
+            failed = true;
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "WARNING: Fetching HPCC file information failed: {}", e.getMessage());
+        }
+        finally
+        {
+            if (activeWorkers.decrementAndGet() == 0)
+                finish();
+        }
+    }
+
+    private List<DFULogicalFileWrapper> fetchChunk(int pageStart, int count) throws Exception
+    {
+        Platform hpccPlatform = platform;
+        HPCCWsClient wsClient = hpccPlatform.checkOutHPCCWsClient();
+        try
+        {
+            return wsClient.getWsDFUClient().getLogicalFiles(null, "", pageStart + count, pageStart, count);
+        }
+        finally
+        {
+            hpccPlatform.checkInHPCCWsClient(wsClient);
+        }
+    }
+
+    private int publish(List<DFULogicalFileWrapper> files)
+    {
+        if (files == null)
+            return 0;
+
+        HPCCLogicalFiles cachedfiles = cacheEntry.getLogicalFiles();
+        HPCCLogicalFiles dfufiles = targetFiles != null ? targetFiles : cachedfiles;
+        for (DFULogicalFileWrapper table : files)
+        {
+            DFUFile file = new DFUFile(table);
+            if (file.getFullyQualifiedName() != null && file.getFullyQualifiedName().length() > 0)
+            {
+                //keep record definitions already fetched (or restored from a snapshot) for this file
+                DFUFile cached = cachedfiles.getFile(file.getFullyQualifiedName());
+                if (cached != null && cached.hasFileRecDef())
+                    file = cached;
+
+                dfufiles.putFile(file.getFullyQualifiedName(), file);
+                filesLoaded.incrementAndGet();
+            }
+            else
+                HPCCJDBCUtils.traceoutln(Level.SEVERE,  "Found DFU file but could not determine name");
+        }
+
+        return files.size();
+    }
+
+    private void finish()
+    {
+        //the cache entry keeps the loader for its whole lifetime, it should not pin the Platform as well
+        platform = null;
+
+        if (failed)
+        {
+            //allow the next catalog request to start over
+            cacheEntry.setDFUMetaDataCached(false);
+        }
+        else if (filesLoaded.get() > 0)
+        {
+            try
+            {
+                cacheEntry.getLogicalFiles().updateSuperFiles();
+            }
+            catch (Exception e)
+            {
+                HPCCJDBCUtils.traceoutln(Level.INFO, "WARNING: updating superfiles failed: {}", e.getMessage());
+            }
+        }
+
+        HPCCJDBCUtils.traceoutln(Level.INFO, "HPCC tables fetched: {}{}", filesLoaded.get(), (failed ? " (incomplete)" : ""));
+
+        firstChunkLatch.countDown();
+        doneLatch.countDown();
+    }
+
+    /**
+     * Blocks until the first chunk has been published, or loading ended.
+     *
+     * @return false if the catalog could not be loaded
+     */
+    public boolean awaitFirstChunk() throws InterruptedException
+    {
+        firstChunkLatch.await();
+        return !failed || filesLoaded.get() > 0;
+    }
+
+    /**
+     * Blocks until the whole catalog has been loaded or the timeout elapsed.
+     *
+     * @return true if loading ended within the timeout
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return doneLatch.await(timeout, unit);
+    }
+
+    public boolean isDone()
+    {
+        return doneLatch.getCount() == 0;
+    }
+
+    public boolean hasFailed()
+    {
+        return failed;
+    }
+
+    public int getFilesLoaded()
+    {
+        return filesLoaded.get();
+    }
+}
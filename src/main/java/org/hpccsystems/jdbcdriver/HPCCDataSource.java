@@ -0,0 +1,515 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.ConnectionPoolDataSource;
+import javax.sql.DataSource;
+import javax.sql.PooledConnection;
+
+/**
+ * DataSource backed by a bounded pool of HPCCConnections.
+ *
+ * Physical connections are created through HPCCDriver, so the URL and properties accepted
+ * by the driver apply here as well. Idle connections are handed out most recently used first;
+ * connections idle longer than idleTimeoutMillis, or older than maxLifetimeMillis, are closed
+ * as the pool is used. A connection idle for at least validationIdleMillis is validated with
+ * isValid(validationTimeout), a round trip to WsSQL, before it is handed out again. As a ConnectionPoolDataSource it hands out unpooled HPCCPooledConnections
+ * for use by external pool managers.
+ */
+public class HPCCDataSource implements DataSource, ConnectionPoolDataSource
+{
+    public static final int                     MAXPOOLSIZEDEFAULT          = 10;
+    public static final long                    IDLETIMEOUTMILLISDEFAULT    = 10 * 60 * 1000L;
+    public static final long                    MAXLIFETIMEMILLISDEFAULT    = 30 * 60 * 1000L;
+    public static final int                     LOGINTIMEOUTSECDEFAULT      = 30;
+    public static final int                     VALIDATIONTIMEOUTSECDEFAULT = 5;
+    public static final long                    VALIDATIONIDLEMILLISDEFAULT = 30 * 1000L;
+
+    private final HPCCDriver                    driver = new HPCCDriver();
+    private final Properties                    connectionProps = new Properties();
+    private String                              url = HPCCDriver.JDBCURLPROTOCOL;
+
+    private int                                 maxPoolSize = MAXPOOLSIZEDEFAULT;
+    private long                                idleTimeoutMillis = IDLETIMEOUTMILLISDEFAULT;
+    private long                                maxLifetimeMillis = MAXLIFETIMEMILLISDEFAULT;
+    private int                                 loginTimeout = LOGINTIMEOUTSECDEFAULT;
+    private int                                 validationTimeout = VALIDATIONTIMEOUTSECDEFAULT;
+    private long                                validationIdleMillis = VALIDATIONIDLEMILLISDEFAULT;
+    private PrintWriter                         logWriter = null;
+
+    private final Object                        poolLock = new Object();
+    private final ArrayDeque<HPCCPooledConnection> idleConnections = new ArrayDeque<HPCCPooledConnection>();
+    private int                                 totalConnections = 0;
+    private boolean                             poolClosed = false;
+    private final ConnectionEventListener       poolListener = new PoolConnectionEventListener();
+
+    public HPCCDataSource()
+    {
+    }
+
+    public HPCCDataSource(String url, Properties info)
+    {
+        setURL(url);
+        if (info != null)
+            connectionProps.putAll(info);
+    }
+
+    public Connection getConnection() throws SQLException
+    {
+        long deadline = System.currentTimeMillis() + loginTimeout * 1000L;
+
+        while (true)
+        {
+            HPCCPooledConnection candidate = null;
+            List<HPCCPooledConnection> evicted = null;
+
+            synchronized (poolLock)
+            {
+                if (poolClosed)
+                    throw new SQLException("HPCCDataSource: pool has been closed");
+
+                long now = System.currentTimeMillis();
+                evicted = evictIdleConnections(now);
+
+                candidate = idleConnections.pollFirst();
+                if (candidate == null)
+                {
+                    if (totalConnections < maxPoolSize)
+                    {
+                        totalConnections++;
+                    }
+                    else
+                    {
+                        long remaining = deadline - now;
+                        if (remaining <= 0)
+                            throw new SQLException("HPCCDataSource: timed out waiting for a connection, pool size: " + maxPoolSize);
+
+                        try
+                        {
+                            poolLock.wait(remaining);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                            throw new SQLException("HPCCDataSource: interrupted while waiting for a connection");
+                        }
+                        continue;
+                    }
+                }
+            }
+
+            destroyAll(evicted);
+
+            if (candidate == null)
+            {
+                HPCCPooledConnection pooled = null;
+                try
+                {
+                    pooled = createPooledConnection(connectionProps);
+                }
+                finally
+                {
+                    if (pooled == null)
+                        releaseSlot();
+                }
+
+                pooled.addConnectionEventListener(poolListener);
+                return pooled.getConnection();
+            }
+
+            if (isUsable(candidate, System.currentTimeMillis()))
+                return candidate.getConnection();
+
+            destroy(candidate);
+            releaseSlot();
+        }
+    }
+
+    public Connection getConnection(String username, String password) throws SQLException
+    {
+        if (isSameCredentials(username, password))
+            return getConnection();
+
+        //connections for other credentials bypass the pool
+        HPCCJDBCUtils.traceoutln(Level.INFO, "HPCCDataSource: credentials differ from pool configuration, creating unpooled connection");
+        return createPhysicalConnection(withCredentials(username, password));
+    }
+
+    public PooledConnection getPooledConnection() throws SQLException
+    {
+        return createPooledConnection(connectionProps);
+    }
+
+    public PooledConnection getPooledConnection(String username, String password) throws SQLException
+    {
+        return createPooledConnection(withCredentials(username, password));
+    }
+
+    /**
+     * Closes all idle connections and refuses further checkouts. Connections currently in use
+     * are closed as they are returned.
+     */
+    public void close()
+    {
+        List<HPCCPooledConnection> toClose;
+        synchronized (poolLock)
+        {
+            poolClosed = true;
+            toClose = new ArrayList<HPCCPooledConnection>(idleConnections);
+            totalConnections -= idleConnections.size();
+            idleConnections.clear();
+            poolLock.notifyAll();
+        }
+
+        destroyAll(toClose);
+    }
+
+    public int getActiveConnectionCount()
+    {
+        synchronized (poolLock)
+        {
+            return totalConnections - idleConnections.size();
+        }
+    }
+
+    public int getIdleConnectionCount()
+    {
+        synchronized (poolLock)
+        {
+            return idleConnections.size();
+        }
+    }
+
+    private HPCCPooledConnection createPooledConnection(Properties props) throws SQLException
+    {
+        return new HPCCPooledConnection(createPhysicalConnection(props));
+    }
+
+    private HPCCConnection createPhysicalConnection(Properties props) throws SQLException
+    {
+        HPCCConnection connection = (HPCCConnection) driver.connect(url, props);
+        if (connection == null)
+            throw new SQLException("HPCCDataSource: could not create connection for url: " + url);
+
+        if (connection.isClosed())
+        {
+            SQLException e = new SQLException("HPCCDataSource: could not establish connection to: " + connection.getServerAddress());
+            SQLException warnings = connection.getWarnings();
+            if (warnings != null)
+                e.setNextException(warnings);
+            throw e;
+        }
+
+        return connection;
+    }
+
+    private boolean isUsable(HPCCPooledConnection pooled, long now)
+    {
+        if (maxLifetimeMillis > 0 && now - pooled.getCreatedMillis() >= maxLifetimeMillis)
+            return false;
+
+        //recently used connections skip the WsSQL round trip
+        if (now - pooled.getLastUsedMillis() < validationIdleMillis)
+            return !pooled.getPhysicalConnection().isClosed();
+
+        try
+        {
+            return pooled.getPhysicalConnection().isValid(validationTimeout);
+        }
+        catch (SQLException e)
+        {
+            return false;
+        }
+    }
+
+    /*
+     * Idle connections are kept most recently used first, so expired ones are found at the tail.
+     */
+    private List<HPCCPooledConnection> evictIdleConnections(long now)
+    {
+        List<HPCCPooledConnection> evicted = null;
+        if (idleTimeoutMillis <= 0)
+            return evicted;
+
+        HPCCPooledConnection oldest;
+        while ((oldest = idleConnections.peekLast()) != null && now - oldest.getLastUsedMillis() >= idleTimeoutMillis)
+        {
+            if (evicted == null)
+                evicted = new ArrayList<HPCCPooledConnection>();
+            evicted.add(idleConnections.pollLast());
+            totalConnections--;
+        }
+
+        return evicted;
+    }
+
+    private void releaseSlot()
+    {
+        synchronized (poolLock)
+        {
+            totalConnections--;
+            poolLock.notifyAll();
+        }
+    }
+
+    private void destroyAll(List<HPCCPooledConnection> connections)
+    {
+        if (connections == null)
+            return;
+
+        for (HPCCPooledConnection pooled : connections)
+            destroy(pooled);
+    }
+
+    private void destroy(HPCCPooledConnection pooled)
+    {
+        pooled.removeConnectionEventListener(poolListener);
+        try
+        {
+            pooled.close();
+        }
+        catch (SQLException e)
+        {
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "HPCCDataSource: could not close connection: {}", e.getLocalizedMessage());
+        }
+    }
+
+    private void checkIn(HPCCPooledConnection pooled)
+    {
+        boolean keep = false;
+        synchronized (poolLock)
+        {
+            if (!poolClosed && !pooled.getPhysicalConnection().isClosed()
+                    && (maxLifetimeMillis <= 0 || System.currentTimeMillis() - pooled.getCreatedMillis() < maxLifetimeMillis))
+            {
+                idleConnections.addFirst(pooled);
+                keep = true;
+            }
+            else
+                totalConnections--;
+
+            poolLock.notifyAll();
+        }
+
+        if (!keep)
+            destroy(pooled);
+    }
+
+    private class PoolConnectionEventListener implements ConnectionEventListener
+    {
+        public void connectionClosed(ConnectionEvent event)
+        {
+            checkIn((HPCCPooledConnection) event.getSource());
+        }
+
+        public void connectionErrorOccurred(ConnectionEvent event)
+        {
+            HPCCPooledConnection pooled = (HPCCPooledConnection) event.getSource();
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "HPCCDataSource: discarding connection after error: "
+                    + (event.getSQLException() != null ? event.getSQLException().getLocalizedMessage() : ""));
+            destroy(pooled);
+            releaseSlot();
+        }
+    }
+
+    private boolean isSameCredentials(String username, String password)
+    {
+        return sameValue(username, connectionProps.getProperty("username", ""))
+                && sameValue(password, connectionProps.getProperty("password", ""));
+    }
+
+    private static boolean sameValue(String value, String configured)
+    {
+        return (value == null ? "" : value).equals(configured);
+    }
+
+    private Properties withCredentials(String username, String password)
+    {
+        Properties props = new Properties();
+        props.putAll(connectionProps);
+        if (username != null)
+            props.setProperty("username", username);
+        if (password != null)
+            props.setProperty("password", password);
+        return props;
+    }
+
+    public String getURL()
+    {
+        return url;
+    }
+
+    public void setURL(String url)
+    {
+        this.url = url != null ? url : HPCCDriver.JDBCURLPROTOCOL;
+    }
+
+    public void setServerAddress(String serverAddress)
+    {
+        connectionProps.setProperty("ServerAddress", serverAddress);
+    }
+
+    public String getServerAddress()
+    {
+        return connectionProps.getProperty("ServerAddress");
+    }
+
+    public void setUser(String username)
+    {
+        connectionProps.setProperty("username", username);
+    }
+
+    public String getUser()
+    {
+        return connectionProps.getProperty("username");
+    }
+
+    public void setPassword(String password)
+    {
+        connectionProps.setProperty("password", password);
+    }
+
+    public void setProperty(String key, String value)
+    {
+        connectionProps.setProperty(key, value);
+    }
+
+    public String getProperty(String key)
+    {
+        return connectionProps.getProperty(key);
+    }
+
+    public void setProperties(Properties info)
+    {
+        if (info != null)
+            connectionProps.putAll(info);
+    }
+
+    public int getMaxPoolSize()
+    {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(int maxPoolSize)
+    {
+        this.maxPoolSize = Math.max(1, maxPoolSize);
+    }
+
+    public long getIdleTimeoutMillis()
+    {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * @param idleTimeoutMillis idle connections are closed after this many millis, 0 disables idle eviction
+     */
+    public void setIdleTimeoutMillis(long idleTimeoutMillis)
+    {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getMaxLifetimeMillis()
+    {
+        return maxLifetimeMillis;
+    }
+
+    /**
+     * @param maxLifetimeMillis connections are retired once this old, 0 means no limit
+     */
+    public void setMaxLifetimeMillis(long maxLifetimeMillis)
+    {
+        this.maxLifetimeMillis = maxLifetimeMillis;
+    }
+
+    public int getValidationTimeout()
+    {
+        return validationTimeout;
+    }
+
+    public void setValidationTimeout(int seconds)
+    {
+        this.validationTimeout = seconds;
+    }
+
+    public long getValidationIdleMillis()
+    {
+        return validationIdleMillis;
+    }
+
+    /**
+     * @param validationIdleMillis idle connections are validated against WsSQL before reuse once idle this long,
+     *                             0 validates every checkout
+     */
+    public void setValidationIdleMillis(long validationIdleMillis)
+    {
+        this.validationIdleMillis = validationIdleMillis;
+    }
+
+    public PrintWriter getLogWriter() throws SQLException
+    {
+        return logWriter;
+    }
+
+    public void setLogWriter(PrintWriter out) throws SQLException
+    {
+        this.logWriter = out;
+    }
+
+    public void setLoginTimeout(int seconds) throws SQLException
+    {
+        this.loginTimeout = seconds;
+    }
+
+    public int getLoginTimeout() throws SQLException
+    {
+        return loginTimeout;
+    }
+
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException
+    {
+        return HPCCJDBCUtils.getLogger();
+    }
+
+    public <T> T unwrap(Class<T> iface) throws SQLException
+    {
+        if (iface.isInstance(this))
+            return iface.cast(this);
+
+        throw new SQLException("HPCCDataSource: not a wrapper for " + iface.getName());
+    }
+
+    public boolean isWrapperFor(Class<?> iface) throws SQLException
+    {
+        return iface.isInstance(this);
+    }
+}
@@ -18,6 +18,7 @@ along with this program. If not, see <http://www.gnu.org/licenses/>.
 
 package org.hpccsystems.jdbcdriver;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -30,14 +31,17 @@ import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import org.hpccsystems.jdbcdriver.HPCCJDBCUtils.EclTypes;
+import org.hpccsystems.ws.client.HPCCWsSQLClient;
 import org.hpccsystems.ws.client.platform.Cluster;
 import org.hpccsystems.ws.client.platform.DataQuerySet;
 import org.hpccsystems.ws.client.platform.Platform;
-import org.hpccsystems.ws.client.platform.Version;
-import org.hpccsystems.ws.client.utils.FileFormat;
 import org.hpccsystems.ws.client.wrappers.gen.wsdfu.ArrayOfDFUDataColumnWrapper;
 import org.hpccsystems.ws.client.wrappers.gen.wsdfu.DFUDataColumnWrapper;
 import org.hpccsystems.ws.client.wrappers.gen.wsdfu.DFUSearchDataRequestWrapper;
@@ -54,20 +58,15 @@ import org.hpccsystems.ws.client.wrappers.wsdfu.DFULogicalFileWrapper;
 
 public class HPCCDatabaseMetaData implements DatabaseMetaData
 {
-    private HPCCQueries                 eclqueries;
-    private HPCCLogicalFiles            dfufiles;
-    private List<String>                targetclusters;
-    private List<String>                querysets;
+    private volatile HPCCMetaDataCache.Entry metaDataCache;
+    private String                      metaDataCacheKey;
+    private long                        metaDataCacheTTLMillis;
+    private final AtomicBoolean         refreshingMetaDataCache  = new AtomicBoolean(false);
+    static final long                   SNAPSHOTSAVEDELAYMILLIS  = 10000;
 
     public static final short           JDBCVerMajor             = 4;
     public static final short           JDBCVerMinor             = 0;
 
-    private static Version              hpccVersion              = null;
-
-    private boolean                     isHPCCMetaDataCached     = false;
-    private boolean                     isDFUMetaDataCached      = false;
-    private boolean                     isQuerySetMetaDataCached = false;
-
     private String                      userName;
     private String                      targetcluster;
     private String                      queryset;
@@ -86,61 +85,302 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
         this.userName = props.getProperty("username", "");
         this.lazyLoad = Boolean.parseBoolean(props.getProperty("LazyLoad", HPCCDriver.LAZYLOADDEFAULT));
         this.targetcluster = props.getProperty("TargetCluster", HPCCDriver.CLUSTERDEFAULT);
+        this.metaDataCacheTTLMillis = 1000L * HPCCJDBCUtils.stringToInt(props.getProperty("MetaDataCacheTTLSec"), Integer.valueOf(HPCCDriver.METADATACACHETTLDEFAULT));
+        this.metaDataCacheKey = connection.getMetaDataCacheKey();
+        this.metaDataCache = HPCCMetaDataCache.getEntry(metaDataCacheKey, metaDataCacheTTLMillis);
+
+        ensureHPCCMetaDataCached();
 
-        targetclusters = new ArrayList<String>();
-        querysets = new ArrayList<String>();
-        dfufiles = new HPCCLogicalFiles();
-        eclqueries = new HPCCQueries();
+        List<String> targetclusters = metaDataCache().getTargetClusters();
+        if (targetclusters.size() > 0 && !targetclusters.contains(this.targetcluster))
+        {
+            props.setProperty("TargetCluster", targetclusters.get(0));
+            HPCCJDBCUtils.traceoutln(Level.INFO, "Invalid cluster name found: {}. using: {}", this.targetcluster, targetclusters.get(0));
+            this.targetcluster = targetclusters.get(0);
+        }
 
-        if (!isHPCCMetaDataCached())
+        List<String> querysets = metaDataCache().getQuerySets();
+        if (querysets.size() > 0 && !querysets.contains(this.queryset))
         {
-            cacheMetaData();
+            props.setProperty("QuerySet", querysets.get(0));
+            HPCCJDBCUtils.traceoutln(Level.INFO, "Invalid query set name found: {}. using: {}", this.queryset, querysets.get(0));
+            this.queryset = querysets.get(0);
+        }
+        HPCCJDBCUtils.traceoutln(Level.INFO, "HPCCDatabaseMetaData initialized");
+    }
 
-            if (targetclusters != null && targetclusters.size() > 0 && !targetclusters.contains(this.targetcluster))
+    /**
+     * Metadata is shared through HPCCMetaDataCache with other connections to the same end points and user.
+     * Once the current entry expires or is invalidated a new one is fetched and the basic HPCC info re-cached.
+     * Only one of the statements sharing this connection refreshes, the others keep using the expired entry meanwhile.
+     */
+    private HPCCMetaDataCache.Entry metaDataCache()
+    {
+        HPCCMetaDataCache.Entry entry = metaDataCache;
+        if (entry.isExpired() && refreshingMetaDataCache.compareAndSet(false, true))
+        {
+            try
             {
-                props.setProperty("TargetCluster", targetclusters.get(0));
-                HPCCJDBCUtils.traceoutln(Level.INFO, "Invalid cluster name found: "+ this.targetcluster+ ". using: "+targetclusters.get(0));
-                this.targetcluster = targetclusters.get(0);
+                entry = HPCCMetaDataCache.getEntry(metaDataCacheKey, metaDataCacheTTLMillis);
+                metaDataCache = entry;
+                ensureHPCCMetaDataCached();
             }
+            finally
+            {
+                refreshingMetaDataCache.set(false);
+            }
+        }
+        return entry;
+    }
 
-            if (querysets.size() > 0 && !querysets.contains(this.queryset))
+    /*
+     * Connections sharing an entry wait for the first one to populate it rather than each fetching the same data.
+     */
+    private void ensureHPCCMetaDataCached()
+    {
+        HPCCMetaDataCache.Entry entry = metaDataCache;
+        synchronized (entry)
+        {
+            if (entry.isHPCCMetaDataCached())
+                return;
+
+            File snapshotfile = connection.getMetaDataSnapshotFile();
+            if (snapshotfile != null && connection.hasTargetWsSQLBeenReached() && HPCCMetaDataSnapshot.load(snapshotfile, entry))
+                revalidateMetaDataSnapshot(entry, snapshotfile);
+            else if (cacheMetaData())
+                saveMetaDataSnapshot(entry, 0);
+        }
+    }
+
+    /*
+     * Metadata restored from a snapshot is served right away, while it is re-fetched from HPCC in the
+     * background. Fresh file and query lists are swapped into the entry once complete, and the snapshot rewritten.
+     * The refetch only uses the end points captured here and writes to the given entry, never to this
+     * connection's state, so it does not interfere with calls the application makes meanwhile.
+     */
+    private void revalidateMetaDataSnapshot(final HPCCMetaDataCache.Entry entry, final File snapshotfile)
+    {
+        final Platform hpccPlatform = connection.getHPCCPlatform();
+        final HPCCWsSQLClient wsSQLClient;
+        try
+        {
+            wsSQLClient = connection.getWsSQLClient();
+        }
+        catch (SQLException e)
+        {
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "Could not revalidate HPCC metadata snapshot {}: {}", snapshotfile, e.getLocalizedMessage());
+            return;
+        }
+
+        final int pageOffset = connection.getPageOffset();
+        final int pageSize = connection.getPageSize();
+        final int chunkSize = connection.getDFUCatalogChunkSize();
+        final int catalogThreads = connection.getDFUCatalogThreads();
+
+        HPCCDriverExecutor.getSharedExecutor().execute(new Runnable()
+        {
+            public void run()
             {
-                props.setProperty("QuerySet", querysets.get(0));
-                HPCCJDBCUtils.traceoutln(Level.INFO, "Invalid query set name found: "+ this.queryset+". using: "+querysets.get(0));
-                this.queryset = querysets.get(0);
+                long start = System.currentTimeMillis();
+                boolean isSuccess = true;
+                try
+                {
+                    entry.setVersion(wsSQLClient.getVersion());
+
+                    List<String> targetclusters = new ArrayList<String>();
+                    for (Cluster cluster : hpccPlatform.getClusters())
+                        targetclusters.add(cluster.getName());
+                    entry.setTargetClusters(targetclusters);
+
+                    List<String> querysets = new ArrayList<String>();
+                    for (DataQuerySet dataQuerySet : hpccPlatform.getDataQuerySets())
+                        querysets.add(dataQuerySet.getName());
+                    entry.setQuerySets(querysets);
+
+                    if (entry.isQuerySetMetaDataCached())
+                    {
+                        HPCCQueries eclqueries = new HPCCQueries();
+                        parseHPCCQuery(wsSQLClient.getStoredProcedures(null), eclqueries);
+                        entry.setQueries(eclqueries);
+                    }
+                }
+                catch (Exception e)
+                {
+                    isSuccess = false;
+                    HPCCJDBCUtils.traceoutln(Level.WARNING, "Could not revalidate HPCC info: {}", e.getLocalizedMessage());
+                }
+
+                if (isSuccess && entry.isDFUMetaDataCached())
+                {
+                    HPCCLogicalFiles dfufiles = new HPCCLogicalFiles();
+                    HPCCDFUCatalogLoader loader = new HPCCDFUCatalogLoader(hpccPlatform, entry, dfufiles, pageOffset,
+                            pageSize, chunkSize, catalogThreads);
+                    loader.start();
+                    try
+                    {
+                        loader.awaitCompletion(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    if (loader.isDone() && !loader.hasFailed())
+                    {
+                        dfufiles.updateSuperFiles();
+                        entry.setLogicalFiles(dfufiles);
+                        entry.setDFUCatalogLoader(loader);
+                    }
+                    else
+                        isSuccess = false;
+                }
+
+                if (!isSuccess)
+                {
+                    HPCCJDBCUtils.traceoutln(Level.WARNING, "Could not revalidate HPCC metadata snapshot {}, serving snapshot contents", snapshotfile);
+                    return;
+                }
+
+                HPCCJDBCUtils.traceoutln(Level.INFO, "HPCC metadata snapshot revalidated in {}ms", (System.currentTimeMillis() - start));
+                writeMetaDataSnapshot(entry, snapshotfile);
+            }
+        });
+    }
+
+    /*
+     * Persists the entry once any DFU catalog load in progress has completed. Saves requested while one is
+     * pending are coalesced into it, i.e. column fetches are written out at most once per delay period.
+     *
+     * @param delayMillis 0 when a catalog or queryset load completed, otherwise SNAPSHOTSAVEDELAYMILLIS
+     */
+    private void saveMetaDataSnapshot(final HPCCMetaDataCache.Entry entry, long delayMillis)
+    {
+        final File snapshotfile = connection.getMetaDataSnapshotFile();
+        if (snapshotfile == null || !entry.markSnapshotSavePending())
+            return;
+
+        final Runnable save = new Runnable()
+        {
+            public void run()
+            {
+                HPCCDFUCatalogLoader loader = entry.getDFUCatalogLoader();
+                if (loader != null)
+                {
+                    try
+                    {
+                        loader.awaitCompletion(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        entry.clearSnapshotSavePending();
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+
+                entry.clearSnapshotSavePending();
+                writeMetaDataSnapshot(entry, snapshotfile);
             }
+        };
+
+        if (delayMillis <= 0)
+        {
+            HPCCDriverExecutor.getSharedExecutor().execute(save);
+            return;
         }
-        HPCCJDBCUtils.traceoutln(Level.INFO, "HPCCDatabaseMetaData initialized");
+
+        HPCCDriverExecutor.getScheduledExecutor().schedule(new Runnable()
+        {
+            public void run()
+            {
+                HPCCDriverExecutor.getSharedExecutor().execute(save);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void writeMetaDataSnapshot(HPCCMetaDataCache.Entry entry, File snapshotfile)
+    {
+        try
+        {
+            HPCCMetaDataSnapshot.save(snapshotfile, entry);
+        }
+        catch (IOException e)
+        {
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "Could not save HPCC metadata snapshot {}: {}", snapshotfile, e.getLocalizedMessage());
+        }
+    }
+
+    private void ensureDFUMetaDataCached()
+    {
+        HPCCMetaDataCache.Entry entry = metaDataCache();
+        synchronized (entry)
+        {
+            if (!entry.isDFUMetaDataCached())
+            {
+                entry.setDFUMetaDataCached(fetchHPCCFilesInfo(null, false));
+
+                //the catalog keeps loading in the background, a later failure requires a fresh start
+                HPCCDFUCatalogLoader loader = entry.getDFUCatalogLoader();
+                if (loader != null && loader.hasFailed())
+                    entry.setDFUMetaDataCached(false);
+
+                if (entry.isDFUMetaDataCached() && entry.isHPCCMetaDataCached())
+                    saveMetaDataSnapshot(entry, 0);
+            }
+        }
+    }
+
+    private void ensureQuerySetMetaDataCached()
+    {
+        HPCCMetaDataCache.Entry entry = metaDataCache();
+        synchronized (entry)
+        {
+            if (!entry.isQuerySetMetaDataCached())
+            {
+                entry.setQuerySetMetaDataCached(fetchHPCCQueriesInfo());
+                if (entry.isQuerySetMetaDataCached() && entry.isHPCCMetaDataCached())
+                    saveMetaDataSnapshot(entry, 0);
+            }
+        }
+    }
+
+    /**
+     * Drops the shared metadata for this connection's end points and user, it is re-fetched on next use.
+     */
+    public void invalidateMetaDataCache()
+    {
+        HPCCMetaDataCache.invalidate(metaDataCacheKey);
+        metaDataCache();
     }
 
     public boolean isDFUMetaDataCached()
     {
-        return isDFUMetaDataCached;
+        return metaDataCache().isDFUMetaDataCached();
     }
 
     public void setDFUMetaDataCached(boolean cached)
     {
-        this.isDFUMetaDataCached = cached;
+        metaDataCache().setDFUMetaDataCached(cached);
     }
 
     public boolean isQuerySetMetaDataCached()
     {
-        return isQuerySetMetaDataCached;
+        return metaDataCache().isQuerySetMetaDataCached();
     }
 
     public void setQuerySetMetaDataCached(boolean cached)
     {
-        this.isQuerySetMetaDataCached = cached;
+        metaDataCache().setQuerySetMetaDataCached(cached);
     }
 
     public boolean isHPCCMetaDataCached()
     {
-        return isHPCCMetaDataCached;
+        return metaDataCache.isHPCCMetaDataCached();
     }
 
     public void setHPCCMetaDataCached(boolean isMetaDataCached)
     {
-        this.isHPCCMetaDataCached = isMetaDataCached;
+        metaDataCache.setHPCCMetaDataCached(isMetaDataCached);
     }
 
     private boolean cacheMetaData()
@@ -161,29 +401,29 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
 
         if (!lazyLoad)
         {
-            setDFUMetaDataCached(fetchHPCCFilesInfo(null, false));
+            ensureDFUMetaDataCached();
 
             if (isDFUMetaDataCached())
             {
                 HPCCJDBCUtils.traceoutln(Level.INFO, "Tables' Metadata fetched: ");
-                Enumeration<Object> em = dfufiles.getFiles();
+                Enumeration<DFUFile> em = metaDataCache().getLogicalFiles().getFiles();
                 while (em.hasMoreElements())
                 {
-                    DFUFile file = (DFUFile) em.nextElement();
-                    HPCCJDBCUtils.traceoutln(Level.INFO,"\t"+file.getClusterName()+"."+file.getFileName()+"("+file.getFullyQualifiedName()+")");
+                    DFUFile file = em.nextElement();
+                    HPCCJDBCUtils.traceoutln(Level.INFO, "\t{}.{}({})", file.getClusterName(), file.getFileName(), file.getFullyQualifiedName());
                 }
             }
 
-            setQuerySetMetaDataCached(fetchHPCCQueriesInfo());
+            ensureQuerySetMetaDataCached();
 
             if (isQuerySetMetaDataCached())
             {
                 HPCCJDBCUtils.traceoutln(Level.INFO,"Stored Procedures' Metadata fetched: ");
-                Enumeration<Object> em1 = eclqueries.getQueries();
+                Enumeration<HPCCQuery> em1 = metaDataCache().getQueries().getQueries();
                 while (em1.hasMoreElements())
                 {
-                    HPCCQuery query = (HPCCQuery) em1.nextElement();
-                    HPCCJDBCUtils.traceoutln(Level.INFO,"\t" + query.getQuerySet() + "::" + query.getName());
+                    HPCCQuery query = em1.nextElement();
+                    HPCCJDBCUtils.traceoutln(Level.INFO, "\t{}::{}", query.getQuerySet(), query.getName());
                 }
             }
         }
@@ -277,7 +517,8 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData getDatabaseProductVersion");
         // Some ODBC/JDBC bridges/clients do not like alpha chars.
-        return hpccVersion.getMajor() + "." + hpccVersion.getMinor();
+        HPCCMetaDataCache.Entry entry = metaDataCache();
+        return entry.getVersionMajor() + "." + entry.getVersionMinor();
     }
 
     @Override
@@ -382,7 +623,7 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
     public String getIdentifierQuoteString() throws SQLException
     {
         String result = String.valueOf('"');
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData getIdentifierQuoteString: " + result);
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData getIdentifierQuoteString: {}", result);
 
         // OpenLink seems to require a valid quote
         // Observed instances where Easysoft's ODBC/JDBC bridge crashed if driver returned anything but ""
@@ -1062,19 +1303,18 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
         boolean allprocsearch = procedureNamePattern == null || procedureNamePattern.length() == 0
                 || procedureNamePattern.trim().equals("*") || procedureNamePattern.trim().equals("%");
 
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData GETPROCS catalog: " + catalog
-                + ", schemaPattern: " + schemaPattern + ", procedureNamePattern: " + procedureNamePattern);
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData GETPROCS catalog: {}, schemaPattern: {}, procedureNamePattern: {}",
+                catalog, schemaPattern, procedureNamePattern);
 
         if (allprocsearch)
         {
-            if (!isQuerySetMetaDataCached())
-                setQuerySetMetaDataCached(fetchHPCCQueriesInfo());
+            ensureQuerySetMetaDataCached();
 
-            Enumeration<Object> aliases = eclqueries.getAliases();
+            Enumeration<String> aliases = metaDataCache().getQueries().getAliases();
             while (aliases.hasMoreElements())
             {
-                String queryalias = (String)aliases.nextElement();
-                HPCCQuery query = eclqueries.getQuerysetQuery(queryalias);
+                String queryalias = aliases.nextElement();
+                HPCCQuery query = metaDataCache().getQueries().getQuerysetQuery(queryalias);
                 procedures.add(populateProcedureRow(query));
             }
         }
@@ -1143,9 +1383,8 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
     public ResultSet getProcedureColumns(String catalog, String schemaPattern, String procedureNamePattern,
             String columnNamePattern) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData getProcedureColumns catalog: " + catalog
-                + ", schemaPattern: " + schemaPattern + ", procedureNamePattern: " + procedureNamePattern
-                + " columnNamePattern: " + columnNamePattern);
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData getProcedureColumns catalog: {}, schemaPattern: {}, procedureNamePattern: {} columnNamePattern: {}",
+                catalog, schemaPattern, procedureNamePattern, columnNamePattern);
 
         List<List> procedurecols = new ArrayList<List>();
 
@@ -1169,8 +1408,9 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
                     continue;
                 coltype = col.getSqlType();
 
-                HPCCJDBCUtils.traceoutln(Level.FINEST, "Proc col Found: " + query.getName() + "." + fieldname + " of type: " + coltype
-                        + "(" + HPCCJDBCUtils.convertSQLtype2JavaClassName(coltype) + ")");
+                if (HPCCJDBCUtils.isTraceEnabled(Level.FINEST))
+                    HPCCJDBCUtils.traceoutln(Level.FINEST, "Proc col Found: " + query.getName() + "." + fieldname + " of type: " + coltype
+                            + "(" + HPCCJDBCUtils.convertSQLtype2JavaClassName(coltype) + ")");
 
                 ArrayList rowValues = new ArrayList();
                 procedurecols.add(rowValues);
@@ -1232,22 +1472,22 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
 
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData GETTABLES:");
         if (catalog != null)
-            HPCCJDBCUtils.traceoutln(Level.FINEST, "\t Catalog: " + catalog);
+            HPCCJDBCUtils.traceoutln(Level.FINEST, "\t Catalog: {}", catalog);
         else
             HPCCJDBCUtils.traceoutln(Level.FINEST, "\t Catalog: null");
 
         if (schemaPattern != null)
-            HPCCJDBCUtils.traceoutln(Level.FINEST, "\t schemaPattern: " + schemaPattern);
+            HPCCJDBCUtils.traceoutln(Level.FINEST, "\t schemaPattern: {}", schemaPattern);
         else
             HPCCJDBCUtils.traceoutln(Level.FINEST, "\t schemaPattern: null");
 
         if (tableNamePattern != null)
-            HPCCJDBCUtils.traceoutln(Level.FINEST, "\t tableNamePattern: " + tableNamePattern);
+            HPCCJDBCUtils.traceoutln(Level.FINEST, "\t tableNamePattern: {}", tableNamePattern);
         else
             HPCCJDBCUtils.traceoutln(Level.FINEST, "\t tableNamePattern: null");
 
         if (types != null && types.length > 0)
-            HPCCJDBCUtils.traceoutln(Level.FINEST, "\t types: " + types[0]);
+            HPCCJDBCUtils.traceoutln(Level.FINEST, "\t types: {}", types[0]);
         else
             HPCCJDBCUtils.traceoutln(Level.FINEST, "\t types: null");
 
@@ -1258,14 +1498,13 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
 
         if (alltablesearch)
         {
-            if (!isDFUMetaDataCached())
-                setDFUMetaDataCached(fetchHPCCFilesInfo(null, false));
+            ensureDFUMetaDataCached();
 
-            Enumeration<Object> files = dfufiles.getFiles();
+            Enumeration<DFUFile> files = metaDataCache().getLogicalFiles().getFiles();
             while (files.hasMoreElements())
             {
                 //all-table search is expensive, light-weight version doesn't provide all metadata, add to tables anyway
-                tables.add(populateTableInfo((DFUFile) files.nextElement()));
+                tables.add(populateTableInfo(files.nextElement()));
             }
         }
         else
@@ -1300,8 +1539,7 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
     @Override
     public ResultSet getSchemas() throws SQLException
     {
-        if (!isDFUMetaDataCached())
-            setDFUMetaDataCached(fetchHPCCFilesInfo(null, false));
+        ensureDFUMetaDataCached();
 
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData GETSCHEMAS");
 
@@ -1388,8 +1626,8 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
     @Override
     public ResultSet getColumns(String catalog, String schemaPattern, String tableNamePattern, String columnNamePattern) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData GETCOLUMNS catalog: " + catalog + ", schemaPattern: " + schemaPattern
-                + ", tableNamePattern: " + tableNamePattern + ", columnNamePattern: " + columnNamePattern);
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData GETCOLUMNS catalog: {}, schemaPattern: {}, tableNamePattern: {}, columnNamePattern: {}",
+                catalog, schemaPattern, tableNamePattern, columnNamePattern);
 
         boolean allfieldsearch = columnNamePattern == null || columnNamePattern.length() == 0
                 || columnNamePattern.trim().equals("*") || columnNamePattern.trim().equals("%");
@@ -1398,9 +1636,17 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
 
         ResultSet tables = getTables(catalog, schemaPattern, tableNamePattern, null);
 
+        List<String> tablenames = new ArrayList<String>();
         while (tables.next())
+            tablenames.add(tables.getString(TABLE_NAME));
+
+        fetchRecordDefinitions(tablenames);
+
+        for (String tablename : tablenames)
         {
-            DFUFile file = getDFUFile(tables.getString(TABLE_NAME));
+            DFUFile file = getDFUFile(tablename);
+            if (file == null)
+                continue;
 
             Enumeration<Object> e = file.getAllFields();
             while (e.hasMoreElements())
@@ -1413,8 +1659,9 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
                 int coltype = java.sql.Types.NULL;
                 coltype = field.getSqlType();
 
-                HPCCJDBCUtils.traceoutln(Level.FINEST, "Table col found: " + file.getFileName() + "." + fieldname + " of type: " + coltype
-                        + "(" + HPCCJDBCUtils.convertSQLtype2JavaClassName(coltype) + ")");
+                if (HPCCJDBCUtils.isTraceEnabled(Level.FINEST))
+                    HPCCJDBCUtils.traceoutln(Level.FINEST, "Table col found: " + file.getFileName() + "." + fieldname + " of type: " + coltype
+                            + "(" + HPCCJDBCUtils.convertSQLtype2JavaClassName(coltype) + ")");
 
                 ArrayList rowValues = new ArrayList();
                 columns.add(rowValues);
@@ -1484,7 +1731,7 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
     @Override
     public ResultSet getPrimaryKeys(String catalog, String schema, String table) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData getPrimaryKeys catalog: " + catalog + ", schema: " + schema + ", table: " + table);
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData getPrimaryKeys catalog: {}, schema: {}, table: {}", catalog, schema, table);
 
         List<List<String>> importedkeys = new ArrayList<List<String>>();
         ArrayList<HPCCColumnMetaData> metacols = new ArrayList<HPCCColumnMetaData>();
@@ -1503,7 +1750,7 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
     public ResultSet getImportedKeys(String catalog, String schema, String table) throws SQLException
     {
 
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData getImportedKeys catalog: " + catalog + ", schema: " + schema  + ", table: " + table);
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData getImportedKeys catalog: {}, schema: {}, table: {}", catalog, schema, table);
 
         List<List<String>> importedkeys = new ArrayList<List<String>>();
         ArrayList<HPCCColumnMetaData> metacols = new ArrayList<HPCCColumnMetaData>();
@@ -1529,7 +1776,7 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
     @Override
     public ResultSet getExportedKeys(String catalog, String schema, String table) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData getExportedKeys catalog: " + catalog + ", schema: " + schema + ", table: " + table);
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData getExportedKeys catalog: {}, schema: {}, table: {}", catalog, schema, table);
 
         List<List<String>> exportedkeys = new ArrayList<List<String>>();
         ArrayList<HPCCColumnMetaData> metacols = new ArrayList<HPCCColumnMetaData>();
@@ -1832,14 +2079,14 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
     public int getDatabaseMajorVersion() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData getDatabaseMajorVersion");
-        return hpccVersion.getMajor();
+        return metaDataCache().getVersionMajor();
     }
 
     @Override
     public int getDatabaseMinorVersion() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCDatabaseMetaData getDatabaseMinorVersion");
-        return hpccVersion.getMinor();
+        return metaDataCache().getVersionMinor();
     }
 
     private List<HPCCColumnWrapper> fetchHPCCFileColumns(String filename)
@@ -1854,28 +2101,142 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
             }
             catch (Exception e)
             {
-                HPCCJDBCUtils.traceoutln(Level.ALL, "WARNING: Could not fetch table columns: " + e.getMessage());
+                HPCCJDBCUtils.traceoutln(Level.ALL, "WARNING: Could not fetch table columns: {}", e.getMessage());
             }
         }
         return Collections.emptyList();
     }
 
+    /*
+     * Fetches the record definitions of the given tables which are known but not yet described, using up to
+     * ColumnFetchThreads concurrent WsSQL requests. Failures are left for the per table lookup to report.
+     */
+    private void fetchRecordDefinitions(List<String> tablenames)
+    {
+        final HPCCLogicalFiles dfufiles = metaDataCache().getLogicalFiles();
+        final List<DFUFile> pending = new ArrayList<DFUFile>();
+        for (String tablename : tablenames)
+        {
+            DFUFile file = dfufiles.getFile(tablename);
+            if (file != null && !file.hasFileRecDef())
+                pending.add(file);
+        }
+
+        if (pending.size() <= 1)
+            return; //nothing to gain, per table lookup fetches it
+
+        int workerCount = Math.min(connection.getColumnFetchThreads(), pending.size());
+        HPCCJDBCUtils.traceoutln(Level.INFO, "Fetching {} record definitions using {} worker(s)", pending.size(), workerCount);
+
+        final AtomicInteger nextFile = new AtomicInteger(0);
+        final CountDownLatch workersDone = new CountDownLatch(workerCount);
+        for (int i = 0; i < workerCount; i++)
+        {
+            HPCCDriverExecutor.getSharedExecutor().execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        int fileIndex;
+                        while ((fileIndex = nextFile.getAndIncrement()) < pending.size())
+                        {
+                            DFUFile file = pending.get(fileIndex);
+                            List<HPCCColumnWrapper> columns = fetchHPCCFileColumns(file.getFullyQualifiedName());
+                            if (columns.isEmpty())
+                                continue;
+
+                            synchronized (file)
+                            {
+                                if (!file.hasFileRecDef())
+                                    file.setColumns(columns);
+                            }
+                        }
+                    }
+                    finally
+                    {
+                        workersDone.countDown();
+                    }
+                }
+            });
+        }
+
+        try
+        {
+            workersDone.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        saveMetaDataSnapshot(metaDataCache(), SNAPSHOTSAVEDELAYMILLIS);
+    }
+
+    /*
+     * The full catalog is loaded in chunks in the background, this returns as soon as the first chunk is available.
+     */
+    private boolean fetchHPCCCatalog()
+    {
+        Platform hpccPlatform = connection.getHPCCPlatform();
+        if (hpccPlatform == null)
+        {
+            HPCCJDBCUtils.traceoutln(Level.INFO, "Could not fetch HPCC files (HPCCDatabaseMetaData.hpccPlatform not initialized)");
+            return false;
+        }
+
+        HPCCMetaDataCache.Entry entry = metaDataCache();
+        HPCCDFUCatalogLoader loader = entry.getDFUCatalogLoader();
+        if (loader == null || loader.hasFailed())
+        {
+            loader = new HPCCDFUCatalogLoader(hpccPlatform, entry, connection.getPageOffset(), connection.getPageSize(),
+                    connection.getDFUCatalogChunkSize(), connection.getDFUCatalogThreads());
+            entry.setDFUCatalogLoader(loader);
+            loader.start();
+        }
+
+        try
+        {
+            return loader.awaitFirstChunk();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     private boolean fetchHPCCFilesInfo(String filename, boolean fetchColumns) //when fetch all files, don't fetch columns
     {
         boolean isSuccess = true;
 
-        if (dfufiles.containsFileName(filename))
+        if (filename == null && !fetchColumns)
+            return fetchHPCCCatalog();
+
+        if (metaDataCache().getLogicalFiles().containsFileName(filename))
         {
             if (fetchColumns)
             {
-                if (dfufiles.getFile(filename).hasFileRecDef())
+                if (metaDataCache().getLogicalFiles().getFile(filename).hasFileRecDef())
                 {
-                    HPCCJDBCUtils.traceoutln(Level.INFO, "HPCC dfufile info already present (reconnect to force re-fetch)");
+                    HPCCJDBCUtils.traceoutln(Level.INFO, "HPCC dfufile info already present (cached)");
                     return true;
                 }
                 else
                 {
-                    fetchHPCCFileColumns(filename);
+                    List<HPCCColumnWrapper> columns = fetchHPCCFileColumns(filename);
+                    if (!columns.isEmpty())
+                    {
+                        DFUFile file = metaDataCache().getLogicalFiles().getFile(filename);
+                        synchronized (file)
+                        {
+                            if (!file.hasFileRecDef())
+                                file.setColumns(columns);
+                        }
+                        saveMetaDataSnapshot(metaDataCache(), SNAPSHOTSAVEDELAYMILLIS);
+                        return true;
+                    }
                 }
             }
         }
@@ -1896,26 +2257,15 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
             {
                 for (DFULogicalFileWrapper table : tables)
                 {
-                    DFUFile file = new DFUFile();
-                    String contentType = table.getContentType();
-                    file.setFormat(FileFormat.getFileFormat(contentType));
-                    file.setFullyQualifiedName(table.getName());
+                    DFUFile file = new DFUFile(table);
                     if (fetchColumns)
                     {
                         file.setColumns(connection.getHPCCTableColumns(file.getFullyQualifiedName()).getColumn());
                     }
-                    file.setOwner(table.getOwner());
-                    file.setDescription(table.getDescription());
-
-                    Boolean isSuperFile = null;
-                    isSuperFile = table.getIsSuperfile();
-                    file.setSuperFile(isSuperFile == null ? false : isSuperFile);
-
-                    file.setIsKeyFile(contentType.equals("key") ? true : false);
 
                     if (file.getFullyQualifiedName().length() > 0)
                     {
-                        dfufiles.putFile(file.getFullyQualifiedName(), file);
+                        metaDataCache().getLogicalFiles().putFile(file.getFullyQualifiedName(), file);
                         dfuFileParsedCount++;
                     }
                     else
@@ -1926,11 +2276,11 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
             {
                 try
                 {
-                    dfufiles.updateSuperFiles();
+                    metaDataCache().getLogicalFiles().updateSuperFiles();
                 }
                 catch (Exception e)
                 {
-                    HPCCJDBCUtils.traceoutln(Level.INFO, "WARNING: updating superfiles failed: " + e.getMessage());
+                    HPCCJDBCUtils.traceoutln(Level.INFO, "WARNING: updating superfiles failed: {}", e.getMessage());
                 }
             }
             else
@@ -1941,7 +2291,7 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
         }
         catch (Exception e)
         {
-            HPCCJDBCUtils.traceoutln(Level.ALL, "WARNING: Fetching HPCC file information failed: " + e.getMessage());
+            HPCCJDBCUtils.traceoutln(Level.ALL, "WARNING: Fetching HPCC file information failed: {}", e.getMessage());
             e.printStackTrace();
             return false;
         }
@@ -1953,6 +2303,11 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
     }
 
     private int parseHPCCQuery(HPCCQuerySetWrapper[] querysets)
+    {
+        return parseHPCCQuery(querysets, metaDataCache().getQueries());
+    }
+
+    private int parseHPCCQuery(HPCCQuerySetWrapper[] querysets, HPCCQueries eclqueries)
     {
         int hpccQueryParsedCount = 0;
 
@@ -1998,7 +2353,7 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
                             }
                             catch (Exception e)
                             {
-                                HPCCJDBCUtils.traceoutln(Level.SEVERE,  "Could not add dataset element: " + tablename + ":" + elemmeta.getColumnName());
+                                HPCCJDBCUtils.traceoutln(Level.SEVERE,  "Could not add dataset element: {}:{}", tablename, elemmeta.getColumnName());
                             }
                         }
                     }
@@ -2019,7 +2374,7 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
                             }
                             catch (Exception e)
                             {
-                                HPCCJDBCUtils.traceoutln(Level.SEVERE,  "Could not add dataset element: " + elemmeta.getColumnName());
+                                HPCCJDBCUtils.traceoutln(Level.SEVERE,  "Could not add dataset element: {}", elemmeta.getColumnName());
                             }
                         }
                     }
@@ -2058,7 +2413,7 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
 
         if (isQuerySetMetaDataCached())
         {
-            HPCCJDBCUtils.traceoutln(Level.INFO, "HPCC query info already present (reconnect to force re-fetch)");
+            HPCCJDBCUtils.traceoutln(Level.INFO, "HPCC query info already present (cached)");
             return isSuccess;
         }
 
@@ -2068,7 +2423,7 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
             return isSuccess;
         }
 
-        int querySetsCount = querysets.size();
+        int querySetsCount = metaDataCache().getQuerySets().size();
         if (querySetsCount == 0)
             isSuccess = fetchQuerysetsInfo();
         else
@@ -2129,19 +2484,21 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
         if (connection == null)
             return false;
 
-        if (querysets.size() > 0)
+        if (metaDataCache().getQuerySets().size() > 0)
         {
-            HPCCJDBCUtils.traceoutln(Level.INFO, "QuerySet info already present (reconnect to force re-fetch)");
+            HPCCJDBCUtils.traceoutln(Level.INFO, "QuerySet info already present (cached)");
             return true;
         }
 
         try
         {
+            List<String> querysets = new ArrayList<String>();
             DataQuerySet[] dataQuerySets = connection.getDataQuerySets();
             for (int i = 0; i < dataQuerySets.length; i++)
             {
                 querysets.add(dataQuerySets[i].getName());
             }
+            metaDataCache().setQuerySets(querysets);
         }
         catch (Exception e)
         {
@@ -2156,20 +2513,22 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
         if (connection == null)
             return false;
 
-        if (targetclusters.size() > 0)
+        if (metaDataCache().getTargetClusters().size() > 0)
         {
-            HPCCJDBCUtils.traceoutln(Level.FINEST, "Cluster info already present (reconnect to force re-fetch)");
+            HPCCJDBCUtils.traceoutln(Level.FINEST, "Cluster info already present (cached)");
             return true;
         }
 
         try
         {
+            List<String> targetclusters = new ArrayList<String>();
             Cluster[] clusters = connection.getClusters();
 
             for (int i = 0; i < clusters.length; i++)
             {
                 targetclusters.add(clusters[i].getName());
             }
+            metaDataCache().setTargetClusters(targetclusters);
         }
         catch (Exception e)
         {
@@ -2187,7 +2546,7 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
 
         try
         {
-            hpccVersion = connection.getVersion();
+            metaDataCache().setVersion(connection.getVersion());
         }
         catch (SQLException e)
         {
@@ -2301,11 +2660,17 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
 
     public boolean tableExists(String clustername, String filename)
     {
-        DFUFile file = dfufiles.getFile(filename.toUpperCase());
+        DFUFile file = metaDataCache().getLogicalFiles().getFile(filename.toUpperCase());
         if (file != null && file.hasFileRecDef())
+        {
+            connection.getMetrics().recordMetaDataCacheHit();
             return true;
+        }
         else
+        {
+            connection.getMetrics().recordMetaDataCacheMiss();
             return fetchHPCCFilesInfo(filename, true); //if not already cached, or not parsed, try to fetch from wsdfu
+        }
     }
 
     public HPCCQuery getHpccQuery(String hpccqueryname)
@@ -2327,19 +2692,22 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
         }
 
         if (hpcclQueryExists(querysetname, queryname))
-            query = eclqueries.getQuery(querysetname, queryname);
+            query = metaDataCache().getQueries().getQuery(querysetname, queryname);
 
         return query;
     }
 
     public boolean hpcclQueryExists(String querysetname, String hpccqueryname)
     {
-        boolean found = eclqueries.containsQueryName(querysetname, hpccqueryname);
+        boolean found = metaDataCache().getQueries().containsQueryName(querysetname, hpccqueryname);
 
-        if (!found)
+        if (found)
+            connection.getMetrics().recordMetaDataCacheHit();
+        else
         {
+            connection.getMetrics().recordMetaDataCacheMiss();
             if (fetchHPCCQuerySetInfo(querysetname))
-                found = eclqueries.containsQueryName(querysetname, hpccqueryname);
+                found = metaDataCache().getQueries().containsQueryName(querysetname, hpccqueryname);
         }
 
         return found;
@@ -2354,7 +2722,7 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
         {
             if (tableExists("", subfilename) && !isSuccess)
             {
-                DFUFile subfile = dfufiles.getFile(subfilename);
+                DFUFile subfile = metaDataCache().getLogicalFiles().getFile(subfilename);
                 if (subfile.hasFileRecDef())
                 {
                     isSuccess = true;
@@ -2376,18 +2744,23 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
         DFUFile file = null;
         if (tableExists("", hpccfilename))
         {
-            file = dfufiles.getFile(hpccfilename);
+            file = metaDataCache().getLogicalFiles().getFile(hpccfilename);
             if (file.isSuperFile() && !file.hasFileRecDef())
             {
                 if (file.containsSubfiles())
                 {
                     if (fetchSuperFileSubfile(file))
-                        dfufiles.updateSuperFile(hpccfilename);
+                        metaDataCache().getLogicalFiles().updateSuperFile(hpccfilename);
                 }
             }
-            if (file.isKeyFile() && !file.hasKeyedFieldInfoBeenSet())
+            if (file.isKeyFile())
             {
-                setKeyedFieldInfo(file);
+                //the cached file is shared by all statements, key info is flagged as set while still being appended
+                synchronized (file)
+                {
+                    if (!file.hasKeyedFieldInfoBeenSet())
+                        setKeyedFieldInfo(file);
+                }
             }
         }
 
@@ -2542,7 +2915,7 @@ public class HPCCDatabaseMetaData implements DatabaseMetaData
         }
         catch (Exception e)
         {
-            HPCCJDBCUtils.traceoutln(Level.SEVERE, "Error fetching Index file info: " + file.getFullyQualifiedName());
+            HPCCJDBCUtils.traceoutln(Level.SEVERE, "Error fetching Index file info: {}", file.getFullyQualifiedName());
         }
     }
 
@@ -30,7 +30,6 @@ import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.hpccsystems.ws.client.platform.Platform;
 
 public class HPCCDriver implements Driver
 {
@@ -49,6 +48,30 @@ public class HPCCDriver implements Driver
     public static final String   JDBCURLPROTOCOL          = "jdbc:hpcc";
     public static final String   TRACETOFILEDEFAULT       = "false";
     public static final String   TRACELEVELDEFAULT        = HPCCJDBCUtils.defaultLogLevel.getName();
+    public static final String   RESULTPARSERSTAX         = "STAX";
+    public static final String   RESULTPARSERDOM          = "DOM";
+    public static final String   RESULTPARSERDEFAULT      = RESULTPARSERSTAX;
+    public static final String   PREFETCHWINDOWSDEFAULT   = "0";
+    public static final String   COLUMNARSTORAGEDEFAULT   = "false";
+    public static final String   PREFETCHTHRESHOLDDEFAULT = "0.5";
+    public static final String   REFRESHPLATFORMDEFAULT   = "false";
+    public static final String   METADATACACHETTLDEFAULT  = "600";
+    public static final String   DFUCATALOGCHUNKDEFAULT   = "1000";
+    public static final String   DFUCATALOGTHREADSDEFAULT = "4";
+    public static final String   COLFETCHTHREADSDEFAULT   = "4";
+    public static final String   METADATASNAPSHOTDEFAULT  = "";
+    public static final String   PREPSTMTCACHESIZEDEFAULT = "100";
+    public static final String   BATCHINFLIGHTDEFAULT     = "4";
+    public static final String   WUPOLLMILLISDEFAULT      = "500";
+    public static final String   ADAPTIVEFETCHDEFAULT     = "false";
+    public static final String   ADAPTIVEFETCHMAXDEFAULT  = "50000";
+    public static final String   ADAPTIVEFETCHMEMDEFAULT  = "64";
+    public static final String   PARALLELFETCHDEFAULT     = "0";
+    public static final String   PARALLELFETCHMINDEFAULT  = "100000";
+    public static final String   SCROLLWINDOWSDEFAULT     = "4";
+    public static final String   SCROLLSPILLDIRDEFAULT    = "";
+    public static final String   REGISTERMBEANSDEFAULT    = "false";
+    public static final String   SLOWQUERYMILLISDEFAULT   = "0";
 
     private static DriverPropertyInfo[] infoArray;
 
@@ -74,7 +97,7 @@ public class HPCCDriver implements Driver
 
     public Connection connect(String url, Properties info) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.INFO,  "HPCCConnection jdbc url: " + url);
+        HPCCJDBCUtils.traceoutln(Level.INFO,  "HPCCConnection jdbc url: {}", url);
 
         Properties connprops = new Properties();
 
@@ -100,7 +123,7 @@ public class HPCCDriver implements Driver
                             if (!connprops.containsKey(key))
                                 connprops.put(key, URLDecoder.decode(value, "UTF-8"));
                             else
-                                HPCCJDBCUtils.traceoutln(Level.FINEST,  "Connection property: " + key + " found in info properties and URL, ignoring URL value");
+                                HPCCJDBCUtils.traceoutln(Level.FINEST,  "Connection property: {} found in info properties and URL, ignoring URL value", key);
                         }
                     }
                 }
@@ -108,7 +131,7 @@ public class HPCCDriver implements Driver
         }
         catch (Exception e)
         {
-            HPCCJDBCUtils.traceoutln(Level.SEVERE, "Issue parsing URL! \"" + url + "\"");
+            HPCCJDBCUtils.traceoutln(Level.SEVERE, "Issue parsing URL! \"{}\"", url);
         }
 
         try
@@ -213,22 +236,86 @@ public class HPCCDriver implements Driver
             if (setdefaultreslim)
             {
                 connprops.setProperty("EclResultLimit", ECLRESULTLIMDEFAULT);
-                HPCCJDBCUtils.traceoutln(Level.WARNING,  "Invalid Numeric EclResultLimit value detected, using default value: " + ECLRESULTLIMDEFAULT);
+                HPCCJDBCUtils.traceoutln(Level.WARNING,  "Invalid Numeric EclResultLimit value detected, using default value: {}", ECLRESULTLIMDEFAULT);
             }
-            
-            // Clear platform to allow for re-connects to work
-            Platform.All.clear();
+
+            // Platform state is shared through HPCCPlatformRegistry, re-connects which need fresh state request it explicitly
+            if (!connprops.containsKey("RefreshPlatform"))
+                connprops.setProperty("RefreshPlatform", REFRESHPLATFORMDEFAULT);
 
             String basicAuth = HPCCConnection.createBasicAuth(connprops.getProperty("username"), connprops.getProperty("password"));
 
             connprops.put("BasicAuth", basicAuth);
 
+            if (!connprops.containsKey("MetaDataCacheTTLSec") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("MetaDataCacheTTLSec")))
+                connprops.setProperty("MetaDataCacheTTLSec", METADATACACHETTLDEFAULT);
+
+            if (!connprops.containsKey("DFUCatalogChunkSize") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("DFUCatalogChunkSize")))
+                connprops.setProperty("DFUCatalogChunkSize", DFUCATALOGCHUNKDEFAULT);
+
+            if (!connprops.containsKey("DFUCatalogThreads") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("DFUCatalogThreads")))
+                connprops.setProperty("DFUCatalogThreads", DFUCATALOGTHREADSDEFAULT);
+
+            if (!connprops.containsKey("ColumnFetchThreads") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("ColumnFetchThreads")))
+                connprops.setProperty("ColumnFetchThreads", COLFETCHTHREADSDEFAULT);
+
+            if (!connprops.containsKey("MetaDataSnapshotFile"))
+                connprops.setProperty("MetaDataSnapshotFile", METADATASNAPSHOTDEFAULT);
+
+            if (!connprops.containsKey("PreparedStatementCacheSize") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("PreparedStatementCacheSize")))
+                connprops.setProperty("PreparedStatementCacheSize", PREPSTMTCACHESIZEDEFAULT);
+
+            if (!connprops.containsKey("BatchInFlightLimit") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("BatchInFlightLimit")))
+                connprops.setProperty("BatchInFlightLimit", BATCHINFLIGHTDEFAULT);
+
+            if (!connprops.containsKey("WorkunitPollMillis") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("WorkunitPollMillis")))
+                connprops.setProperty("WorkunitPollMillis", WUPOLLMILLISDEFAULT);
+
+            if (!connprops.containsKey("AdaptiveFetch"))
+                connprops.setProperty("AdaptiveFetch", ADAPTIVEFETCHDEFAULT);
+
+            if (!connprops.containsKey("AdaptiveFetchMaxSize") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("AdaptiveFetchMaxSize")))
+                connprops.setProperty("AdaptiveFetchMaxSize", ADAPTIVEFETCHMAXDEFAULT);
+
+            if (!connprops.containsKey("AdaptiveFetchMemoryMB") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("AdaptiveFetchMemoryMB")))
+                connprops.setProperty("AdaptiveFetchMemoryMB", ADAPTIVEFETCHMEMDEFAULT);
+
+            if (!connprops.containsKey("ParallelFetchWindows") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("ParallelFetchWindows")))
+                connprops.setProperty("ParallelFetchWindows", PARALLELFETCHDEFAULT);
+
+            if (!connprops.containsKey("ParallelFetchMinRows") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("ParallelFetchMinRows")))
+                connprops.setProperty("ParallelFetchMinRows", PARALLELFETCHMINDEFAULT);
+
+            if (!connprops.containsKey("ScrollWindowsInMemory") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("ScrollWindowsInMemory")))
+                connprops.setProperty("ScrollWindowsInMemory", SCROLLWINDOWSDEFAULT);
+
+            if (!connprops.containsKey("ScrollSpillDirectory"))
+                connprops.setProperty("ScrollSpillDirectory", SCROLLSPILLDIRDEFAULT);
+
+            if (!connprops.containsKey("SlowQueryThresholdMillis") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("SlowQueryThresholdMillis")))
+                connprops.setProperty("SlowQueryThresholdMillis", SLOWQUERYMILLISDEFAULT);
+
+            if (!connprops.containsKey("RegisterMBeans"))
+                connprops.setProperty("RegisterMBeans", REGISTERMBEANSDEFAULT);
+
             if (!connprops.containsKey("LazyLoad"))
                 connprops.setProperty("LazyLoad", LAZYLOADDEFAULT);
 
             if (!connprops.containsKey("WsSQLPort"))
                 connprops.setProperty("WsSQLPort", WSSQLPORTDEFAULT);
 
+            if (!connprops.containsKey("ResultParser"))
+                connprops.setProperty("ResultParser", RESULTPARSERDEFAULT);
+
+            if (!connprops.containsKey("ColumnarStorage"))
+                connprops.setProperty("ColumnarStorage", COLUMNARSTORAGEDEFAULT);
+
+            if (!connprops.containsKey("PrefetchWindows") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("PrefetchWindows")))
+                connprops.setProperty("PrefetchWindows", PREFETCHWINDOWSDEFAULT);
+
+            if (!connprops.containsKey("PrefetchThreshold") || !HPCCJDBCUtils.isNumeric(connprops.getProperty("PrefetchThreshold")))
+                connprops.setProperty("PrefetchThreshold", PREFETCHTHRESHOLDDEFAULT);
+
         }
         catch (Exception e)
         {
@@ -237,9 +324,13 @@ public class HPCCDriver implements Driver
             return null;
         }
 
-        HPCCJDBCUtils.traceoutln(Level.INFO,"HPCCDriver::connect " + connprops.getProperty("ServerAddress"));
+        HPCCJDBCUtils.traceoutln(Level.INFO, "HPCCDriver::connect {}", connprops.getProperty("ServerAddress"));
+
+        long startNanos = System.nanoTime();
+        HPCCConnection connection = new HPCCConnection(connprops);
+        connection.getMetrics().recordConnect(System.nanoTime() - startNanos, connection.hasTargetWsSQLBeenReached());
 
-        return new HPCCConnection(connprops);
+        return connection;
     }
 
     public boolean acceptsURL(String url) throws SQLException
@@ -251,7 +342,7 @@ public class HPCCDriver implements Driver
     {
         String [] boolchoices = new String [] {"true", "false"};
 
-        int totalConfigProps = 16;
+        int totalConfigProps = 38;
         infoArray = new DriverPropertyInfo[totalConfigProps];
 
         infoArray[--totalConfigProps] = new DriverPropertyInfo("ConnectTimeoutMilli", CONNECTTIMEOUTMILDEFAULT);
@@ -262,6 +353,99 @@ public class HPCCDriver implements Driver
         infoArray[totalConfigProps].description = "HPCC requests connection read time out value in milliseconds.";
         infoArray[totalConfigProps].required = false;
 
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("ResultParser", RESULTPARSERDEFAULT);
+        infoArray[totalConfigProps].description = "XML parser used on query results: STAX streams rows directly into the result set, DOM builds a full document per result window.";
+        infoArray[totalConfigProps].required = false;
+        infoArray[totalConfigProps].choices = new String [] {RESULTPARSERSTAX, RESULTPARSERDOM};
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("ColumnarStorage", COLUMNARSTORAGEDEFAULT);
+        infoArray[totalConfigProps].description = "If enabled, result windows are stored per column, numeric columns are decoded once into primitive arrays and strings are dictionary encoded.";
+        infoArray[totalConfigProps].required = false;
+        infoArray[totalConfigProps].choices = boolchoices;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("PrefetchWindows", PREFETCHWINDOWSDEFAULT);
+        infoArray[totalConfigProps].description = "Number of result windows read ahead in the background while the current window is consumed (0 disables read-ahead).";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("PrefetchThreshold", PREFETCHTHRESHOLDDEFAULT);
+        infoArray[totalConfigProps].description = "Fraction (0.0 - 1.0) of the current result window consumed before read-ahead of the following windows starts.";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("RefreshPlatform", REFRESHPLATFORMDEFAULT);
+        infoArray[totalConfigProps].description = "If enabled, cached HPCC platform state for the target ECLWatch and user is discarded and rebuilt on connect; otherwise it is shared with other connections.";
+        infoArray[totalConfigProps].required = false;
+        infoArray[totalConfigProps].choices = boolchoices;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("MetaDataCacheTTLSec", METADATACACHETTLDEFAULT);
+        infoArray[totalConfigProps].description = "Seconds HPCC file and published query metadata is shared with other connections to the same server and user before it is re-fetched (0 disables sharing).";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("DFUCatalogChunkSize", DFUCATALOGCHUNKDEFAULT);
+        infoArray[totalConfigProps].description = "Number of HPCC data files requested from WsDFU per call while loading the file catalog.";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("DFUCatalogThreads", DFUCATALOGTHREADSDEFAULT);
+        infoArray[totalConfigProps].description = "Maximum number of concurrent WsDFU requests while loading the file catalog.";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("ColumnFetchThreads", COLFETCHTHREADSDEFAULT);
+        infoArray[totalConfigProps].description = "Maximum number of concurrent WsSQL requests while fetching HPCC data file record definitions for getColumns.";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("MetaDataSnapshotFile", METADATASNAPSHOTDEFAULT);
+        infoArray[totalConfigProps].description = "If set, HPCC file and published query metadata is persisted to this file, loaded from it on connect and revalidated against HPCC in the background.";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("PreparedStatementCacheSize", PREPSTMTCACHESIZEDEFAULT);
+        infoArray[totalConfigProps].description = "Number of compiled prepared SQL workunits kept per connection and reused when the same SQL is prepared again (0 disables reuse).";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("BatchInFlightLimit", BATCHINFLIGHTDEFAULT);
+        infoArray[totalConfigProps].description = "Maximum number of concurrent executePreparedSQL requests issued by PreparedStatement.executeBatch.";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("WorkunitPollMillis", WUPOLLMILLISDEFAULT);
+        infoArray[totalConfigProps].description = "Time WsSQL waits for a query workunit before returning its id, a workunit still running is then polled at this interval until it completes, is cancelled or the query timeout expires.";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("AdaptiveFetch", ADAPTIVEFETCHDEFAULT);
+        infoArray[totalConfigProps].description = "If enabled, result windows start at PageSize rows and grow with the observed row size and fetch latency, unless the statement sets a fetch size.";
+        infoArray[totalConfigProps].required = false;
+        infoArray[totalConfigProps].choices = boolchoices;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("AdaptiveFetchMaxSize", ADAPTIVEFETCHMAXDEFAULT);
+        infoArray[totalConfigProps].description = "Maximum number of rows per result window when AdaptiveFetch is enabled.";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("AdaptiveFetchMemoryMB", ADAPTIVEFETCHMEMDEFAULT);
+        infoArray[totalConfigProps].description = "Memory budget, in megabytes of result data, which caps a result window when AdaptiveFetch is enabled.";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("ParallelFetchWindows", PARALLELFETCHDEFAULT);
+        infoArray[totalConfigProps].description = "Number of result windows downloaded concurrently once a result is known to hold at least ParallelFetchMinRows rows (0 disables parallel download).";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("ParallelFetchMinRows", PARALLELFETCHMINDEFAULT);
+        infoArray[totalConfigProps].description = "Minimum result row count (as reported by WsSQL) for which result windows are downloaded in parallel.";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("ScrollWindowsInMemory", SCROLLWINDOWSDEFAULT);
+        infoArray[totalConfigProps].description = "Number of result windows a scroll insensitive result set keeps in memory, older windows are spilled to a temporary file.";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("ScrollSpillDirectory", SCROLLSPILLDIRDEFAULT);
+        infoArray[totalConfigProps].description = "Directory of the temporary files holding spilled scroll insensitive result windows (defaults to java.io.tmpdir).";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("SlowQueryThresholdMillis", SLOWQUERYMILLISDEFAULT);
+        infoArray[totalConfigProps].description = "Queries whose prepare, execute, parse and fetch time add up to at least this many milliseconds are logged (at WARNING) with their timing breakdown when the result set is closed (0 disables).";
+        infoArray[totalConfigProps].required = false;
+
+        infoArray[--totalConfigProps] = new DriverPropertyInfo("RegisterMBeans", REGISTERMBEANSDEFAULT);
+        infoArray[totalConfigProps].description = "Registers the connection's and the driver's runtime metrics (HPCCMetrics) as JMX MBeans.";
+        infoArray[totalConfigProps].required = false;
+        infoArray[totalConfigProps].choices = boolchoices;
+
         infoArray[--totalConfigProps] = new DriverPropertyInfo("LazyLoad", LAZYLOADDEFAULT);
         infoArray[totalConfigProps].description = "If disabled, all HPCC metadata loaded and cached at connect time; otherwise HPCC file, and published query info is loaded on-demand";
         infoArray[totalConfigProps].required = false;
@@ -0,0 +1,71 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Driver managed thread pool used for background work such as result window read-ahead,
+ * and a single thread scheduler for delayed work.
+ * Threads are daemons so an idle pool never keeps the client JVM alive.
+ */
+public class HPCCDriverExecutor
+{
+    private static final AtomicInteger   threadCount = new AtomicInteger(0);
+    private static final ExecutorService sharedExecutor = Executors.newCachedThreadPool(new ThreadFactory()
+    {
+        public Thread newThread(Runnable task)
+        {
+            Thread thread = new Thread(task, "HPCCJDBC-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private static final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+    {
+        public Thread newThread(Runnable task)
+        {
+            Thread thread = new Thread(task, "HPCCJDBC-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private HPCCDriverExecutor()
+    {
+    }
+
+    public static ExecutorService getSharedExecutor()
+    {
+        return sharedExecutor;
+    }
+
+    /**
+     * Scheduled tasks should be short, or hand their work off to the shared executor.
+     */
+    public static ScheduledExecutorService getScheduledExecutor()
+    {
+        return scheduledExecutor;
+    }
+}
@@ -0,0 +1,105 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.util.logging.Level;
+
+/**
+ * Sizes the result windows of one HPCCResultSet based on what previous windows cost.
+ *
+ * Starts at the initial window size, for a quick first row, and doubles the window after each
+ * fetch which completed within the target latency. The window is capped by the configured maximum
+ * and by the memory budget divided by the bytes per row observed so far. Windows which take much
+ * longer than the target latency halve the size again.
+ */
+public class HPCCFetchWindowSizer
+{
+    public static final long    TARGETLATENCYMILLIS = 1000;
+
+    private final int           minWindowSize;
+    private final int           maxWindowSize;
+    private final long          memoryBudgetBytes;
+
+    private int                 windowSize;
+    private long                rowsMeasured = 0;
+    private long                bytesMeasured = 0;
+    private long                lastLatencyMillis = -1;
+
+    public HPCCFetchWindowSizer(int initialWindowSize, int maxWindowSize, long memoryBudgetBytes)
+    {
+        this.minWindowSize = Math.max(1, initialWindowSize);
+        this.maxWindowSize = Math.max(this.minWindowSize, maxWindowSize);
+        this.memoryBudgetBytes = Math.max(1, memoryBudgetBytes);
+        this.windowSize = this.minWindowSize;
+    }
+
+    public synchronized int getWindowSize()
+    {
+        return windowSize;
+    }
+
+    /**
+     * @param rows          number of rows in the window
+     * @param bytes         size of the window's response
+     * @param latencyMillis round trip time of the request, negative if not representative (i.e. includes query execution)
+     */
+    public synchronized void recordWindow(int rows, long bytes, long latencyMillis)
+    {
+        if (rows <= 0)
+            return;
+
+        rowsMeasured += rows;
+        bytesMeasured += bytes;
+
+        int next = windowSize;
+        if (latencyMillis >= 0)
+        {
+            lastLatencyMillis = latencyMillis;
+            if (latencyMillis <= TARGETLATENCYMILLIS)
+                next = windowSize >= Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : windowSize * 2;
+            else if (latencyMillis > 2 * TARGETLATENCYMILLIS)
+                next = windowSize / 2;
+        }
+
+        long bytesPerRow = Math.max(1, bytesMeasured / rowsMeasured);
+        long budgetRows = memoryBudgetBytes / bytesPerRow;
+
+        next = (int) Math.min(next, Math.min(maxWindowSize, budgetRows));
+        next = Math.max(minWindowSize, next);
+
+        if (next != windowSize)
+        {
+            if (HPCCJDBCUtils.isTraceEnabled(Level.FINEST))
+                HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCFetchWindowSizer: window size " + windowSize + " -> " + next
+                        + " (" + bytesPerRow + " bytes/row, " + latencyMillis + "ms)");
+            windowSize = next;
+        }
+    }
+
+    public synchronized long getBytesPerRow()
+    {
+        return rowsMeasured > 0 ? bytesMeasured / rowsMeasured : 0;
+    }
+
+    public synchronized long getLastLatencyMillis()
+    {
+        return lastLatencyMillis;
+    }
+}
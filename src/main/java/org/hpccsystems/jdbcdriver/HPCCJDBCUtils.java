@@ -32,6 +32,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Handler;
@@ -131,14 +132,76 @@ public class HPCCJDBCUtils
         logger.setLevel(lev);
     }
 
+    /**
+     * True if messages at the given level reach the log, callers building costly
+     * trace messages should check it first.
+     */
+    public static boolean isTraceEnabled(Level level)
+    {
+        return logger != null && logger.isLoggable(level);
+    }
+
     public static void traceoutln(Level level, String message)
     {
-        if (logger != null)
+        if (isTraceEnabled(level))
         {
             logger.log(level, message);
         }
     }
 
+    /*
+     * Parameterized trace messages: each {} in the message is replaced by the next argument, only if
+     * the level is enabled. Hot paths pass constant messages so disabled tracing builds no string.
+     */
+    public static void traceoutln(Level level, String message, Object arg)
+    {
+        if (isTraceEnabled(level))
+        {
+            logger.log(level, formatTrace(message, arg));
+        }
+    }
+
+    public static void traceoutln(Level level, String message, Object arg1, Object arg2)
+    {
+        if (isTraceEnabled(level))
+        {
+            logger.log(level, formatTrace(message, arg1, arg2));
+        }
+    }
+
+    public static void traceoutln(Level level, String message, Object... args)
+    {
+        if (isTraceEnabled(level))
+        {
+            logger.log(level, formatTrace(message, args));
+        }
+    }
+
+    public static void traceoutln(Level level, Supplier<String> message)
+    {
+        if (isTraceEnabled(level))
+        {
+            logger.log(level, message.get());
+        }
+    }
+
+    private static String formatTrace(String message, Object... args)
+    {
+        StringBuilder builder = new StringBuilder(message.length() + 16 * args.length);
+
+        int argIndex = 0;
+        int start = 0;
+        int placeholder;
+        while (argIndex < args.length && (placeholder = message.indexOf("{}", start)) >= 0)
+        {
+            builder.append(message, start, placeholder).append(String.valueOf(args[argIndex++]));
+            start = placeholder + 2;
+        }
+        builder.append(message, start, message.length());
+
+        return builder.toString();
+    }
+
     public static final ThreadLocal <NumberFormat> NUMFORMATTER =
             new ThreadLocal <NumberFormat>()
             {
@@ -272,6 +335,49 @@ public class HPCCJDBCUtils
         return str.trim().replaceAll("\\r\\n|\\r|\\n", " ");
     }
 
+    /**
+     * Collapses whitespace runs outside of quoted literals and drops trailing semicolons,
+     * so SQL text which only differs in formatting maps to the same string.
+     */
+    public static String normalizeSQL(String sql)
+    {
+        if (sql == null)
+            return null;
+
+        StringBuilder normalized = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < sql.length(); i++)
+        {
+            char c = sql.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c))
+            {
+                pendingSpace = normalized.length() > 0;
+                continue;
+            }
+
+            if (pendingSpace)
+            {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+
+            if (quote == 0 && (c == '\'' || c == '"'))
+                quote = c;
+            else if (c == quote)
+                quote = 0;
+
+            normalized.append(c);
+        }
+
+        int end = normalized.length();
+        while (end > 0 && (normalized.charAt(end - 1) == ';' || normalized.charAt(end - 1) == ' '))
+            end--;
+        normalized.setLength(end);
+
+        return normalized.toString();
+    }
+
     public static boolean isLiteralString(String str)
     {
         boolean match = QUOTEDSTRPATTERN.matcher(str).matches();
@@ -350,6 +456,19 @@ public class HPCCJDBCUtils
         }
     }
 
+    public static double stringToDouble(String str, double uponError)
+    {
+        try
+        {
+            Number num = NUMFORMATTER.get().parse(str);
+            return num.doubleValue();
+        }
+        catch (Exception e)
+        {
+            return uponError;
+        }
+    }
+
     public static int stringToInt(String str, int uponError)
     {
         try
@@ -848,18 +967,7 @@ public class HPCCJDBCUtils
         if (strrepresentation == null)
             return null;
         else
-        {
-            try
-            {
-                return Class.forName(convertSQLtype2JavaClassName(type)).getConstructor(String.class).newInstance(strrepresentation);
-            }
-            catch (Exception e)
-            {
-                HPCCJDBCUtils.traceoutln(Level.WARNING, "HPCC JDBC: Field of type: java.sql.Types-" + type + " could not be cast to native Java type (treat as String).");
-                HPCCJDBCUtils.traceoutln(Level.WARNING,  e.getLocalizedMessage());
-                return strrepresentation;
-            }
-        }
+            return HPCCColumnConverter.forSqlType(type).convert(strrepresentation);
     }
 
     /**
@@ -0,0 +1,139 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram. Samples are counted in power of two microsecond buckets, so
+ * percentiles are reported as the upper bound of the bucket they fall in (within a factor of 2).
+ */
+public class HPCCLatencyHistogram
+{
+    private static final int    BUCKETS = 40;
+
+    private final LongAdder []  buckets = new LongAdder[BUCKETS];
+    private final LongAdder     count = new LongAdder();
+    private final LongAdder     totalNanos = new LongAdder();
+    private final AtomicLong    maxNanos = new AtomicLong();
+
+    public HPCCLatencyHistogram()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    public void record(long nanos)
+    {
+        if (nanos < 0)
+            nanos = 0;
+
+        long micros = nanos / 1000;
+        int bucket = micros == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[bucket].increment();
+        count.increment();
+        totalNanos.add(nanos);
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+            max = maxNanos.get();
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public double getTotalMillis()
+    {
+        return totalNanos.sum() / 1000000.0;
+    }
+
+    public double getMeanMillis()
+    {
+        long samples = count.sum();
+        return samples == 0 ? 0 : totalNanos.sum() / 1000000.0 / samples;
+    }
+
+    public double getMaxMillis()
+    {
+        return maxNanos.get() / 1000000.0;
+    }
+
+    public double getP50Millis()
+    {
+        return getPercentileMillis(50);
+    }
+
+    public double getP90Millis()
+    {
+        return getPercentileMillis(90);
+    }
+
+    public double getP99Millis()
+    {
+        return getPercentileMillis(99);
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile, never more than the largest sample.
+     */
+    public double getPercentileMillis(double percentile)
+    {
+        long [] counts = new long[BUCKETS];
+        long samples = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i] = buckets[i].sum();
+            samples += counts[i];
+        }
+
+        if (samples == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(percentile / 100.0 * samples);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min((1L << i) / 1000.0, getMaxMillis());
+        }
+        return getMaxMillis();
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i].reset();
+        count.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("count=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms", getCount(), getMeanMillis(), getP50Millis(),
+                getP99Millis(), getMaxMillis());
+    }
+}
@@ -21,19 +21,23 @@ package org.hpccsystems.jdbcdriver;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
-import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 
+/**
+ * Logical files known to a metadata cache entry, shared by all connections and statements using the entry.
+ */
 public class HPCCLogicalFiles
 {
-    private Properties   files;
-    private List<String> superfiles;
-    private long         reportedFileCount;
+    private ConcurrentHashMap<String, DFUFile> files;
+    private List<String>                       superfiles;
+    private volatile long                      reportedFileCount;
 
     public HPCCLogicalFiles()
     {
-        files = new Properties();
-        superfiles = new ArrayList<String>();
+        files = new ConcurrentHashMap<String, DFUFile>();
+        superfiles = new CopyOnWriteArrayList<String>();
 
         reportedFileCount = 0;
     }
@@ -65,10 +69,10 @@ public class HPCCLogicalFiles
         if (filename == null || filename.isEmpty())
             return null;
 
-        return (DFUFile) files.get(filename.toUpperCase());
+        return files.get(filename.toUpperCase());
     }
 
-    public Enumeration<Object> getFiles()
+    public Enumeration<DFUFile> getFiles()
     {
         return files.elements();
     }
@@ -80,13 +84,13 @@ public class HPCCLogicalFiles
         List<String> subfiles = superfile.getSubfiles();
         for (int y = 0; y < subfiles.size(); y++)
         {
-            DFUFile subfile = ((DFUFile) files.get(subfiles.get(y).toUpperCase()));
+            DFUFile subfile = files.get(subfiles.get(y).toUpperCase());
             if (subfile != null)
             {
                 if (subfile.hasFileRecDef())
                 {
                     eclrecdef = subfile.getFileRecDef("recdef");
-                    HPCCJDBCUtils.traceoutln(Level.INFO,  "\tUsing record definition from: " + subfile.getFullyQualifiedName());
+                    HPCCJDBCUtils.traceoutln(Level.INFO,  "\tUsing record definition from: {}", subfile.getFullyQualifiedName());
                     break;
                 }
                 else if (subfile.isSuperFile())
@@ -102,14 +106,17 @@ public class HPCCLogicalFiles
 
     public void updateSuperFile(String superfilename)
     {
-        DFUFile superfile = (DFUFile) files.get(superfilename.toUpperCase());
-        if (!superfile.hasFileRecDef())
+        DFUFile superfile = files.get(superfilename.toUpperCase());
+        synchronized (superfile)
         {
-            if (superfile.containsSubfiles())
+            if (!superfile.hasFileRecDef())
             {
-                HPCCJDBCUtils.traceoutln(Level.INFO,  "Processing superfile: " + superfile.getFullyQualifiedName());
-                superfile.setFileRecDef(getSubfileRecDef(superfile));
-                files.put(superfile.getFullyQualifiedName().toUpperCase(), superfile);
+                if (superfile.containsSubfiles())
+                {
+                    HPCCJDBCUtils.traceoutln(Level.INFO,  "Processing superfile: {}", superfile.getFullyQualifiedName());
+                    superfile.setFileRecDef(getSubfileRecDef(superfile));
+                    files.put(superfile.getFullyQualifiedName().toUpperCase(), superfile);
+                }
             }
         }
     }
@@ -121,23 +128,26 @@ public class HPCCLogicalFiles
 
         for (int i = 0; i < superfilescount; i++)
         {
-            DFUFile superfile = (DFUFile) files.get(superfiles.get(i).toUpperCase());
-            if (!superfile.hasFileRecDef())
+            DFUFile superfile = files.get(superfiles.get(i).toUpperCase());
+            synchronized (superfile)
             {
-                if (superfile.containsSubfiles())
+                if (!superfile.hasFileRecDef())
                 {
-                    HPCCJDBCUtils.traceoutln(Level.INFO,  "Processing superfile: " + superfile.getFullyQualifiedName());
-                    superfile.setFileRecDef(getSubfileRecDef(superfile));
-                    if (superfile.hasFileRecDef())
+                    if (superfile.containsSubfiles())
                     {
-                        files.put(superfile.getFullyQualifiedName().toUpperCase(), superfile);
-                        superfilesupdated++;
+                        HPCCJDBCUtils.traceoutln(Level.INFO,  "Processing superfile: {}", superfile.getFullyQualifiedName());
+                        superfile.setFileRecDef(getSubfileRecDef(superfile));
+                        if (superfile.hasFileRecDef())
+                        {
+                            files.put(superfile.getFullyQualifiedName().toUpperCase(), superfile);
+                            superfilesupdated++;
+                        }
                     }
                 }
             }
         }
         if (superfilesupdated > 0)
-            HPCCJDBCUtils.traceoutln(Level.INFO,  "Update superfiles' record definition ( " + superfilesupdated + " out of " + superfilescount + " )");
+            HPCCJDBCUtils.traceoutln(Level.INFO,  "Update superfiles' record definition ( {} out of {} )", superfilesupdated, superfilescount);
     }
 
     public long getReportedFileCount()
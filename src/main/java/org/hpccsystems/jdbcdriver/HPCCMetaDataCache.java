@@ -0,0 +1,342 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+import org.hpccsystems.ws.client.platform.Version;
+
+/**
+ * JVM wide cache of HPCC metadata (logical files, published queries, clusters, querysets and version)
+ * shared by all HPCCDatabaseMetaData instances which target the same HPCC end points with the same credentials.
+ *
+ * Every entry expires after the TTL requested by the connection which created it. The number of
+ * entries is bounded, least recently used entries are evicted first. Entries can also be
+ * invalidated explicitly, connections holding an invalidated entry pick up a new one on next use.
+ */
+public class HPCCMetaDataCache
+{
+    public static final int                  MAXENTRIESDEFAULT = 32;
+
+    private static int                       maxEntries = MAXENTRIESDEFAULT;
+    private static final Map<String, Entry>  entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+        {
+            if (size() > maxEntries)
+            {
+                HPCCJDBCUtils.traceoutln(Level.INFO, "Evicting HPCC metadata cache entry: {}", eldest.getKey());
+                eldest.getValue().invalidate();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private HPCCMetaDataCache()
+    {
+    }
+
+    public static class Entry
+    {
+        private final String            key;
+        private final long              expiresAtMillis;
+        private volatile boolean        invalidated              = false;
+
+        private volatile HPCCLogicalFiles dfufiles               = new HPCCLogicalFiles();
+        private volatile HPCCQueries    eclqueries               = new HPCCQueries();
+        private volatile List<String>   targetclusters           = Collections.emptyList();
+        private volatile List<String>   querysets                = Collections.emptyList();
+        private volatile int            versionMajor             = 0;
+        private volatile int            versionMinor             = 0;
+        private volatile HPCCDFUCatalogLoader dfuCatalogLoader   = null;
+        private final AtomicBoolean     snapshotSavePending      = new AtomicBoolean(false);
+
+        private volatile boolean        isHPCCMetaDataCached     = false;
+        private volatile boolean        isDFUMetaDataCached      = false;
+        private volatile boolean        isQuerySetMetaDataCached = false;
+
+        private Entry(String key, long expiresAtMillis)
+        {
+            this.key = key;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        public boolean isExpired()
+        {
+            return invalidated || (expiresAtMillis > 0 && System.currentTimeMillis() >= expiresAtMillis);
+        }
+
+        private void invalidate()
+        {
+            invalidated = true;
+        }
+
+        public HPCCLogicalFiles getLogicalFiles()
+        {
+            return dfufiles;
+        }
+
+        /*
+         * Used to swap in a fully revalidated catalog in one step.
+         */
+        public void setLogicalFiles(HPCCLogicalFiles dfufiles)
+        {
+            this.dfufiles = dfufiles;
+        }
+
+        public HPCCQueries getQueries()
+        {
+            return eclqueries;
+        }
+
+        public void setQueries(HPCCQueries eclqueries)
+        {
+            this.eclqueries = eclqueries;
+        }
+
+        public List<String> getTargetClusters()
+        {
+            return targetclusters;
+        }
+
+        public void setTargetClusters(List<String> clusters)
+        {
+            this.targetclusters = Collections.unmodifiableList(new ArrayList<String>(clusters));
+        }
+
+        public List<String> getQuerySets()
+        {
+            return querysets;
+        }
+
+        public void setQuerySets(List<String> querysets)
+        {
+            this.querysets = Collections.unmodifiableList(new ArrayList<String>(querysets));
+        }
+
+        public int getVersionMajor()
+        {
+            return versionMajor;
+        }
+
+        public int getVersionMinor()
+        {
+            return versionMinor;
+        }
+
+        public void setVersion(int major, int minor)
+        {
+            this.versionMajor = major;
+            this.versionMinor = minor;
+        }
+
+        public void setVersion(Version version)
+        {
+            if (version != null)
+                setVersion(version.getMajor(), version.getMinor());
+        }
+
+        /**
+         * @return true if the caller should schedule a snapshot save, false if one is already pending
+         */
+        public boolean markSnapshotSavePending()
+        {
+            return snapshotSavePending.compareAndSet(false, true);
+        }
+
+        public void clearSnapshotSavePending()
+        {
+            snapshotSavePending.set(false);
+        }
+
+        public HPCCDFUCatalogLoader getDFUCatalogLoader()
+        {
+            return dfuCatalogLoader;
+        }
+
+        public void setDFUCatalogLoader(HPCCDFUCatalogLoader loader)
+        {
+            this.dfuCatalogLoader = loader;
+        }
+
+        public boolean isHPCCMetaDataCached()
+        {
+            return isHPCCMetaDataCached;
+        }
+
+        public void setHPCCMetaDataCached(boolean cached)
+        {
+            this.isHPCCMetaDataCached = cached;
+        }
+
+        public boolean isDFUMetaDataCached()
+        {
+            return isDFUMetaDataCached;
+        }
+
+        public void setDFUMetaDataCached(boolean cached)
+        {
+            this.isDFUMetaDataCached = cached;
+        }
+
+        public boolean isQuerySetMetaDataCached()
+        {
+            return isQuerySetMetaDataCached;
+        }
+
+        public void setQuerySetMetaDataCached(boolean cached)
+        {
+            this.isQuerySetMetaDataCached = cached;
+        }
+    }
+
+    /**
+     * Builds the cache key from the resolved end points, the same way HPCCPlatformRegistry keys platforms,
+     * so equivalent connection properties (address case, explicit default port) share an entry.
+     * The key ends in a digest of the password: as with HPCCPlatformRegistry, a connection presenting
+     * other credentials for the same user never shares an entry, or loads a snapshot, it did not authenticate for.
+     */
+    public static String createKey(String protocol, String host, int port, String user, String password, String wsSQLHost, int wsSQLPort)
+    {
+        String key = HPCCPlatformRegistry.createKey(protocol, host, port, user) + ";" + wsSQLHost.toLowerCase() + ":" + wsSQLPort;
+        return key + ";" + digestCredentials(key, password);
+    }
+
+    /*
+     * SHA-256 of the password salted with the rest of the key, the password itself never leaves the connection.
+     */
+    private static String digestCredentials(String key, String password)
+    {
+        try
+        {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(key.getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+            byte[] digest = sha.digest((password != null ? password : "").getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            //every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Fetches the live entry for the given key, replacing it if expired.
+     *
+     * @param ttlMillis lifetime of a newly created entry, entries created with ttlMillis <= 0 are private
+     *                  to the caller and never expire
+     */
+    public static Entry getEntry(String key, long ttlMillis)
+    {
+        if (ttlMillis <= 0)
+            return new Entry(key, 0);
+
+        synchronized (entries)
+        {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.isExpired())
+            {
+                entry = new Entry(key, System.currentTimeMillis() + ttlMillis);
+                entries.put(key, entry);
+            }
+            return entry;
+        }
+    }
+
+    public static void invalidate(String key)
+    {
+        synchronized (entries)
+        {
+            Entry entry = entries.remove(key);
+            if (entry != null)
+                entry.invalidate();
+        }
+    }
+
+    public static void invalidateAll()
+    {
+        synchronized (entries)
+        {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext())
+            {
+                it.next().invalidate();
+                it.remove();
+            }
+        }
+    }
+
+    public static int size()
+    {
+        synchronized (entries)
+        {
+            return entries.size();
+        }
+    }
+
+    public static int getMaxEntries()
+    {
+        synchronized (entries)
+        {
+            return maxEntries;
+        }
+    }
+
+    public static void setMaxEntries(int max)
+    {
+        synchronized (entries)
+        {
+            maxEntries = Math.max(1, max);
+
+            Iterator<Entry> it = entries.values().iterator();
+            while (entries.size() > maxEntries && it.hasNext())
+            {
+                it.next().invalidate();
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,409 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.hpccsystems.ws.client.utils.FileFormat;
+
+/**
+ * Binary on-disk copy of an HPCCMetaDataCache entry: version, clusters, querysets, logical files
+ * (including known record definitions) and published queries.
+ *
+ * A snapshot is only loaded into an entry with the same cache key it was written from. The key's credential
+ * digest (see HPCCMetaDataCache.createKey) keeps it from connections which did not log in as its writer.
+ * The file is written to a uniquely named temporary sibling and atomically moved over the previous snapshot,
+ * so readers, including other driver processes sharing the path, never see a partial or missing snapshot.
+ */
+public class HPCCMetaDataSnapshot
+{
+    private static final int    MAGIC         = 0x48504d44; //HPMD
+    private static final int    FORMATVERSION = 1;
+    private static final Object fileLock      = new Object();
+
+    private HPCCMetaDataSnapshot()
+    {
+    }
+
+    /**
+     * Populates the entry from the snapshot file.
+     *
+     * @return true if the snapshot existed, matched the entry's key, end points and credentials, and was loaded
+     */
+    public static boolean load(File file, HPCCMetaDataCache.Entry entry)
+    {
+        if (file == null || !file.isFile())
+            return false;
+
+        long start = System.currentTimeMillis();
+        DataInputStream in = null;
+        try
+        {
+            synchronized (fileLock)
+            {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+
+                if (in.readInt() != MAGIC || in.readInt() != FORMATVERSION)
+                {
+                    HPCCJDBCUtils.traceoutln(Level.WARNING, "Ignoring unrecognized metadata snapshot: {}", file);
+                    return false;
+                }
+
+                String key = readString(in);
+                if (!entry.getKey().equals(key))
+                {
+                    HPCCJDBCUtils.traceoutln(Level.INFO, "Metadata snapshot {} was written for a different server or credentials, ignoring", file);
+                    return false;
+                }
+
+                long savedAt = in.readLong();
+
+                int major = in.readInt();
+                int minor = in.readInt();
+                List<String> clusters = readStringList(in);
+                List<String> querysets = readStringList(in);
+
+                boolean hasFiles = in.readBoolean();
+                int filecount = in.readInt();
+                List<DFUFile> files = new ArrayList<DFUFile>(filecount);
+                for (int i = 0; i < filecount; i++)
+                    files.add(readFile(in));
+
+                boolean hasQueries = in.readBoolean();
+                int querycount = in.readInt();
+                List<HPCCQuery> queries = new ArrayList<HPCCQuery>(querycount);
+                for (int i = 0; i < querycount; i++)
+                    queries.add(readQuery(in));
+
+                int aliascount = in.readInt();
+                String [] aliases = new String[aliascount * 3];
+                for (int i = 0; i < aliases.length; i++)
+                    aliases[i] = readString(in);
+
+                //only publish once the whole snapshot has been read
+                entry.setVersion(major, minor);
+                entry.setTargetClusters(clusters);
+                entry.setQuerySets(querysets);
+
+                HPCCLogicalFiles dfufiles = entry.getLogicalFiles();
+                for (DFUFile dfufile : files)
+                    dfufiles.putFile(dfufile.getFullyQualifiedName(), dfufile);
+                if (files.size() > 0)
+                    dfufiles.updateSuperFiles();
+
+                HPCCQueries eclqueries = entry.getQueries();
+                for (HPCCQuery query : queries)
+                    eclqueries.put(query);
+                for (int i = 0; i < aliases.length; i += 3)
+                    eclqueries.putAlias(aliases[i], aliases[i + 1], aliases[i + 2]);
+
+                entry.setDFUMetaDataCached(hasFiles);
+                entry.setQuerySetMetaDataCached(hasQueries);
+                entry.setHPCCMetaDataCached(true);
+
+                HPCCJDBCUtils.traceoutln(Level.INFO, "Loaded metadata snapshot {} ({} files, {} queries, saved {}s ago) in {}ms", file, filecount,
+                        querycount, (System.currentTimeMillis() - savedAt) / 1000, System.currentTimeMillis() - start);
+                return true;
+            }
+        }
+        catch (Exception e)
+        {
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "Could not load metadata snapshot {}: {}", file, e.getLocalizedMessage());
+            return false;
+        }
+        finally
+        {
+            close(in);
+        }
+    }
+
+    public static void save(File file, HPCCMetaDataCache.Entry entry) throws IOException
+    {
+        if (file == null)
+            return;
+
+        synchronized (fileLock)
+        {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists())
+                parent.mkdirs();
+
+            File tmpfile = File.createTempFile(file.getName() + ".", ".tmp", parent);
+            boolean published = false;
+            try
+            {
+                write(tmpfile, entry);
+                try
+                {
+                    Files.move(tmpfile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                }
+                catch (AtomicMoveNotSupportedException e)
+                {
+                    Files.move(tmpfile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                published = true;
+            }
+            finally
+            {
+                if (!published)
+                    tmpfile.delete();
+            }
+        }
+
+        HPCCJDBCUtils.traceoutln(Level.INFO, "Saved metadata snapshot {}", file);
+    }
+
+    private static void write(File tmpfile, HPCCMetaDataCache.Entry entry) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpfile), 64 * 1024));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMATVERSION);
+            writeString(out, entry.getKey());
+            out.writeLong(System.currentTimeMillis());
+
+            out.writeInt(entry.getVersionMajor());
+            out.writeInt(entry.getVersionMinor());
+            writeStringList(out, entry.getTargetClusters());
+            writeStringList(out, entry.getQuerySets());
+
+            List<DFUFile> files = new ArrayList<DFUFile>();
+            Enumeration<DFUFile> fileenum = entry.getLogicalFiles().getFiles();
+            while (fileenum.hasMoreElements())
+                files.add(fileenum.nextElement());
+
+            out.writeBoolean(entry.isDFUMetaDataCached());
+            out.writeInt(files.size());
+            for (DFUFile dfufile : files)
+                writeFile(out, dfufile);
+
+            List<HPCCQuery> queries = new ArrayList<HPCCQuery>();
+            Enumeration<HPCCQuery> queryenum = entry.getQueries().getQueries();
+            while (queryenum.hasMoreElements())
+                queries.add(queryenum.nextElement());
+
+            out.writeBoolean(entry.isQuerySetMetaDataCached());
+            out.writeInt(queries.size());
+            for (HPCCQuery query : queries)
+                writeQuery(out, query);
+
+            List<String> aliases = new ArrayList<String>();
+            Enumeration<String> aliasenum = entry.getQueries().getAliases();
+            while (aliasenum.hasMoreElements())
+                aliases.add(aliasenum.nextElement());
+
+            out.writeInt(aliases.size());
+            for (String qualifiedalias : aliases)
+            {
+                int sep = qualifiedalias.indexOf("::");
+                writeString(out, sep >= 0 ? qualifiedalias.substring(0, sep) : "");
+                writeString(out, sep >= 0 ? qualifiedalias.substring(sep + 2) : qualifiedalias);
+                writeString(out, entry.getQueries().getAliasTarget(qualifiedalias));
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static void writeFile(DataOutputStream out, DFUFile file) throws IOException
+    {
+        writeString(out, file.getFullyQualifiedName());
+        writeString(out, file.getOwner());
+        writeString(out, file.getDescription());
+        writeString(out, file.getFormat() != null ? file.getFormat().name() : null);
+        out.writeBoolean(file.isSuperFile());
+        out.writeBoolean(file.isKeyFile());
+
+        List<HPCCColumnMetaData> columns = new ArrayList<HPCCColumnMetaData>();
+        if (file.hasFileRecDef())
+        {
+            Enumeration<Object> fields = file.getAllFields();
+            while (fields.hasMoreElements())
+                columns.add((HPCCColumnMetaData) fields.nextElement());
+            Collections.sort(columns, new Comparator<HPCCColumnMetaData>()
+            {
+                public int compare(HPCCColumnMetaData a, HPCCColumnMetaData b)
+                {
+                    return a.getIndex() - b.getIndex();
+                }
+            });
+        }
+
+        out.writeInt(columns.size());
+        for (HPCCColumnMetaData column : columns)
+        {
+            writeString(out, column.getColumnName());
+            writeString(out, column.getEclType());
+        }
+    }
+
+    private static DFUFile readFile(DataInputStream in) throws IOException
+    {
+        DFUFile file = new DFUFile();
+        file.setFullyQualifiedName(readString(in));
+        file.setOwner(readString(in));
+        file.setDescription(readString(in));
+        String format = readString(in);
+        if (format != null)
+            file.setFormat(FileFormat.valueOf(format));
+        file.setSuperFile(in.readBoolean());
+        file.setIsKeyFile(in.readBoolean());
+
+        int columncount = in.readInt();
+        if (columncount > 0)
+        {
+            String [] names = new String[columncount];
+            String [] types = new String[columncount];
+            for (int i = 0; i < columncount; i++)
+            {
+                names[i] = readString(in);
+                types[i] = readString(in);
+            }
+            file.setColumns(names, types);
+        }
+
+        return file;
+    }
+
+    private static void writeQuery(DataOutputStream out, HPCCQuery query) throws IOException
+    {
+        writeString(out, query.getQuerySet());
+        writeString(out, query.getID());
+        writeString(out, query.getName());
+        writeString(out, query.getWUID());
+        out.writeBoolean(query.isSuspended());
+        writeStringList(out, query.getAllTables());
+
+        List<HPCCColumnMetaData> schema = query.getSchema();
+        out.writeInt(schema.size());
+        for (HPCCColumnMetaData column : schema)
+        {
+            writeString(out, column.getColumnName());
+            out.writeInt(column.getIndex());
+            writeString(out, column.getEclType());
+            writeString(out, column.getTableName());
+            out.writeInt(column.getParamType());
+        }
+    }
+
+    private static HPCCQuery readQuery(DataInputStream in) throws Exception
+    {
+        HPCCQuery query = new HPCCQuery();
+        query.setQueryset(readString(in));
+        query.setID(readString(in));
+        query.setName(readString(in));
+        query.setWUID(readString(in));
+        query.setSuspended(in.readBoolean());
+
+        for (String dataset : readStringList(in))
+            query.addResultDataset(dataset);
+
+        int columncount = in.readInt();
+        for (int i = 0; i < columncount; i++)
+        {
+            String name = readString(in);
+            HPCCColumnMetaData column = new HPCCColumnMetaData(name, in.readInt(), java.sql.Types.OTHER);
+            column.setEclType(readString(in));
+            column.setTableName(readString(in));
+            column.setParamType(in.readInt());
+            query.addResultElement(column);
+        }
+
+        return query;
+    }
+
+    private static void writeStringList(DataOutputStream out, List<String> list) throws IOException
+    {
+        out.writeInt(list.size());
+        for (String str : list)
+            writeString(out, str);
+    }
+
+    private static List<String> readStringList(DataInputStream in) throws IOException
+    {
+        int count = in.readInt();
+        List<String> list = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+            list.add(readString(in));
+        return list;
+    }
+
+    /*
+     * Length prefixed UTF-8, -1 denotes null. Unlike writeUTF this is not limited to 64k.
+     */
+    private static void writeString(DataOutputStream out, String str) throws IOException
+    {
+        if (str == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte [] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+
+        byte [] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void close(DataInputStream in)
+    {
+        if (in == null)
+            return;
+
+        try
+        {
+            in.close();
+        }
+        catch (IOException e)
+        {
+            //nothing to do
+        }
+    }
+}
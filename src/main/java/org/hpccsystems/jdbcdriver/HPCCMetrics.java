@@ -0,0 +1,274 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Runtime counters and latency histograms of the driver or a connection.
+ *
+ * Connection metrics roll up into the driver's (getDriverMetrics), every sample is recorded at both
+ * levels; statements only keep plain counters (HPCCStatementMetrics). Recording only touches LongAdders,
+ * so metrics are always collected; JMX registration is opt-in (RegisterMBeans connection property).
+ */
+public class HPCCMetrics implements HPCCMetricsMXBean
+{
+    public static final String          JMXDOMAIN = "org.hpccsystems.jdbcdriver";
+
+    private static final HPCCMetrics    driverMetrics = new HPCCMetrics(null);
+    private static final AtomicLong     mbeanSequence = new AtomicLong();
+
+    private final HPCCMetrics           parent;
+
+    private final LongAdder             connects = new LongAdder();
+    private final LongAdder             connectFailures = new LongAdder();
+    private final LongAdder             bytesReceived = new LongAdder();
+    private final LongAdder             rowsParsed = new LongAdder();
+    private final LongAdder             metaDataCacheHits = new LongAdder();
+    private final LongAdder             metaDataCacheMisses = new LongAdder();
+    private final LongAdder             errors = new LongAdder();
+
+    private final HPCCLatencyHistogram  connectLatency = new HPCCLatencyHistogram();
+    private final HPCCLatencyHistogram  executeSQLLatency = new HPCCLatencyHistogram();
+    private final HPCCLatencyHistogram  executePreparedSQLLatency = new HPCCLatencyHistogram();
+    private final HPCCLatencyHistogram  fetchResultsLatency = new HPCCLatencyHistogram();
+    private final HPCCLatencyHistogram  parseLatency = new HPCCLatencyHistogram();
+
+    private ObjectName                  mbeanName = null;
+
+    /**
+     * @param parent metrics every sample is also recorded into, null for none
+     */
+    public HPCCMetrics(HPCCMetrics parent)
+    {
+        this.parent = parent;
+    }
+
+    /**
+     * Totals of all connections created by the driver.
+     */
+    public static HPCCMetrics getDriverMetrics()
+    {
+        return driverMetrics;
+    }
+
+    public void recordConnect(long nanos, boolean success)
+    {
+        connects.increment();
+        if (!success)
+            connectFailures.increment();
+        connectLatency.record(nanos);
+
+        if (parent != null)
+            parent.recordConnect(nanos, success);
+    }
+
+    public void recordExecuteSQL(long nanos)
+    {
+        executeSQLLatency.record(nanos);
+
+        if (parent != null)
+            parent.recordExecuteSQL(nanos);
+    }
+
+    public void recordExecutePreparedSQL(long nanos)
+    {
+        executePreparedSQLLatency.record(nanos);
+
+        if (parent != null)
+            parent.recordExecutePreparedSQL(nanos);
+    }
+
+    public void recordFetchResults(long nanos)
+    {
+        fetchResultsLatency.record(nanos);
+
+        if (parent != null)
+            parent.recordFetchResults(nanos);
+    }
+
+    /**
+     * @param bytes size of the WsSQL result (characters, the same as bytes for ASCII results)
+     */
+    public void recordResultParsed(int rows, long bytes, long nanos)
+    {
+        rowsParsed.add(rows);
+        bytesReceived.add(bytes);
+        parseLatency.record(nanos);
+
+        if (parent != null)
+            parent.recordResultParsed(rows, bytes, nanos);
+    }
+
+    public void recordMetaDataCacheHit()
+    {
+        metaDataCacheHits.increment();
+
+        if (parent != null)
+            parent.recordMetaDataCacheHit();
+    }
+
+    public void recordMetaDataCacheMiss()
+    {
+        metaDataCacheMisses.increment();
+
+        if (parent != null)
+            parent.recordMetaDataCacheMiss();
+    }
+
+    public void recordError()
+    {
+        errors.increment();
+
+        if (parent != null)
+            parent.recordError();
+    }
+
+    public long getConnects()
+    {
+        return connects.sum();
+    }
+
+    public long getConnectFailures()
+    {
+        return connectFailures.sum();
+    }
+
+    public HPCCLatencyHistogram getConnectLatency()
+    {
+        return connectLatency;
+    }
+
+    public HPCCLatencyHistogram getExecuteSQLLatency()
+    {
+        return executeSQLLatency;
+    }
+
+    public HPCCLatencyHistogram getExecutePreparedSQLLatency()
+    {
+        return executePreparedSQLLatency;
+    }
+
+    public HPCCLatencyHistogram getFetchResultsLatency()
+    {
+        return fetchResultsLatency;
+    }
+
+    public HPCCLatencyHistogram getParseLatency()
+    {
+        return parseLatency;
+    }
+
+    public long getBytesReceived()
+    {
+        return bytesReceived.sum();
+    }
+
+    public long getRowsParsed()
+    {
+        return rowsParsed.sum();
+    }
+
+    public long getMetaDataCacheHits()
+    {
+        return metaDataCacheHits.sum();
+    }
+
+    public long getMetaDataCacheMisses()
+    {
+        return metaDataCacheMisses.sum();
+    }
+
+    public long getErrors()
+    {
+        return errors.sum();
+    }
+
+    /**
+     * Clears these metrics only, parents keep their totals.
+     */
+    public void reset()
+    {
+        connects.reset();
+        connectFailures.reset();
+        bytesReceived.reset();
+        rowsParsed.reset();
+        metaDataCacheHits.reset();
+        metaDataCacheMisses.reset();
+        errors.reset();
+        connectLatency.reset();
+        executeSQLLatency.reset();
+        executePreparedSQLLatency.reset();
+        fetchResultsLatency.reset();
+        parseLatency.reset();
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as JMXDOMAIN:type=<type>,id=<sequence number>.
+     * Failures are traced, metrics keep being recorded either way.
+     */
+    public synchronized void registerMBean(String type)
+    {
+        if (mbeanName != null)
+            return;
+
+        try
+        {
+            ObjectName name = new ObjectName(JMXDOMAIN + ":type=" + type + ",id=" + mbeanSequence.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            mbeanName = name;
+            HPCCJDBCUtils.traceoutln(Level.FINE, "Registered metrics MBean {}", name);
+        }
+        catch (Exception e)
+        {
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "Could not register metrics MBean: {}", e.getLocalizedMessage());
+        }
+    }
+
+    public synchronized void unregisterMBean()
+    {
+        if (mbeanName == null)
+            return;
+
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(mbeanName))
+                server.unregisterMBean(mbeanName);
+        }
+        catch (Exception e)
+        {
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "Could not unregister metrics MBean {}: {}", mbeanName, e.getLocalizedMessage());
+        }
+        mbeanName = null;
+    }
+
+    public synchronized ObjectName getMBeanName()
+    {
+        return mbeanName;
+    }
+}
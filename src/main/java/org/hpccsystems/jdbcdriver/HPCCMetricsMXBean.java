@@ -0,0 +1,54 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+
+package org.hpccsystems.jdbcdriver;
+
+/**
+ * JMX view of HPCCMetrics, registered for connections created with RegisterMBeans=true
+ * and for the driver as a whole.
+ */
+public interface HPCCMetricsMXBean
+{
+    public long getConnects();
+
+    public long getConnectFailures();
+
+    public HPCCLatencyHistogram getConnectLatency();
+
+    public HPCCLatencyHistogram getExecuteSQLLatency();
+
+    public HPCCLatencyHistogram getExecutePreparedSQLLatency();
+
+    public HPCCLatencyHistogram getFetchResultsLatency();
+
+    public HPCCLatencyHistogram getParseLatency();
+
+    public long getBytesReceived();
+
+    public long getRowsParsed();
+
+    public long getMetaDataCacheHits();
+
+    public long getMetaDataCacheMisses();
+
+    public long getErrors();
+
+    public void reset();
+}
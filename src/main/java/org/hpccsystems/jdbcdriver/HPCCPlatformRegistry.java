@@ -0,0 +1,158 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.hpccsystems.ws.client.platform.Platform;
+
+/**
+ * JVM wide registry of HPCC Platform instances shared by all connections to the same
+ * ECLWatch end point and user. Entries are reference counted by the connections holding them,
+ * and dropped, also from the wsclient Platform cache, once the last of them released its reference.
+ * A cached Platform is discarded early when a connection explicitly asks for fresh state, or when
+ * the cached instance has been disabled.
+ * A caller whose password does not match the cached entry's gets a Platform of its own, unregistered,
+ * so a failed or stale login never evicts the instance other connections are using.
+ */
+public class HPCCPlatformRegistry
+{
+    private static final Map<String, PlatformEntry> platforms = new HashMap<String, PlatformEntry>();
+
+    private HPCCPlatformRegistry()
+    {
+    }
+
+    private static class PlatformEntry
+    {
+        private final Platform platform;
+        private final String   password;
+        private int            references = 0;
+
+        private PlatformEntry(Platform platform, String password)
+        {
+            this.platform = platform;
+            this.password = password;
+        }
+    }
+
+    public static String createKey(String protocol, String host, int port, String user)
+    {
+        return protocol.toLowerCase() + HPCCJDBCUtils.protocolsep + (user != null ? user : "") + "@" + host.toLowerCase() + ":" + port;
+    }
+
+    /**
+     * Fetches the shared Platform for the given end point and user, creating it if needed.
+     * Every successful acquire must be paired with a release.
+     *
+     * @param refresh discard any cached Platform for this key and build a new one
+     */
+    public static Platform acquire(String protocol, String host, int port, String user, String password, boolean refresh)
+    {
+        String key = createKey(protocol, host, port, user);
+        String pass = password != null ? password : "";
+
+        synchronized (platforms)
+        {
+            PlatformEntry entry = platforms.get(key);
+            if (entry != null && !refresh && !entry.platform.isDisabled() && !entry.password.equals(pass))
+                return createUnregistered(protocol, host, port, user, pass, entry.platform);
+
+            if (entry != null && (refresh || entry.platform.isDisabled()))
+            {
+                HPCCJDBCUtils.traceoutln(Level.INFO, "Discarding cached HPCC platform: {}", key);
+                //connections still holding the old instance keep using it until they close
+                platforms.remove(key);
+                Platform.All.remove(entry.platform);
+                entry = null;
+            }
+            else if (entry == null && refresh)
+            {
+                //created outside of the registry, only the wsclient cache knows about it
+                Platform cached = Platform.get(protocol, host, port, user, pass);
+                Platform.All.remove(cached);
+            }
+
+            if (entry == null)
+            {
+                entry = new PlatformEntry(Platform.get(protocol, host, port, user, pass), pass);
+                platforms.put(key, entry);
+            }
+
+            entry.references++;
+            return entry.platform;
+        }
+    }
+
+    /*
+     * The wsclient Platform cache hands out the instance registered for the end point and user regardless of
+     * the password, so the shared instance is taken out of it while a separate one is built. Called holding platforms.
+     */
+    private static Platform createUnregistered(String protocol, String host, int port, String user, String password, Platform shared)
+    {
+        HPCCJDBCUtils.traceoutln(Level.INFO, "Credentials differ from cached HPCC platform, using a private instance: {}", createKey(protocol, host, port, user));
+        Platform.All.remove(shared);
+        try
+        {
+            Platform platform = Platform.get(protocol, host, port, user, password);
+            Platform.All.remove(platform);
+            return platform;
+        }
+        finally
+        {
+            Platform.All.add(shared);
+        }
+    }
+
+    /**
+     * Releases a Platform returned by acquire, the last release of a shared Platform discards it.
+     * Platforms which are not (or no longer) registered under the key are simply dropped.
+     */
+    public static void release(String key, Platform platform)
+    {
+        if (key == null || platform == null)
+            return;
+
+        synchronized (platforms)
+        {
+            PlatformEntry entry = platforms.get(key);
+            if (entry == null || entry.platform != platform || entry.references <= 0)
+                return;
+
+            if (--entry.references == 0)
+            {
+                HPCCJDBCUtils.traceoutln(Level.FINE, "Discarding unused HPCC platform: {}", key);
+                platforms.remove(key);
+                Platform.All.remove(entry.platform);
+            }
+        }
+    }
+
+    public static int getReferenceCount(String key)
+    {
+        synchronized (platforms)
+        {
+            PlatformEntry entry = platforms.get(key);
+            return entry != null ? entry.references : 0;
+        }
+    }
+}
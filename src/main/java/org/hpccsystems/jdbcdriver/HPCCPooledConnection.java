@@ -0,0 +1,364 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.PooledConnection;
+import javax.sql.StatementEventListener;
+
+/**
+ * Physical HPCCConnection as handed out by HPCCDataSource. Callers receive a logical
+ * Connection handle; closing the handle notifies the listeners instead of closing the
+ * physical connection, so the pool can hand the same connection out again.
+ *
+ * The statements and metadata obtained through a handle are wrapped as well, so their getConnection
+ * returns the handle. When the handle is closed, statements left open are closed and the warnings,
+ * client info, auto commit and catalog of the physical connection are reset before it is checked in.
+ */
+public class HPCCPooledConnection implements PooledConnection
+{
+    private final HPCCConnection                        physicalConnection;
+    private final List<ConnectionEventListener>         connectionListeners = new CopyOnWriteArrayList<ConnectionEventListener>();
+    private final List<StatementEventListener>          statementListeners = new CopyOnWriteArrayList<StatementEventListener>();
+    private final long                                  createdMillis;
+    private volatile long                               lastUsedMillis;
+    private final String                                initialCatalog;
+    private LogicalConnectionHandler                    activeHandle = null;
+
+    public HPCCPooledConnection(HPCCConnection physicalConnection) throws SQLException
+    {
+        this.physicalConnection = physicalConnection;
+        this.createdMillis = System.currentTimeMillis();
+        this.lastUsedMillis = createdMillis;
+        this.initialCatalog = physicalConnection.getCatalog();
+    }
+
+    public synchronized Connection getConnection() throws SQLException
+    {
+        if (physicalConnection.isClosed())
+            throw new SQLException("ERROR: HPCCConnection is closed");
+
+        //only one logical handle may be active at a time
+        if (activeHandle != null)
+        {
+            activeHandle.invalidate();
+            activeHandle.closeStatements();
+        }
+
+        activeHandle = new LogicalConnectionHandler();
+        activeHandle.proxy = (Connection) Proxy.newProxyInstance(HPCCPooledConnection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, activeHandle);
+
+        return activeHandle.proxy;
+    }
+
+    public void close() throws SQLException
+    {
+        synchronized (this)
+        {
+            if (activeHandle != null)
+            {
+                activeHandle.invalidate();
+                activeHandle = null;
+            }
+        }
+
+        physicalConnection.close();
+    }
+
+    public HPCCConnection getPhysicalConnection()
+    {
+        return physicalConnection;
+    }
+
+    public long getCreatedMillis()
+    {
+        return createdMillis;
+    }
+
+    public long getLastUsedMillis()
+    {
+        return lastUsedMillis;
+    }
+
+    void touch()
+    {
+        lastUsedMillis = System.currentTimeMillis();
+    }
+
+    public void addConnectionEventListener(ConnectionEventListener listener)
+    {
+        if (listener != null)
+            connectionListeners.add(listener);
+    }
+
+    public void removeConnectionEventListener(ConnectionEventListener listener)
+    {
+        connectionListeners.remove(listener);
+    }
+
+    public void addStatementEventListener(StatementEventListener listener)
+    {
+        //statements are not pooled, listeners are kept only to honor the API
+        if (listener != null)
+            statementListeners.add(listener);
+    }
+
+    public void removeStatementEventListener(StatementEventListener listener)
+    {
+        statementListeners.remove(listener);
+    }
+
+    /*
+     * Restores the state a borrower may have changed, so the next one starts from a fresh connection.
+     */
+    private void resetPhysicalConnection() throws SQLException
+    {
+        physicalConnection.clearWarnings();
+        physicalConnection.setClientInfo(new Properties());
+        physicalConnection.setAutoCommit(true);
+        physicalConnection.setCatalog(initialCatalog);
+    }
+
+    private static Object createProxy(Class<?> iface, InvocationHandler handler)
+    {
+        return Proxy.newProxyInstance(HPCCPooledConnection.class.getClassLoader(), new Class<?>[] { iface }, handler);
+    }
+
+    private static Object invokeTarget(Method method, Object target, Object[] args) throws Throwable
+    {
+        try
+        {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+    private void fireConnectionClosed()
+    {
+        ConnectionEvent event = new ConnectionEvent(this);
+        for (ConnectionEventListener listener : connectionListeners)
+            listener.connectionClosed(event);
+    }
+
+    private void fireConnectionErrorOccurred(SQLException e)
+    {
+        ConnectionEvent event = new ConnectionEvent(this, e);
+        for (ConnectionEventListener listener : connectionListeners)
+            listener.connectionErrorOccurred(event);
+    }
+
+    private class LogicalConnectionHandler implements InvocationHandler
+    {
+        private volatile boolean     handleClosed = false;
+        private Connection           proxy;
+        private final Set<Statement> openStatements = Collections.newSetFromMap(new IdentityHashMap<Statement, Boolean>());
+
+        private void invalidate()
+        {
+            handleClosed = true;
+        }
+
+        private Statement trackStatement(Statement statement)
+        {
+            synchronized (openStatements)
+            {
+                openStatements.add(statement);
+            }
+
+            Class<?> iface = statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+            return (Statement) createProxy(iface, new LogicalObjectHandler(this, statement, proxy));
+        }
+
+        private void forgetStatement(Statement statement)
+        {
+            synchronized (openStatements)
+            {
+                openStatements.remove(statement);
+            }
+        }
+
+        private void closeStatements()
+        {
+            List<Statement> statements;
+            synchronized (openStatements)
+            {
+                statements = new ArrayList<Statement>(openStatements);
+                openStatements.clear();
+            }
+
+            for (Statement statement : statements)
+            {
+                try
+                {
+                    statement.close();
+                }
+                catch (SQLException e)
+                {
+                    HPCCJDBCUtils.traceoutln(Level.WARNING, "HPCCPooledConnection: could not close statement: {}", e.getLocalizedMessage());
+                }
+            }
+
+            if (!statements.isEmpty())
+                HPCCJDBCUtils.traceoutln(Level.FINE, "HPCCPooledConnection: closed {} statements left open by the logical connection", statements.size());
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String methodName = method.getName();
+
+            if (methodName.equals("close"))
+            {
+                boolean release = false;
+                synchronized (HPCCPooledConnection.this)
+                {
+                    if (!handleClosed)
+                    {
+                        handleClosed = true;
+                        activeHandle = null;
+                        release = true;
+                    }
+                }
+
+                if (release)
+                {
+                    HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCPooledConnection: logical connection closed");
+                    touch();
+                    closeStatements();
+                    try
+                    {
+                        resetPhysicalConnection();
+                    }
+                    catch (SQLException e)
+                    {
+                        fireConnectionErrorOccurred(e);
+                        return null;
+                    }
+                    fireConnectionClosed();
+                }
+                return null;
+            }
+            else if (methodName.equals("isClosed"))
+                return handleClosed || physicalConnection.isClosed();
+            else if (methodName.equals("equals"))
+                return proxy == args[0];
+            else if (methodName.equals("hashCode"))
+                return System.identityHashCode(proxy);
+            else if (methodName.equals("toString"))
+                return "HPCCPooledConnection handle on " + physicalConnection.getServerAddress();
+
+            if (handleClosed)
+                throw new SQLException("ERROR: HPCCConnection is closed");
+
+            if (methodName.equals("unwrap") && ((Class<?>) args[0]).isInstance(physicalConnection))
+                return physicalConnection;
+            else if (methodName.equals("isWrapperFor") && ((Class<?>) args[0]).isInstance(physicalConnection))
+                return true;
+
+            Object result;
+            try
+            {
+                result = method.invoke(physicalConnection, args);
+            }
+            catch (InvocationTargetException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException && physicalConnection.isClosed())
+                    fireConnectionErrorOccurred((SQLException) cause);
+                throw cause;
+            }
+
+            if (result instanceof Statement)
+                return trackStatement((Statement) result);
+            else if (result instanceof DatabaseMetaData)
+                return createProxy(DatabaseMetaData.class, new LogicalObjectHandler(this, result, proxy));
+
+            return result;
+        }
+    }
+
+    /*
+     * Statement, result set or metadata reached through a logical handle: getConnection and getStatement
+     * lead back to the handle and statement proxies instead of the physical objects.
+     */
+    private class LogicalObjectHandler implements InvocationHandler
+    {
+        private final LogicalConnectionHandler handle;
+        private final Object                   target;
+        private final Object                   parent;
+
+        private LogicalObjectHandler(LogicalConnectionHandler handle, Object target, Object parent)
+        {
+            this.handle = handle;
+            this.target = target;
+            this.parent = parent;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String methodName = method.getName();
+
+            if (methodName.equals("equals"))
+                return proxy == args[0];
+            else if (methodName.equals("hashCode"))
+                return System.identityHashCode(proxy);
+            else if (methodName.equals("toString"))
+                return target.toString();
+            else if (methodName.equals("close") && target instanceof Statement)
+                handle.forgetStatement((Statement) target);
+            else if (!methodName.equals("close") && !methodName.equals("isClosed") && handle.handleClosed)
+                throw new SQLException("ERROR: HPCCConnection is closed");
+            else if (methodName.equals("getConnection") && (args == null || args.length == 0))
+                return handle.proxy;
+            else if (methodName.equals("getStatement") && target instanceof ResultSet)
+                return parent;
+
+            Object result = invokeTarget(method, target, args);
+
+            if (result instanceof ResultSet && target instanceof Statement)
+                return createProxy(ResultSet.class, new LogicalObjectHandler(handle, result, proxy));
+
+            return result;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.sql.Array;
+import java.sql.BatchUpdateException;
 import java.sql.Blob;
 import java.sql.Clob;
 import java.sql.Connection;
@@ -43,9 +44,17 @@ import java.sql.SQLWarning;
 import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import org.hpccsystems.ws.client.platform.Workunit;
@@ -63,12 +72,19 @@ public class HPCCPreparedStatement extends HPCCStatement implements PreparedStat
     private HashMap<Integer, Object> parameters    = new HashMap<Integer, Object>();
     protected static final String      className = "HPCCPreparedStatement";
     private ECLWorkunitWrapper preparedSQL = null;
+    private List<Map<Integer, Object>> batchParameters = new ArrayList<Map<Integer, Object>>();
+    private final AtomicLong           pendingPrepareNanos = new AtomicLong(); //charged to the next execution's timings
 
     public HPCCPreparedStatement(Connection connection, String query)
     {
-        super(connection);
+        this(connection, query, ResultSet.TYPE_FORWARD_ONLY);
+    }
+
+    public HPCCPreparedStatement(Connection connection, String query, int resultSetType)
+    {
+        super(connection, resultSetType);
 
-        HPCCJDBCUtils.traceoutln(Level.INFO, className + " Constructor: Sqlquery: " + query);
+        HPCCJDBCUtils.traceoutln(Level.INFO, className + " Constructor: Sqlquery: {}", query);
         this.sqlQuery = query;
 
         if (sqlQuery != null)
@@ -84,47 +100,23 @@ public class HPCCPreparedStatement extends HPCCStatement implements PreparedStat
     public ResultSet executeQuery() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.INFO, className + ":executeQuery()");
-        HPCCJDBCUtils.traceoutln(Level.INFO,  "\tAttempting to execute Prepared sql query: " + sqlQuery);
-        result = null;
+        HPCCJDBCUtils.traceoutln(Level.INFO,  "\tAttempting to execute Prepared sql query: {}", sqlQuery);
+        clearResults();
 
         try
         {
             if (!isClosed())
             {
-                if (preparedSQL == null || preparedSQL.getWuid().isEmpty() || Workunit.isFailedState(preparedSQL.getState()))
-                {
-                    String message = className + ":  Cannot execute prepared SQL command";
-
-                    if (warnings != null)
-                    {
-                        SQLException  we = warnings.getNextException();
-                        if(we != null)
-                            message += "\n\t" + we.getLocalizedMessage();
-                    }
-                    throw new SQLException(message);
-                }
-
-                NamedValueWrapper[] variables = new NamedValueWrapper[parameters.size()];
+                verifyPrepared();
 
-                Set<Integer> keySet = parameters.keySet();
-                for (int i = 0; i < keySet.size(); i++)
+                final NamedValueWrapper[] variables = bindVariables(parameters);
+                result = awaitExecution(new ExecutionTask()
                 {
-                    try
+                    public HPCCResultSet execute(Execution execution) throws Exception
                     {
-                        variables[i] = new NamedValueWrapper("variable-"+(i+1),primitiveToString(parameters.get(i+1)));
+                        return executePreparedQuery(variables, execution);
                     }
-                    catch (IOException e)
-                    {
-                        throw new SQLException("Could not bind "+ i +"th parameter during query execution: " + e.getLocalizedMessage());
-                    }
-                }
-
-                //if (Workunit.translateWUState(preparedSQL.getState()) != WUState.COMPILED) for some reason, we can get a:
-                //"Attempting to execute a workunit that hasn't been compiled" even if we get a "compiled" state!
-                ExecutePreparedSQLResponseWrapper executePreparedSQL = hpccConnection.executePreparedSQL(preparedSQL.getWuid(), variables);
-
-                result = new HPCCResultSet(hpccConnection, executePreparedSQL.getWorkunit().getWuid(), hpccResultSetName);
-                result.parseDataset("<root>"+executePreparedSQL.getResult()+"</root>");
+                });
             }
             else
                 throw new SQLException(className + "is closed, cannot execute query");
@@ -137,6 +129,112 @@ public class HPCCPreparedStatement extends HPCCStatement implements PreparedStat
         return result;
     }
 
+    /**
+     * Executes with the currently set parameters on the driver's shared executor, see executeQueryAsync(Executor).
+     */
+    public CompletableFuture<HPCCResultSet> executeQueryAsync() throws SQLException
+    {
+        return executeQueryAsync(HPCCDriverExecutor.getSharedExecutor());
+    }
+
+    /**
+     * Binds the currently set parameters and submits the prepared workunit for execution on the given executor.
+     * Parameters can be changed, and further queries submitted, as soon as this returns.
+     */
+    public CompletableFuture<HPCCResultSet> executeQueryAsync(Executor executor) throws SQLException
+    {
+        HPCCJDBCUtils.traceoutln(Level.INFO, className + ":executeQueryAsync()");
+
+        if (isClosed())
+            throw new SQLException(className + " is closed, cannot execute query");
+
+        verifyPrepared();
+
+        final NamedValueWrapper[] variables = bindVariables(parameters);
+        return executeAsync(new ExecutionTask()
+        {
+            public HPCCResultSet execute(Execution execution) throws Exception
+            {
+                return executePreparedQuery(variables, execution);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<HPCCResultSet> executeQueryAsync(String sql, Executor executor) throws SQLException
+    {
+        throw new SQLException(className + ": executeQueryAsync(String sql) cannot be called on a PreparedStatement");
+    }
+
+    private void verifyPrepared() throws SQLException
+    {
+        if (preparedSQL == null || preparedSQL.getWuid().isEmpty() || Workunit.isFailedState(preparedSQL.getState()))
+        {
+            String message = className + ":  Cannot execute prepared SQL command";
+
+            if (warnings != null)
+            {
+                SQLException  we = warnings.getNextException();
+                if(we != null)
+                    message += "\n\t" + we.getLocalizedMessage();
+            }
+            throw new SQLException(message);
+        }
+    }
+
+    private static NamedValueWrapper[] bindVariables(Map<Integer, Object> parameterset) throws SQLException
+    {
+        NamedValueWrapper[] variables = new NamedValueWrapper[parameterset.size()];
+
+        Set<Integer> keySet = parameterset.keySet();
+        for (int i = 0; i < keySet.size(); i++)
+        {
+            try
+            {
+                variables[i] = new NamedValueWrapper("variable-"+(i+1),primitiveToString(parameterset.get(i+1)));
+            }
+            catch (IOException e)
+            {
+                throw new SQLException("Could not bind "+ i +"th parameter during query execution: " + e.getLocalizedMessage());
+            }
+        }
+
+        return variables;
+    }
+
+    private HPCCResultSet executePreparedQuery(NamedValueWrapper[] variables, Execution execution) throws Exception
+    {
+        //if (Workunit.translateWUState(preparedSQL.getState()) != WUState.COMPILED) for some reason, we can get a:
+        //"Attempting to execute a workunit that hasn't been compiled" even if we get a "compiled" state!
+        HPCCQueryTimings timings = new HPCCQueryTimings(sqlQuery);
+        timings.recordPrepare(pendingPrepareNanos.getAndSet(0));
+
+        ExecutePreparedSQLResponseWrapper executePreparedSQL;
+        long startNanos = System.nanoTime();
+        try
+        {
+            executePreparedSQL = execution.connection.executePreparedSQL(preparedSQL.getWuid(), variables,
+                    execution.connection.getWorkunitPollMillis(), getResultLimit(), getResultWindowSize());
+        }
+        catch (Exception e)
+        {
+            //the compiled workunit could be gone, don't hand it out to later prepares
+            execution.connection.evictPreparedSQL(sqlQuery);
+            throw e;
+        }
+
+        String executeResult = awaitWorkunit(execution, executePreparedSQL.getWorkunit(), executePreparedSQL.getResult());
+        long executeNanos = System.nanoTime() - startNanos;
+        metrics.recordExecutePreparedSQL(executeNanos);
+        timings.recordExecute(executeNanos, executeResult == null ? 0 : executeResult.length());
+
+        HPCCResultSet resultset = createResultSet(executePreparedSQL.getWorkunit().getWuid());
+        resultset.setQueryTimings(timings);
+        resultset.parseResult(executeResult);
+
+        return resultset;
+    }
+
     public static String primitiveToString(Object x) throws IOException
     {
         if (x != null)
@@ -204,103 +302,108 @@ public class HPCCPreparedStatement extends HPCCStatement implements PreparedStat
 
     public void setNull(int parameterIndex, int sqlType) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNull(" + parameterIndex + ", " + sqlType + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNull({}, {} )", parameterIndex, sqlType);
         throw new SQLException("NULL cannot be represented in ECL.");
     }
 
     public void setBoolean(int parameterIndex, boolean x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBoolean(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBoolean({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setByte(int parameterIndex, byte x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setByte(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setByte({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setShort(int parameterIndex, short x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setShort(" + parameterIndex + ", " + x + " )");
+        if (HPCCJDBCUtils.isTraceEnabled(Level.FINEST)) //avoids boxing x for the trace
+            HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setShort({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setInt(int parameterIndex, int x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setInt(" + parameterIndex + ", " + x + " )");
+        if (HPCCJDBCUtils.isTraceEnabled(Level.FINEST))
+            HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setInt({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setLong(int parameterIndex, long x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setLong(" + parameterIndex + ", " + x + " )");
+        if (HPCCJDBCUtils.isTraceEnabled(Level.FINEST))
+            HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setLong({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setFloat(int parameterIndex, float x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setFloat(" + parameterIndex + ", " + x + " )");
+        if (HPCCJDBCUtils.isTraceEnabled(Level.FINEST))
+            HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setFloat({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setDouble(int parameterIndex, double x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setDouble(" + parameterIndex + ", " + x + " )");
+        if (HPCCJDBCUtils.isTraceEnabled(Level.FINEST))
+            HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setDouble({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBigDecimal(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBigDecimal({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setString(int parameterIndex, String x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setString(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setString({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setBytes(int parameterIndex, byte[] x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBytes(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBytes({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setDate(int parameterIndex, Date x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setDate(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setDate({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setTime(int parameterIndex, Time x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setTime(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setTime({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setTimestamp(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setTimestamp({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setAsciiStream(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setAsciiStream({}, {} )", parameterIndex, x);
         throw new UnsupportedOperationException(className + ":  setAsciiStream Not supported yet.");
     }
 
     public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setUnicodeStream(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setUnicodeStream({}, {} )", parameterIndex, x);
         throw new UnsupportedOperationException(className + ":  setUnicodeStream Not supported yet.");
     }
 
     public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBinaryStream(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBinaryStream({}, {} )", parameterIndex, x);
         throw new UnsupportedOperationException(className + ":  setBinaryStream Not supported yet.");
     }
 
@@ -312,7 +415,7 @@ public class HPCCPreparedStatement extends HPCCStatement implements PreparedStat
 
     public void setObject(int parameterIndex, Object x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setObject(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setObject({}, {} )", parameterIndex, x);
 
         if (x != null)
         {
@@ -356,43 +459,157 @@ public class HPCCPreparedStatement extends HPCCStatement implements PreparedStat
     public boolean execute() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.INFO,  className + ":execute()");
-        HPCCJDBCUtils.traceoutln(Level.INFO,  "Attempting to process sql query: " + sqlQuery);
+        HPCCJDBCUtils.traceoutln(Level.INFO,  "Attempting to process sql query: {}", sqlQuery);
         return executeQuery() != null;
     }
 
     public void addBatch() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": addBatch(  )");
-        throw new UnsupportedOperationException(className + ":  addBatch Not supported yet.");
+
+        if (isClosed())
+            throw new SQLException(className + " is closed, cannot add batch");
+
+        batchParameters.add(new HashMap<Integer, Object>(parameters));
+    }
+
+    @Override
+    public void clearBatch() throws SQLException
+    {
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": clearBatch(  )");
+        batchParameters.clear();
+    }
+
+    /**
+     * Executes the prepared workunit once per batched parameter set. Up to BatchInFlightLimit
+     * executePreparedSQL requests are issued concurrently; the result sets are available in batch
+     * order through getResultSet/getMoreResults.
+     */
+    @Override
+    public int[] executeBatch() throws SQLException
+    {
+        HPCCJDBCUtils.traceoutln(Level.INFO, className + ":executeBatch() {} parameter sets", batchParameters.size());
+
+        if (isClosed())
+            throw new SQLException(className + " is closed, cannot execute batch");
+
+        clearResults();
+
+        final List<Map<Integer, Object>> batch = new ArrayList<Map<Integer, Object>>(batchParameters);
+        batchParameters.clear();
+
+        final int[] updateCounts = new int[batch.size()];
+        if (batch.isEmpty())
+            return updateCounts;
+
+        verifyPrepared();
+
+        final HPCCResultSet[] batchResults = new HPCCResultSet[batch.size()];
+        final Exception[] batchErrors = new Exception[batch.size()];
+        final AtomicInteger nextParameterSet = new AtomicInteger(0);
+
+        int workerCount = Math.min(hpccConnection.getBatchInFlightLimit(), batch.size());
+        final CountDownLatch workersDone = new CountDownLatch(workerCount);
+        for (int i = 0; i < workerCount; i++)
+        {
+            HPCCDriverExecutor.getSharedExecutor().execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        int index;
+                        while ((index = nextParameterSet.getAndIncrement()) < batch.size())
+                        {
+                            try
+                            {
+                                final Map<Integer, Object> parameterSet = batch.get(index);
+                                Execution batchExecution = registerExecution();
+                                runExecution(new ExecutionTask()
+                                {
+                                    public HPCCResultSet execute(Execution execution) throws Exception
+                                    {
+                                        return executePreparedQuery(bindVariables(parameterSet), execution);
+                                    }
+                                }, batchExecution);
+
+                                batchResults[index] = awaitResult(batchExecution);
+                                updateCounts[index] = SUCCESS_NO_INFO;
+                            }
+                            catch (Exception e)
+                            {
+                                batchErrors[index] = e;
+                                updateCounts[index] = EXECUTE_FAILED;
+                            }
+                        }
+                    }
+                    finally
+                    {
+                        workersDone.countDown();
+                    }
+                }
+            });
+        }
+
+        try
+        {
+            workersDone.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException(className + ": interrupted while executing batch");
+        }
+
+        Exception firstError = null;
+        for (int i = 0; i < batch.size(); i++)
+        {
+            if (batchResults[i] != null)
+                addResult(batchResults[i]);
+            else if (firstError == null)
+                firstError = batchErrors[i];
+        }
+
+        if (firstError != null)
+        {
+            BatchUpdateException batchexcept = new BatchUpdateException(className + ": batch execution failed: "
+                    + firstError.getLocalizedMessage(), updateCounts, firstError);
+            if (warnings == null)
+                warnings = new SQLWarning();
+            warnings.setNextException(batchexcept);
+            throw batchexcept;
+        }
+
+        return updateCounts;
     }
 
     public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setCharacterStream(" + parameterIndex + ", " + reader + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setCharacterStream({}, {} )", parameterIndex, reader);
         throw new UnsupportedOperationException(className + ": setCharacterStream Not supported yet.");
     }
 
     public void setRef(int parameterIndex, Ref x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setRef(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setRef({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setBlob(int parameterIndex, Blob x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBlob(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBlob({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setClob(int parameterIndex, Clob x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setClob(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setClob({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
     public void setArray(int parameterIndex, Array x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setArray(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setArray({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
@@ -404,31 +621,31 @@ public class HPCCPreparedStatement extends HPCCStatement implements PreparedStat
 
     public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setDate(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setDate({}, {} )", parameterIndex, x);
         throw new UnsupportedOperationException(className + ": setDate Not supported yet.");
     }
 
     public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setTime(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setTime({}, {} )", parameterIndex, x);
         throw new UnsupportedOperationException(className + ": setTime Not supported yet.");
     }
 
     public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setTimestamp(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setTimestamp({}, {} )", parameterIndex, x);
         throw new UnsupportedOperationException(className + ": setTimestamp Not supported yet.");
     }
 
     public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNull(" + parameterIndex + ", " + sqlType + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNull({}, {} )", parameterIndex, sqlType);
         setNull(parameterIndex, sqlType);
     }
 
     public void setURL(int parameterIndex, URL x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setURL(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setURL({}, {} )", parameterIndex, x);
         parameters.put(parameterIndex, x);
     }
 
@@ -440,55 +657,55 @@ public class HPCCPreparedStatement extends HPCCStatement implements PreparedStat
 
     public void setRowId(int parameterIndex, RowId x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setRowId(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setRowId({}, {} )", parameterIndex, x);
         throw new UnsupportedOperationException(className + ": setRowId Not supported yet.");
     }
 
     public void setNString(int parameterIndex, String value) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNString(" + parameterIndex + ", " + value + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNString({}, {} )", parameterIndex, value);
         parameters.put(parameterIndex, value);
     }
 
     public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNCharacterStream(" + parameterIndex + ", " + value + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNCharacterStream({}, {} )", parameterIndex, value);
         throw new UnsupportedOperationException(className + ": setNCharacterStream Not supported yet.");
     }
 
     public void setNClob(int parameterIndex, NClob value) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNClob(" + parameterIndex + ", " + value + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNClob({}, {} )", parameterIndex, value);
         parameters.put(parameterIndex, value);
     }
 
     public void setClob(int parameterIndex, Reader reader, long length) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setClob(" + parameterIndex + ", " + reader + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setClob({}, {} )", parameterIndex, reader);
         throw new UnsupportedOperationException(className + ": setClob Not supported yet.");
     }
 
     public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBlob(" + parameterIndex + ", " + inputStream + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBlob({}, {} )", parameterIndex, inputStream);
         throw new UnsupportedOperationException(className + ": setBlob Not supported yet.");
     }
 
     public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNClob(" + parameterIndex + ", " + reader + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNClob({}, {} )", parameterIndex, reader);
         throw new UnsupportedOperationException(className + ": setNClob Not supported yet.");
     }
 
     public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setSQLXML(" + parameterIndex + ", " + xmlObject + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setSQLXML({}, {} )", parameterIndex, xmlObject);
         parameters.put(parameterIndex, xmlObject);
     }
 
     public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setObject(" + parameterIndex + ", " + x + ", " + targetSqlType + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setObject({}, {}, {} )", parameterIndex, x, targetSqlType);
         if (x != null)
         {
             setObject(parameterIndex, x, targetSqlType, 0);
@@ -501,7 +718,7 @@ public class HPCCPreparedStatement extends HPCCStatement implements PreparedStat
 
     public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setObject(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setObject({}, {} )", parameterIndex, x);
 
         String targetSqlTypeName = null;
         try
@@ -829,61 +1046,61 @@ public class HPCCPreparedStatement extends HPCCStatement implements PreparedStat
 
     public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setAsciiStream(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setAsciiStream({}, {} )", parameterIndex, x);
         throw new UnsupportedOperationException(className + ": setAsciiStream Not supported yet.");
     }
 
     public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBinaryStream(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBinaryStream({}, {} )", parameterIndex, x);
         throw new UnsupportedOperationException(className + ": setBinaryStream Not supported yet.");
     }
 
     public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setCharacterStream(" + parameterIndex + ", " + reader + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setCharacterStream({}, {} )", parameterIndex, reader);
         throw new UnsupportedOperationException(className + ": setCharacterStream Not supported yet.");
     }
 
     public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setAsciiStream(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setAsciiStream({}, {} )", parameterIndex, x);
         throw new UnsupportedOperationException(className + ": setAsciiStream Not supported yet.");
     }
 
     public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBinaryStream(" + parameterIndex + ", " + x + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBinaryStream({}, {} )", parameterIndex, x);
         throw new UnsupportedOperationException(className + ": setBinaryStream Not supported yet.");
     }
 
     public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setCharacterStream(" + parameterIndex + ", " + reader + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setCharacterStream({}, {} )", parameterIndex, reader);
         throw new UnsupportedOperationException(className + ": setCharacterStream Not supported yet.");
     }
 
     public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNCharacterStream(" + parameterIndex + ", " + value + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNCharacterStream({}, {} )", parameterIndex, value);
         throw new UnsupportedOperationException(className + ": setNCharacterStream Not supported yet.");
     }
 
     public void setClob(int parameterIndex, Reader reader) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setClob(" + parameterIndex + ", " + reader + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setClob({}, {} )", parameterIndex, reader);
         throw new UnsupportedOperationException(className + ": setClob Not supported yet.");
     }
 
     public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBlob(" + parameterIndex + ", " + inputStream + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setBlob({}, {} )", parameterIndex, inputStream);
         throw new UnsupportedOperationException(className + ": setBlob Not supported yet.");
     }
 
     public void setNClob(int parameterIndex, Reader reader) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNClob(" + parameterIndex + ", " + reader + " )");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setNClob({}, {} )", parameterIndex, reader);
         throw new UnsupportedOperationException(className + ": setNClob Not supported yet.");
     }
 
@@ -896,6 +1113,7 @@ public class HPCCPreparedStatement extends HPCCStatement implements PreparedStat
             {
                 super.close();
                 parameters = null;
+                batchParameters = null;
             }
         }
     }
@@ -904,10 +1122,12 @@ public class HPCCPreparedStatement extends HPCCStatement implements PreparedStat
     {
         try
         {
-            HPCCJDBCUtils.traceoutln(Level.INFO,  className + "Attempting to prepare sql query: " + sqlQuery);
+            HPCCJDBCUtils.traceoutln(Level.INFO,  className + "Attempting to prepare sql query: {}", sqlQuery);
             if (!isClosed())
             {
+                long startNanos = System.nanoTime();
                 preparedSQL = hpccConnection.prepareSQL(sqlQuery);
+                pendingPrepareNanos.set(System.nanoTime() - startNanos);
 
                 if (preparedSQL == null || preparedSQL.getWuid().isEmpty())
                     throw new SQLException("HPCCPreparedStatement could not be prepared.");
@@ -19,24 +19,25 @@ along with this program. If not, see <http://www.gnu.org/licenses/>.
 package org.hpccsystems.jdbcdriver;
 
 import java.util.Enumeration;
-import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents HPCC System published queries.
  * Stores information regarding all published queries found on a particular HPCC System instance.
  * Multiple versions of the same named query can exist, but only one is available via the query name,
- * which is tracked via the aliases properties object.
+ * which is tracked via the aliases map.
+ * Both maps are concurrent, lookups from statements running in parallel do not block each other.
  *
  */
 public class HPCCQueries
 {
-    private Properties queries;
-    private Properties aliases;
+    private ConcurrentHashMap<String, HPCCQuery> queries;
+    private ConcurrentHashMap<String, String>    aliases;
 
     public HPCCQueries()
     {
-        queries = new Properties();
-        aliases = new Properties();
+        queries = new ConcurrentHashMap<String, HPCCQuery>();
+        aliases = new ConcurrentHashMap<String, String>();
     }
 
     public void put(HPCCQuery query)
@@ -49,16 +50,25 @@ public class HPCCQueries
         aliases.put(queryset + "::" + alias, queryid);
     }
 
-    public Enumeration<Object> getQueries()
+    public Enumeration<HPCCQuery> getQueries()
     {
         return queries.elements();
     }
 
-    public Enumeration<Object> getAliases()
+    public Enumeration<String> getAliases()
     {
         return aliases.keys();
     }
 
+    /**
+     * @param qualifiedalias alias as returned by getAliases (queryset::alias)
+     * @return ID of the query the alias points to
+     */
+    public String getAliasTarget(String qualifiedalias)
+    {
+        return aliases.get(qualifiedalias);
+    }
+
     public HPCCQuery getQuerysetQuery(String eclqueryname)
     {
         String querysplit[] = eclqueryname.split("::");
@@ -83,9 +93,9 @@ public class HPCCQueries
         String eclqueryid = eclquerynameorid;
 
         if (aliases.containsKey((queryset.length() > 0 ? queryset + "::" : "") + eclquerynameorid))
-            eclqueryid = (String) aliases.get((queryset.length() > 0 ? queryset + "::" : "") + eclquerynameorid);
+            eclqueryid = aliases.get((queryset.length() > 0 ? queryset + "::" : "") + eclquerynameorid);
 
-        return (HPCCQuery) queries.get(queryset + "::" + eclqueryid);
+        return queries.get(queryset + "::" + eclqueryid);
     }
 
     public HPCCQuery getQuery(String eclquerynameorid)
@@ -93,9 +103,9 @@ public class HPCCQueries
         String eclqueryid = eclquerynameorid;
 
         if (aliases.containsKey(eclquerynameorid))
-            eclqueryid = (String) aliases.get(eclqueryid);
+            eclqueryid = aliases.get(eclqueryid);
 
-        return (HPCCQuery) queries.get(eclqueryid);
+        return queries.get(eclqueryid);
     }
 
     public int getLength()
@@ -113,7 +123,7 @@ public class HPCCQueries
         String eclqueryid = eclquerynameorid;
 
         if (aliases.containsKey((queryset.length() > 0 ? queryset + "::" : "") + eclquerynameorid))
-            eclqueryid = (String) aliases.get((queryset.length() > 0 ? queryset + "::" : "") + eclquerynameorid);
+            eclqueryid = aliases.get((queryset.length() > 0 ? queryset + "::" : "") + eclquerynameorid);
 
         return queries.containsKey((queryset.length() > 0 ? queryset + "::" : "") + eclqueryid);
     }
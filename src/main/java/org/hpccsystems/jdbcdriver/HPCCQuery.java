@@ -163,6 +163,11 @@ public class HPCCQuery
         Suspended = suspended;
     }
 
+    public List<HPCCColumnMetaData> getSchema()
+    {
+        return schema;
+    }
+
     public Iterator<HPCCColumnMetaData> getColumnsMetaDataIterator()
     {
         return schema.iterator();
@@ -0,0 +1,164 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the time of one query went, from the statement's point of view:
+ *
+ * prepare  - prepareSQL (ECL compilation), charged to the first execution after the statement was prepared
+ * execute  - executeSQL/executePreparedSQL round trip: server execution plus transfer of the first result window
+ * parse    - XML parsing of all result windows read so far
+ * fetch    - fetchResults round trips for the windows following the first one
+ *
+ * Fetches and parsing can run on prefetch threads, their totals are LongAdders.
+ */
+public class HPCCQueryTimings
+{
+    private final String        sql;
+    private final long          startMillis;
+    private volatile String     wuid = "";
+    private volatile long       prepareNanos = 0;
+    private volatile long       executeNanos = 0;
+    private volatile long       firstWindowBytes = 0;
+    private final LongAdder     parseNanos = new LongAdder();
+    private final LongAdder     fetchNanos = new LongAdder();
+    private final LongAdder     fetches = new LongAdder();
+    private final LongAdder     rows = new LongAdder();
+    private final LongAdder     bytes = new LongAdder();
+
+    public HPCCQueryTimings(String sql)
+    {
+        this.sql = sql;
+        this.startMillis = System.currentTimeMillis();
+    }
+
+    public void setWuid(String wuid)
+    {
+        this.wuid = wuid == null ? "" : wuid;
+    }
+
+    public void recordPrepare(long nanos)
+    {
+        prepareNanos = nanos;
+    }
+
+    public void recordExecute(long nanos, long responseBytes)
+    {
+        executeNanos = nanos;
+        firstWindowBytes = responseBytes;
+    }
+
+    public void recordFetch(long nanos)
+    {
+        fetchNanos.add(nanos);
+        fetches.increment();
+    }
+
+    public void recordParse(int rowCount, long resultBytes, long nanos)
+    {
+        parseNanos.add(nanos);
+        rows.add(rowCount);
+        bytes.add(resultBytes);
+    }
+
+    public String getSql()
+    {
+        return sql;
+    }
+
+    public String getWuid()
+    {
+        return wuid;
+    }
+
+    /**
+     * Wall clock time the statement started executing the query.
+     */
+    public long getStartMillis()
+    {
+        return startMillis;
+    }
+
+    public double getPrepareMillis()
+    {
+        return prepareNanos / 1000000.0;
+    }
+
+    public double getExecuteMillis()
+    {
+        return executeNanos / 1000000.0;
+    }
+
+    public double getParseMillis()
+    {
+        return parseNanos.sum() / 1000000.0;
+    }
+
+    public double getFetchMillis()
+    {
+        return fetchNanos.sum() / 1000000.0;
+    }
+
+    /**
+     * Sum of the phases, client time spent between reads is not included.
+     */
+    public double getTotalMillis()
+    {
+        return (prepareNanos + executeNanos + parseNanos.sum() + fetchNanos.sum()) / 1000000.0;
+    }
+
+    public long getFirstWindowBytes()
+    {
+        return firstWindowBytes;
+    }
+
+    public long getFetchCount()
+    {
+        return fetches.sum();
+    }
+
+    public long getRowCount()
+    {
+        return rows.sum();
+    }
+
+    /**
+     * Size of all result windows read (characters, the same as bytes for ASCII results).
+     */
+    public long getBytes()
+    {
+        return bytes.sum();
+    }
+
+    /**
+     * Single line key=value form, as written to the slow query log.
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("wuid=%s totalMillis=%.3f prepareMillis=%.3f executeMillis=%.3f firstWindowBytes=%d parseMillis=%.3f "
+                + "fetchMillis=%.3f fetches=%d rows=%d bytes=%d sql=\"%s\"", wuid, getTotalMillis(), getPrepareMillis(), getExecuteMillis(),
+                firstWindowBytes, getParseMillis(), getFetchMillis(), getFetchCount(), getRowCount(), getBytes(),
+                sql == null ? "" : sql.replace('\r', ' ').replace('\n', ' ').replace("\"", "\\\""));
+    }
+}
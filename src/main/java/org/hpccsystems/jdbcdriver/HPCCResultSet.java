@@ -19,6 +19,8 @@ along with this program. If not, see <http://www.gnu.org/licenses/>.
 package org.hpccsystems.jdbcdriver;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
@@ -40,15 +42,22 @@ import java.sql.SQLXML;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 import org.hpccsystems.ws.client.wrappers.gen.wssql.GetResultsResponseWrapper;
 import org.w3c.dom.Document;
@@ -68,14 +77,15 @@ public class HPCCResultSet implements ResultSet
     private final static String                 wsSQLResultSetName = "WsSQLResult";
     private final static String                 wsSQLResultCountName = "WsSQLCount";
     private final static int                    InvalidRowCount = -1;
+    private final static XMLInputFactory        staxFactory = createStAXFactory();
 
     private int                                 fetchSize = 100;
-    private Object                              rowsLock = new Object();
-    private Object                              indexLock = new Object();
     private boolean                             closed = false;
     private List<List>                          rows = null;
     private int                                 index = -1;
-    private int                                 currentWindowIndex = 0;
+    private List                                currentRow = null;
+    private int                                 currentPageRow = -1;
+    private int                                 windowStartIndex = 0;
     private HPCCResultSetMetadata               resultMetadata = null;
     private Statement                           statement = null;
     private Object                              lastResult = null;
@@ -85,6 +95,22 @@ public class HPCCResultSet implements ResultSet
     private HPCCConnection                      hpccConnection = null;
     private long                                totalRowCount = InvalidRowCount;
     private boolean                             wasRowsObjPopulated = false;
+    private boolean                             domResultParser = false;
+    private boolean                             columnarStorage = false;
+    private HPCCColumnarPage                    columnarRows = null;
+    private int                                 prefetchWindows = 0;
+    private double                              prefetchThreshold = 0.5;
+    private int                                 prefetchTriggerIndex = Integer.MAX_VALUE;
+    private boolean                             lastWindowFetched = false;
+    private ArrayDeque<ResultWindowFetch>       prefetchQueue = null;
+    private HPCCFetchWindowSizer                windowSizer = null;
+    private int                                 parallelFetchWindows = 0;
+    private long                                parallelFetchMinRows = 0;
+    private HPCCResultSpillStore                spillStore = null;
+    private HPCCMetrics                         metrics = null;
+    private HPCCStatementMetrics                statementMetrics = null;
+    private HPCCQueryTimings                    queryTimings = null;
+    private long                                slowQueryThresholdMillis = 0;
 
     public String getResultWUID()
     {
@@ -93,7 +119,7 @@ public class HPCCResultSet implements ResultSet
 
     public HPCCResultSet(List recrows, ArrayList<HPCCColumnMetaData> metadatacols, String tablename) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: HPCCResultSet(recrows, metadatacols, " + tablename +")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: HPCCResultSet(recrows, metadatacols, {})", tablename);
         resultMetadata = new HPCCResultSetMetadata(metadatacols, tablename);
         setRows(new ArrayList<List>(recrows));
         lastResult = new Object();
@@ -113,11 +139,86 @@ public class HPCCResultSet implements ResultSet
 
     public HPCCResultSet(HPCCConnection hpccConn, String resultsWUID, String tablename)
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: HPCCResultSet( connection, " + resultsWUID + ", " + tablename +")");
+        this(hpccConn, resultsWUID, tablename, hpccConn.getPageSize());
+    }
+
+    /**
+     * @param fetchSize number of rows fetched per result window
+     */
+    public HPCCResultSet(HPCCConnection hpccConn, String resultsWUID, String tablename, int fetchSize)
+    {
+        this(hpccConn, resultsWUID, tablename, fetchSize, null);
+    }
+
+    /**
+     * @param windowSizer if provided, sizes the result windows following the first one instead of fetchSize
+     */
+    public HPCCResultSet(HPCCConnection hpccConn, String resultsWUID, String tablename, int fetchSize, HPCCFetchWindowSizer windowSizer)
+    {
+        this.windowSizer = windowSizer;
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: HPCCResultSet( connection, {}, {}, {})", resultsWUID, tablename, fetchSize);
         this.tablename = tablename;
-        this.fetchSize = hpccConn.getPageSize();
+        this.fetchSize = fetchSize;
         this.resultWUID = resultsWUID;
         this.hpccConnection = hpccConn;
+        this.domResultParser = hpccConn.isDOMResultParser();
+        this.columnarStorage = hpccConn.isColumnarStorage();
+        this.prefetchWindows = hpccConn.getPrefetchWindows();
+        this.prefetchThreshold = hpccConn.getPrefetchThreshold();
+        this.parallelFetchWindows = hpccConn.getParallelFetchWindows();
+        this.parallelFetchMinRows = hpccConn.getParallelFetchMinRows();
+        this.metrics = hpccConn.getMetrics();
+        this.slowQueryThresholdMillis = hpccConn.getSlowQueryThresholdMillis();
+
+        if (prefetchWindows > 0)
+            prefetchQueue = new ArrayDeque<ResultWindowFetch>(prefetchWindows);
+    }
+
+    /**
+     * Counters of the statement which produced this result set, its fetches and parsing are recorded
+     * into them instead of directly into the connection's metrics.
+     */
+    public void setStatementMetrics(HPCCStatementMetrics statementMetrics)
+    {
+        this.statementMetrics = statementMetrics;
+    }
+
+    private void recordError()
+    {
+        if (statementMetrics != null)
+            statementMetrics.recordError();
+        else if (metrics != null)
+            metrics.recordError();
+    }
+
+    /**
+     * Attaches the timing record of the query which produced this result set, fetches and parsing are added to it.
+     */
+    public void setQueryTimings(HPCCQueryTimings timings)
+    {
+        this.queryTimings = timings;
+        if (timings != null)
+            timings.setWuid(resultWUID);
+    }
+
+    /**
+     * Phase timings of the query which produced this result set, null for result sets not produced by a query
+     * (i.e. DatabaseMetaData results). Reachable through ResultSet.unwrap(HPCCResultSet.class).
+     */
+    public HPCCQueryTimings getQueryTimings()
+    {
+        return queryTimings;
+    }
+
+    /**
+     * Makes this a TYPE_SCROLL_INSENSITIVE result set, must be called before the first window is parsed.
+     * Windows already read are kept for scrolling back; beyond windowsInMemory of them, the least recently
+     * used ones are spilled to a temporary file in spillDirectory (java.io.tmpdir if null).
+     */
+    public void enableScrolling(int windowsInMemory, File spillDirectory)
+    {
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: enableScrolling({}, {})", windowsInMemory, spillDirectory);
+        spillStore = new HPCCResultSpillStore(windowsInMemory, spillDirectory);
     }
 
     private void setRows(List<List> myrows)
@@ -128,26 +229,37 @@ public class HPCCResultSet implements ResultSet
             return;
         }
 
-        synchronized (rowsLock)
-        {
-            rows = myrows;
-            wasRowsObjPopulated = true;
-        }
+        rows = myrows;
+        columnarRows = myrows instanceof HPCCColumnarPage ? (HPCCColumnarPage) myrows : null;
+        wasRowsObjPopulated = true;
+
+        if (prefetchQueue != null)
+            prefetchTriggerIndex = windowStartIndex + (int) (myrows.size() * prefetchThreshold);
     }
 
     public int encapsulateDataSet(NodeList rowList)
     {
         HPCCJDBCUtils.traceoutln(Level.INFO, "HPCCResultSet encapsulateDataSet");
+
+        List<List> tempRows = createDataSetRows(rowList, resultMetadata);
+        if (tempRows.size() > 0)
+            setRows(tempRows);
+
+        return tempRows.size();
+    }
+
+    private static List<List> createDataSetRows(NodeList rowList, HPCCResultSetMetadata metadata)
+    {
         int rowCount = 0;
 
         List<List> tempRows = new ArrayList(rowCount);
         if (rowList != null && (rowCount = rowList.getLength()) > 0)
         {
-            HPCCJDBCUtils.traceoutln(Level.INFO,  "Results rows found: " + rowCount);
+            HPCCJDBCUtils.traceoutln(Level.INFO,  "Results rows found: {}", rowCount);
 
             for (int j = 0; j < rowCount; j++)
             {
-                ArrayList rowValues = resultMetadata.createDefaultResultRow();
+                ArrayList rowValues = metadata.createDefaultResultRow();
                 tempRows.add(rowValues);
 
                 Element row = (Element) rowList.item(j);
@@ -159,9 +271,9 @@ public class HPCCResultSet implements ResultSet
                     Node resultRowElement = columnList.item(k);
                     String resultRowElementName = resultRowElement.getNodeName();
 
-                    if (resultMetadata.containsColByNameOrAlias(resultRowElementName))
+                    if (metadata.containsColByNameOrAlias(resultRowElementName))
                     {
-                        HPCCColumnMetaData col = resultMetadata.getColByNameOrAlias(resultRowElementName);
+                        HPCCColumnMetaData col = metadata.getColByNameOrAlias(resultRowElementName);
                         rowValues.set(col.getIndex(), resultRowElement.getTextContent());
                     }
                 }
@@ -176,10 +288,7 @@ public class HPCCResultSet implements ResultSet
         //    tempRows.add(resultMetadata.createDefaultResultRow());
         //}
 
-        if (tempRows.size() > 0)
-            setRows(tempRows);
-
-        return rowCount;
+        return tempRows;
     }
 
     public long getTotalRowCount()
@@ -189,106 +298,380 @@ public class HPCCResultSet implements ResultSet
 
     public int getRowCount()
     {
-        synchronized (rowsLock)
-        {
-            if (wasRowsObjPopulated)
-                return rows.size();
-            else
-                return InvalidRowCount;
-        }
+        if (wasRowsObjPopulated)
+            return rows.size();
+        else
+            return InvalidRowCount;
     }
 
-    private int fetchNextWindow()
+    private int fetchNextWindow() throws SQLException
     {
+        return fetchWindow(getCurrentIndex() + 1); /*start with next record*/
+    }
+
+    private int fetchWindow(int nextWindowStart) throws SQLException
+    {
+        List<List> newrows = null;
         if (resultWUID != null && !resultWUID.isEmpty())
         {
             if (hpccConnection != null)
             {
                 try
                 {
-                    GetResultsResponseWrapper fetchResults = hpccConnection.fetchResults(resultWUID,getCurrentIndex()+1 /*start with next record*/, fetchSize);
+                    ResultWindow window = null;
 
-                    int newrows = parseDataset("<root>"+fetchResults.getResult()+"</root>");
-                    if (newrows > 0)
+                    ResultWindowFetch prefetched = prefetchQueue != null ? prefetchQueue.poll() : null;
+                    if (prefetched != null && prefetched.start == nextWindowStart)
                     {
-                        currentWindowIndex++;
-                        return newrows;
+                        try
+                        {
+                            window = prefetched.window.get();
+                        }
+                        catch (ExecutionException e)
+                        {
+                            HPCCJDBCUtils.traceoutln(Level.WARNING, "HPCCResultSet: Could not prefetch result set window, fetching it synchronously: {}", e.getCause());
+                        }
+                    }
+                    else if (prefetched != null)
+                    {
+                        prefetched.window.cancel(true);
+                        cancelPrefetch();
+                    }
+
+                    if (window == null)
+                        window = fetchWindowRows(hpccConnection, resultWUID, nextWindowStart, getWindowSize(), resultMetadata, windowSizer);
+
+                    newrows = applyWindow(window);
+                    if (newrows.size() == 0)
+                    {
+                        lastWindowFetched = true;
+                        cancelPrefetch();
                     }
                 }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    cancelPrefetch();
+                    HPCCJDBCUtils.traceoutln(Level.ALL, "HPCCResultSet: Interrupted while fetching next result set window from server");
+                }
                 catch (Exception e)
                 {
-                    HPCCJDBCUtils.traceoutln(Level.ALL, "HPCCResultSet: Error attempting to fetch next result set window from server: " + e.getLocalizedMessage());
+                    recordError();
+                    HPCCJDBCUtils.traceoutln(Level.ALL, "HPCCResultSet: Error attempting to fetch next result set window from server: {}", e.getLocalizedMessage());
                 }
             }
         }
-        return 0;
+
+        if (newrows == null || newrows.size() == 0)
+            return 0;
+
+        //a window which cannot be stored would silently truncate the result
+        if (spillStore != null)
+        {
+            try
+            {
+                spillStore.addWindow(nextWindowStart, newrows);
+            }
+            catch (IOException e)
+            {
+                cancelPrefetch();
+                recordError();
+                throw new SQLException("HPCCResultSet: Could not spill result window: " + e.getLocalizedMessage(), e);
+            }
+        }
+
+        windowStartIndex = nextWindowStart;
+        setRows(newrows);
+        return newrows.size();
     }
 
+    /*
+     * Also runs on the driver executor for read-ahead windows: the window is parsed against the given
+     * metadata and returned as is, only applyWindow updates the result set. The window sizer is passed
+     * in as well, the field is only accessed on the cursor thread.
+     */
+    private ResultWindow fetchWindowRows(HPCCConnection connection, String wuid, int start, int count, HPCCResultSetMetadata metadata,
+            HPCCFetchWindowSizer sizer) throws Exception
+    {
+        long startNanos = System.nanoTime();
+        GetResultsResponseWrapper fetchResults = connection.fetchResults(wuid, start, count);
+        long latencyNanos = System.nanoTime() - startNanos;
+        long latencyMillis = latencyNanos / 1000000;
+
+        if (statementMetrics != null)
+            statementMetrics.recordFetchResults(latencyNanos);
+        else if (metrics != null)
+            metrics.recordFetchResults(latencyNanos);
+        if (queryTimings != null)
+            queryTimings.recordFetch(latencyNanos);
+
+        ResultWindow window = readResultRows(fetchResults.getResult(), metadata);
+
+        if (sizer != null && fetchResults.getResult() != null)
+            sizer.recordWindow(window.rows.size(), fetchResults.getResult().length(), latencyMillis);
+
+        return window;
+    }
+
+    /*
+     * Takes over the row count and, for the first window, the schema read with the window's rows.
+     * Called on the cursor thread.
+     */
+    private List<List> applyWindow(ResultWindow window)
+    {
+        if (window.totalRowCount != InvalidRowCount)
+            totalRowCount = window.totalRowCount;
+        if (resultMetadata == null)
+            resultMetadata = window.metadata;
+
+        return window.rows;
+    }
+
+    private int getWindowSize()
+    {
+        return windowSizer != null ? windowSizer.getWindowSize() : fetchSize;
+    }
+
+    /**
+     * Read-ahead: requests the windows following the current one on the driver executor,
+     * up to the number of windows configured by the PrefetchWindows connection property.
+     */
+    private void schedulePrefetch()
+    {
+        prefetchTriggerIndex = Integer.MAX_VALUE; // re-armed when the next window is installed
+
+        final HPCCConnection connection = hpccConnection;
+        final String wuid = resultWUID;
+        final HPCCResultSetMetadata metadata = resultMetadata;
+        final HPCCFetchWindowSizer sizer = windowSizer;
+        if (lastWindowFetched || connection == null || wuid == null || wuid.isEmpty())
+            return;
+
+        ResultWindowFetch last = prefetchQueue.peekLast();
+        int nextStart;
+        if (last != null)
+            nextStart = last.start + last.count;
+        else if (spillStore != null)
+            nextStart = spillStore.getRowCount(); //the cursor might be scrolled back to an earlier window
+        else
+            nextStart = windowStartIndex + getRowCount();
+
+        while (prefetchQueue.size() < prefetchWindows && (totalRowCount == InvalidRowCount || nextStart < totalRowCount))
+        {
+            final int start = nextStart;
+            final int count = getWindowSize();
+            Future<ResultWindow> window = HPCCDriverExecutor.getSharedExecutor().submit(new Callable<ResultWindow>()
+            {
+                public ResultWindow call() throws Exception
+                {
+                    return fetchWindowRows(connection, wuid, start, count, metadata, sizer);
+                }
+            });
+
+            HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: prefetching result window starting at {}", start);
+            prefetchQueue.add(new ResultWindowFetch(start, count, window));
+            nextStart += count;
+        }
+    }
+
+    /*
+     * Once the row count of a large result is known, the windows following the first one are downloaded
+     * concurrently: up to ParallelFetchWindows requests are kept in flight from the moment each window
+     * is installed. The prefetch queue keeps them in order and bounds the buffered windows.
+     */
+    private void startParallelFetch()
+    {
+        if (parallelFetchWindows <= 0 || totalRowCount == InvalidRowCount || totalRowCount < parallelFetchMinRows)
+            return;
+
+        if (totalRowCount <= windowStartIndex + getRowCount())
+            return; //everything arrived with the first window
+
+        HPCCJDBCUtils.traceoutln(Level.INFO, "HPCCResultSet: downloading {} result rows using {} concurrent windows", totalRowCount, parallelFetchWindows);
+
+        prefetchWindows = Math.max(prefetchWindows, parallelFetchWindows);
+        prefetchThreshold = 0;
+        if (prefetchQueue == null)
+            prefetchQueue = new ArrayDeque<ResultWindowFetch>(prefetchWindows);
+
+        schedulePrefetch();
+    }
+
+    private void cancelPrefetch()
+    {
+        if (prefetchQueue != null)
+        {
+            ResultWindowFetch pending;
+            while ((pending = prefetchQueue.poll()) != null)
+                pending.window.cancel(true);
+        }
+    }
+
+    /*
+     * Cursor state is not synchronized: as with any JDBC result set, an HPCCResultSet is meant to be
+     * consumed by one thread at a time. The current row is resolved and validated once, whenever the
+     * cursor moves, and the getters only read the cached reference.
+     */
+
     private boolean isCurrentIndexValid()
     {
-        synchronized (indexLock)
+        return currentRow != null;
+    }
+
+    /**
+     * Position of the current row within the current window if it is held in a columnar page, -1 otherwise.
+     */
+    private int getColumnarRowIndex()
+    {
+        return columnarRows != null ? currentPageRow : -1;
+    }
+
+    private List fetchCurrentRow()
+    {
+        return currentRow;
+    }
+
+    private boolean positionCursor(int newIndex)
+    {
+        index = newIndex;
+
+        int pageRow = newIndex - windowStartIndex;
+        if (wasRowsObjPopulated && newIndex >= 0 && pageRow >= 0 && pageRow < rows.size())
         {
-            return isIndexValid(index);
+            currentPageRow = pageRow;
+            currentRow = rows.get(pageRow);
+            return true;
         }
+
+        currentPageRow = -1;
+        currentRow = null;
+        return false;
     }
 
-    private boolean isIndexValid(int myindex)
+    /*
+     * Scroll insensitive cursor: rows are addressed by their index in the whole result. Windows are
+     * downloaded in order up to the target row, and windows already read come from the spill store.
+     */
+    private boolean scrollTo(int target) throws SQLException
     {
-        if (myindex < 0)
+        if (!wasRowsObjPopulated || target < 0)
+        {
+            positionCursor(-1);
             return false;
+        }
 
-        int adjustedIndex = myindex - (currentWindowIndex * fetchSize);
+        fetchScrollRows(target);
 
-        if (getRowCount() != InvalidRowCount && adjustedIndex >= 0 && adjustedIndex <= getRowCount())
-            return true;
-        else
+        int storedRows = spillStore.getRowCount();
+        if (target >= storedRows)
+        {
+            positionCursor(storedRows); //after last row
             return false;
+        }
+
+        installStoredWindow(target);
+        positionCursor(target);
+
+        if (prefetchQueue != null && index >= prefetchTriggerIndex)
+            schedulePrefetch();
+
+        return true;
     }
 
-    private List fetchCurrentRow()
+    /*
+     * Downloads windows until the row at the target index is stored, or the result is exhausted.
+     */
+    private void fetchScrollRows(int target) throws SQLException
     {
-        synchronized (indexLock)
+        if (!wasRowsObjPopulated)
+            return;
+
+        int current = getCurrentIndex();
+        boolean fetched = false;
+        while (target >= spillStore.getRowCount() && !lastWindowFetched)
         {
-            return fetchRow(index);
+            if (fetchWindow(spillStore.getRowCount()) <= 0)
+                break;
+            fetched = true;
+        }
+
+        //fetching installed the new windows, keep the cursor on its own row
+        if (fetched && currentRow != null)
+        {
+            installStoredWindow(current);
+            positionCursor(current);
         }
     }
 
-    private List fetchRow(int myindex)
+    private void installStoredWindow(int target) throws SQLException
     {
-        synchronized (rowsLock)
+        if (target >= windowStartIndex && target - windowStartIndex < rows.size())
+            return;
+
+        try
         {
-            if (wasRowsObjPopulated)
-            {
-                if (isIndexValid(myindex))
-                    return rows.get(myindex - (currentWindowIndex * fetchSize));
-            }
+            int start = spillStore.getWindowStart(target);
+            List<List> stored = spillStore.getWindowRows(target);
+            if (stored == null)
+                throw new SQLException("HPCCResultSet: result row " + (target + 1) + " not found");
+
+            windowStartIndex = start;
+            setRows(stored);
         }
+        catch (IOException e)
+        {
+            throw new SQLException("HPCCResultSet: Could not read spilled result window: " + e.getLocalizedMessage(), e);
+        }
+    }
 
-        return null;
+    private int getScrollRowCount() throws SQLException
+    {
+        fetchScrollRows(Integer.MAX_VALUE);
+        return spillStore.getRowCount();
     }
 
     public boolean next() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet next");
-        //is next index within the current window?);
-        if(getRowCount() != InvalidRowCount && (getCurrentIndex() + 1) - (currentWindowIndex * fetchSize) >= getRowCount())
+        if (!wasRowsObjPopulated)
+            return false; // empty result
+
+        if (spillStore != null)
+            return scrollTo(getCurrentIndex() + 1);
+
+        //is next index within the current window?
+        if ((index + 1) - windowStartIndex >= rows.size())
         {
             if(fetchNextWindow() <= 0)
                 return false;
         }
 
-        incrementIndex();
+        index++;
+        currentPageRow = index - windowStartIndex;
+        currentRow = rows.get(currentPageRow);
+
+        if (prefetchQueue != null && index >= prefetchTriggerIndex)
+            schedulePrefetch();
+
         return true;
     }
 
     public void close() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet close");
+        cancelPrefetch();
+        if (!closed && queryTimings != null && slowQueryThresholdMillis > 0 && queryTimings.getTotalMillis() >= slowQueryThresholdMillis)
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "HPCCJDBC slow query: {}", queryTimings);
+        if (spillStore != null)
+            spillStore.close();
         closed = true;
         fetchSize = 100;
         rows = null;
+        columnarRows = null;
+        currentRow = null;
+        currentPageRow = -1;
         index = -1;
-        currentWindowIndex = 0;
+        windowStartIndex = 0;
         resultMetadata = null;
         statement = null;
         lastResult = null;
@@ -300,13 +683,13 @@ public class HPCCResultSet implements ResultSet
 
     public boolean wasNull() throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet wasNull: " + String.valueOf(lastResult == null).toString());
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet wasNull: {}", lastResult == null);
         return lastResult == null;
     }
 
     public String getString(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet:getString(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet:getString({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
@@ -316,7 +699,7 @@ public class HPCCResultSet implements ResultSet
                     HPCCJDBCUtils.traceoutln(Level.FINEST, "....Returned: null");
                     return null;
                 }
-                HPCCJDBCUtils.traceoutln(Level.FINEST, "....Returned: "+ lastResult.toString());
+                HPCCJDBCUtils.traceoutln(Level.FINEST, "....Returned: {}", lastResult);
                 return lastResult.toString();
             }
             else
@@ -327,7 +710,7 @@ public class HPCCResultSet implements ResultSet
 
     public boolean getBoolean(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBoolean(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBoolean({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
@@ -346,7 +729,7 @@ public class HPCCResultSet implements ResultSet
 
     public byte getByte(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getByte(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getByte({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
@@ -363,7 +746,7 @@ public class HPCCResultSet implements ResultSet
 
     public short getShort(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getShort(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getShort({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
@@ -382,10 +765,16 @@ public class HPCCResultSet implements ResultSet
 
     public int getInt(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getInt(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getInt({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
+                int pageRow = getColumnarRowIndex();
+                if (pageRow >= 0 && columnarRows.hasIntValue(pageRow, columnIndex - 1))
+                {
+                    lastResult = columnarRows;
+                    return columnarRows.getIntValue(pageRow, columnIndex - 1);
+                }
                 lastResult = fetchCurrentRow().get(columnIndex - 1);
                 if (lastResult == null)
                     return 0;
@@ -401,10 +790,16 @@ public class HPCCResultSet implements ResultSet
 
     public long getLong(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getLong(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getLong({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
+                int pageRow = getColumnarRowIndex();
+                if (pageRow >= 0 && columnarRows.hasLongValue(pageRow, columnIndex - 1))
+                {
+                    lastResult = columnarRows;
+                    return columnarRows.getLongValue(pageRow, columnIndex - 1);
+                }
                 lastResult = fetchCurrentRow().get(columnIndex - 1);
                 if (lastResult == null)
                     return 0;
@@ -420,7 +815,7 @@ public class HPCCResultSet implements ResultSet
 
     public float getFloat(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getFloat(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getFloat({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
@@ -439,10 +834,16 @@ public class HPCCResultSet implements ResultSet
 
     public double getDouble(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getDouble(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getDouble({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
+                int pageRow = getColumnarRowIndex();
+                if (pageRow >= 0 && columnarRows.hasDoubleValue(pageRow, columnIndex - 1))
+                {
+                    lastResult = columnarRows;
+                    return columnarRows.getDoubleValue(pageRow, columnIndex - 1);
+                }
                 lastResult = fetchCurrentRow().get(columnIndex - 1);
                 if (lastResult == null)
                     return 0;
@@ -458,7 +859,7 @@ public class HPCCResultSet implements ResultSet
 
     public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBigDecimal(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBigDecimal({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
@@ -478,7 +879,7 @@ public class HPCCResultSet implements ResultSet
 
     public byte[] getBytes(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBytes(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBytes({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
@@ -495,7 +896,7 @@ public class HPCCResultSet implements ResultSet
 
     public Date getDate(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getDate(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getDate({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
@@ -514,7 +915,7 @@ public class HPCCResultSet implements ResultSet
 
     public Time getTime(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getTime(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getTime({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
@@ -533,7 +934,7 @@ public class HPCCResultSet implements ResultSet
 
     public Timestamp getTimestamp(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getTimestamp(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getTimestamp({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
@@ -552,7 +953,7 @@ public class HPCCResultSet implements ResultSet
 
     public InputStream getAsciiStream(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getAsciiStream(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getAsciiStream({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
@@ -569,7 +970,7 @@ public class HPCCResultSet implements ResultSet
 
     public InputStream getUnicodeStream(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getUnicodeStream(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getUnicodeStream({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
@@ -586,7 +987,7 @@ public class HPCCResultSet implements ResultSet
 
     public InputStream getBinaryStream(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBinaryStream(" + columnIndex + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBinaryStream({})", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
@@ -603,7 +1004,7 @@ public class HPCCResultSet implements ResultSet
 
     public String getString(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet:getString(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet:getString({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int column = resultMetadata.getColumnIndex(columnLabel);
@@ -627,7 +1028,7 @@ public class HPCCResultSet implements ResultSet
 
     public boolean getBoolean(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBoolean(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBoolean({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int column = resultMetadata.getColumnIndex(columnLabel);
@@ -650,7 +1051,7 @@ public class HPCCResultSet implements ResultSet
 
     public byte getByte(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getByte(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getByte({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int column = resultMetadata.getColumnIndex(columnLabel);
@@ -673,7 +1074,7 @@ public class HPCCResultSet implements ResultSet
 
     public short getShort(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet:getShort(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet:getShort({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int column = resultMetadata.getColumnIndex(columnLabel);
@@ -698,7 +1099,7 @@ public class HPCCResultSet implements ResultSet
 
     public int getInt(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getInt(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getInt({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int column = resultMetadata.getColumnIndex(columnLabel);
@@ -723,7 +1124,7 @@ public class HPCCResultSet implements ResultSet
 
     public long getLong(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getLong(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getLong({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int column = resultMetadata.getColumnIndex(columnLabel);
@@ -748,7 +1149,7 @@ public class HPCCResultSet implements ResultSet
 
     public float getFloat(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getFloat(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getFloat({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int column = resultMetadata.getColumnIndex(columnLabel);
@@ -773,7 +1174,7 @@ public class HPCCResultSet implements ResultSet
 
     public double getDouble(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getDouble(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getDouble({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int column = resultMetadata.getColumnIndex(columnLabel);
@@ -798,7 +1199,7 @@ public class HPCCResultSet implements ResultSet
 
     public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBigDecimal(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBigDecimal({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int columnIndex = resultMetadata.getColumnIndex(columnLabel);
@@ -824,7 +1225,7 @@ public class HPCCResultSet implements ResultSet
 
     public byte[] getBytes(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBytes(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBytes({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int columnIndex = resultMetadata.getColumnIndex(columnLabel);
@@ -847,7 +1248,7 @@ public class HPCCResultSet implements ResultSet
 
     public Date getDate(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getDate(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getDate({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int columnIndex = resultMetadata.getColumnIndex(columnLabel);
@@ -872,7 +1273,7 @@ public class HPCCResultSet implements ResultSet
 
     public Time getTime(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getTime(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getTime({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int columnIndex = resultMetadata.getColumnIndex(columnLabel);
@@ -897,7 +1298,7 @@ public class HPCCResultSet implements ResultSet
 
     public Timestamp getTimestamp(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getTimestamp(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getTimestamp({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int columnIndex = resultMetadata.getColumnIndex(columnLabel);
@@ -922,7 +1323,7 @@ public class HPCCResultSet implements ResultSet
 
     public InputStream getAsciiStream(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getAsciiStream(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getAsciiStream({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int columnIndex = resultMetadata.getColumnIndex(columnLabel);
@@ -945,7 +1346,7 @@ public class HPCCResultSet implements ResultSet
 
     public InputStream getUnicodeStream(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getUnicodeStream(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getUnicodeStream({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int columnIndex = resultMetadata.getColumnIndex(columnLabel);
@@ -968,7 +1369,7 @@ public class HPCCResultSet implements ResultSet
 
     public InputStream getBinaryStream(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBinaryStream(" + columnLabel + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet: getBinaryStream({})", columnLabel);
         if (isCurrentIndexValid())
         {
             int columnIndex = resultMetadata.getColumnIndex(columnLabel);
@@ -1015,10 +1416,10 @@ public class HPCCResultSet implements ResultSet
 
     public Object getObject(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getObject( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getObject( {} )", columnIndex);
         if (isCurrentIndexValid())
         {
-            lastResult = HPCCJDBCUtils.createSqlTypeObjFromStringObj(resultMetadata.getColumnType(columnIndex), fetchCurrentRow().get(columnIndex - 1));
+            lastResult = convertColumn(columnIndex);
             return lastResult;
         }
         else
@@ -1027,7 +1428,7 @@ public class HPCCResultSet implements ResultSet
 
     public Object getObject(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getObject( " + columnLabel + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getObject( {} )", columnLabel);
         if (isCurrentIndexValid())
         {
             int columnIndex = resultMetadata.getColumnIndex(columnLabel);
@@ -1036,9 +1437,7 @@ public class HPCCResultSet implements ResultSet
             List<?> row = fetchCurrentRow();
             if (row != null)
             {
-                lastResult = HPCCJDBCUtils.createSqlTypeObjFromStringObj(
-                                resultMetadata.getColumnType(columnIndex),
-                                row.get(columnIndex - 1));
+                lastResult = convertColumn(columnIndex);
                 return lastResult;
             }
             else
@@ -1048,27 +1447,38 @@ public class HPCCResultSet implements ResultSet
             throw new SQLException("Invalid Row Index");
     }
 
+    private Object convertColumn(int columnIndex) throws SQLException
+    {
+        HPCCColumnConverter converter = resultMetadata.getColumnConverter(columnIndex);
+
+        int pageRow = getColumnarRowIndex();
+        if (pageRow >= 0)
+            return converter.convert(columnarRows, pageRow, columnIndex - 1);
+
+        return converter.convert(fetchCurrentRow().get(columnIndex - 1));
+    }
+
     public int findColumn(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet findColumn( " + columnLabel + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet findColumn( {} )", columnLabel);
         return resultMetadata.getColumnIndex(columnLabel);
     }
 
     public Reader getCharacterStream(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getCharacterStream( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getCharacterStream( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public Reader getCharacterStream(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getCharacterStream( " + columnLabel + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getCharacterStream( {} )", columnLabel);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public BigDecimal getBigDecimal(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getBigDecimal( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getBigDecimal( {} )", columnIndex);
         if (isCurrentIndexValid())
             if (columnIndex >= 1 && columnIndex <= resultMetadata.getColumnCount())
             {
@@ -1087,7 +1497,7 @@ public class HPCCResultSet implements ResultSet
 
     public BigDecimal getBigDecimal(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getBigDecimal( " + columnLabel + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getBigDecimal( {} )", columnLabel);
         if (isCurrentIndexValid())
         {
             int columnIndex = resultMetadata.getColumnIndex(columnLabel);
@@ -1113,47 +1523,78 @@ public class HPCCResultSet implements ResultSet
     public boolean isBeforeFirst() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet isBeforeFirst");
+        if (spillStore != null)
+            return wasRowsObjPopulated && getCurrentIndex() < 0;
+
         return (getCurrentIndex() < 0) ? true : false;
     }
 
     public boolean isAfterLast() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet isAfterLast");
+        if (spillStore != null)
+            return wasRowsObjPopulated && getCurrentIndex() >= 0 && currentRow == null;
+
         return (getRowCount() != InvalidRowCount && getCurrentIndex() > getRowCount() - 1) ? true : false;
     }
 
     public boolean isFirst() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet isFirst");
+        if (spillStore != null)
+            return currentRow != null && getCurrentIndex() == 0;
+
         return getCurrentIndex() == 0 ? true : false;
     }
 
     public boolean isLast() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet isLast");
+        if (spillStore != null)
+        {
+            if (currentRow == null)
+                return false;
+
+            fetchScrollRows(getCurrentIndex() + 1);
+            return getCurrentIndex() == spillStore.getRowCount() - 1;
+        }
+
         return (getRowCount() != InvalidRowCount && getCurrentIndex() == getRowCount() - 1) ? true : false;
     }
 
     public void beforeFirst() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet beforeFirst");
+        if (spillStore != null)
+        {
+            positionCursor(-1);
+            return;
+        }
+
         throw new UnsupportedOperationException("Not supported");
     }
 
     public void afterLast() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet afterLast");
+        if (spillStore != null)
+        {
+            if (wasRowsObjPopulated)
+                positionCursor(getScrollRowCount());
+            return;
+        }
+
         throw new UnsupportedOperationException("Not supported");
     }
 
     public boolean first() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet first");
+        if (spillStore != null)
+            return scrollTo(0);
+
         if(getRowCount() > 0)
-        {
-            setIndex(0);
-            return true;
-        }
+            return positionCursor(0);
         else
             return false;
     }
@@ -1161,11 +1602,11 @@ public class HPCCResultSet implements ResultSet
     public boolean last() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet last");
+        if (spillStore != null)
+            return wasRowsObjPopulated && scrollTo(getScrollRowCount() - 1);
+
         if(getRowCount() > 0)
-        {
-            setIndex(getRowCount() - 1);
-            return true;
-        }
+            return positionCursor(getRowCount() - 1);
         else
             return false;
     }
@@ -1173,50 +1614,33 @@ public class HPCCResultSet implements ResultSet
     public int getRow() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getRow");
-        return getCurrentIndex() + 1;
-    }
-
-    private void setIndex(int newIndex)
-    {
-        synchronized (indexLock)
-        {
-            index = newIndex;
-        }
-    }
+        if (spillStore != null)
+            return currentRow != null ? getCurrentIndex() + 1 : 0;
 
-    private void incrementIndex()
-    {
-        synchronized (indexLock)
-        {
-            index = index + 1;
-        }
-    }
-
-    private void decrementIndex()
-    {
-        synchronized (indexLock)
-        {
-            index = index - 1;
-        }
+        return getCurrentIndex() + 1;
     }
 
     private int getCurrentIndex()
     {
-        synchronized (indexLock)
-        {
-            return index;
-        }
+        return index;
     }
 
 
     public boolean absolute(int row) throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet absolute");
-        if (getRowCount() != InvalidRowCount && row > 0 && row <= getRowCount())
+        if (spillStore != null)
         {
-            setIndex(row - 1);
-            return true;
+            if (row > 0)
+                return scrollTo(row - 1);
+            else if (row < 0 && wasRowsObjPopulated)
+                return scrollTo(getScrollRowCount() + row); //-1 is the last row
+            else
+                return scrollTo(-1);
         }
+
+        if (getRowCount() != InvalidRowCount && row > 0 && row <= getRowCount())
+            return positionCursor(row - 1);
         else
         {
             return false;
@@ -1226,12 +1650,12 @@ public class HPCCResultSet implements ResultSet
     public boolean relative(int rows) throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet relative");
+        if (spillStore != null)
+            return scrollTo(getCurrentIndex() + rows);
+
         int tmpindex = getCurrentIndex() + rows;
         if (getRowCount() != InvalidRowCount && tmpindex > 0 && tmpindex <= getRowCount())
-        {
-            setIndex(tmpindex);
-            return true;
-        }
+            return positionCursor(tmpindex);
         else
         {
             return false;
@@ -1241,11 +1665,11 @@ public class HPCCResultSet implements ResultSet
     public boolean previous() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet previous");
+        if (spillStore != null)
+            return scrollTo(getCurrentIndex() - 1);
+
         if(getCurrentIndex() > 1)
-        {
-            decrementIndex();
-            return true;
-        }
+            return positionCursor(getCurrentIndex() - 1);
         else
         {
             return false;
@@ -1266,9 +1690,12 @@ public class HPCCResultSet implements ResultSet
 
     public void setFetchSize(int rows) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet setFetchSize (" + rows + ")");
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet setFetchSize ({})", rows);
         if (rows > 0 /*&& rows < XX*/ )
+        {
             fetchSize = rows;
+            windowSizer = null; //explicit size, no longer adaptive
+        }
         else
             throw new SQLException("HPCCResultSet: Invalid fetch size submited: " + rows);
     }
@@ -1276,13 +1703,13 @@ public class HPCCResultSet implements ResultSet
     public int getFetchSize() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getFetchSize");
-        return fetchSize;
+        return getWindowSize();
     }
 
     public int getType() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet getType");
-        return ResultSet.TYPE_FORWARD_ONLY;
+        return spillStore != null ? ResultSet.TYPE_SCROLL_INSENSITIVE : ResultSet.TYPE_FORWARD_ONLY;
     }
 
     public int getConcurrency() throws SQLException
@@ -1311,43 +1738,43 @@ public class HPCCResultSet implements ResultSet
 
     public void updateNull(int columnIndex) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateNull( " + columnIndex + " )" );;
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateNull( {} )", columnIndex);;
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateBoolean(int columnIndex, boolean x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateBoolean( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateBoolean( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateByte(int columnIndex, byte x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateByte( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateByte( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateShort(int columnIndex, short x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateInt(int columnIndex, int x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateLong(int columnIndex, long x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateFloat(int columnIndex, float x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
@@ -1359,19 +1786,19 @@ public class HPCCResultSet implements ResultSet
 
     public void updateBigDecimal(int columnIndex, BigDecimal x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: updateShort Not supported yet.");
     }
 
     public void updateString(int columnIndex, String x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateBytes(int columnIndex, byte[] x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: updateShort Not supported yet.");
     }
 
@@ -1383,103 +1810,103 @@ public class HPCCResultSet implements ResultSet
 
     public void updateTime(int columnIndex, Time x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateAsciiStream(int columnIndex, InputStream x, int length) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateBinaryStream(int columnIndex, InputStream x, int length) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateCharacterStream(int columnIndex, Reader x, int length) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateObject(int columnIndex, Object x, int scaleOrLength) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateObject(int columnIndex, Object x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnIndex + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnIndex);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateNull(String columnLabel) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateNull( " + columnLabel + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateNull( {} )", columnLabel);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateBoolean(String columnLabel, boolean x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateBoolean( " + columnLabel + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateBoolean( {} )", columnLabel);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateByte(String columnLabel, byte x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateByte( " + columnLabel + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateByte( {} )", columnLabel);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateShort(String columnLabel, short x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( " + columnLabel + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateShort( {} )", columnLabel);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateInt(String columnLabel, int x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateInt( " + columnLabel + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateInt( {} )", columnLabel);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateLong(String columnLabel, long x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateLong( " + columnLabel + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateLong( {} )", columnLabel);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateFloat(String columnLabel, float x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateFloat( " + columnLabel + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateFloat( {} )", columnLabel);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateDouble(String columnLabel, double x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateDouble( " + columnLabel + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateDouble( {} )", columnLabel);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateBigDecimal(String columnLabel, BigDecimal x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateBigDecimal( " + columnLabel + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateBigDecimal( {} )", columnLabel);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
     public void updateString(String columnLabel, String x) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateString( " + columnLabel + " )" );
+        HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet updateString( {} )", columnLabel);
         throw new UnsupportedOperationException("HPCCResultSet: Not supported yet.");
     }
 
@@ -2109,13 +2536,503 @@ public class HPCCResultSet implements ResultSet
     public <T> T unwrap(Class<T> iface) throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet unwrap");
-        throw new UnsupportedOperationException("HPCCResultSet: unwrap Not supported yet.");
+        if (iface != null && iface.isInstance(this))
+            return iface.cast(this);
+
+        throw new SQLException("HPCCResultSet: not a wrapper for " + iface);
     }
 
     public boolean isWrapperFor(Class<?> iface) throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST, "HPCCResultSet isWrapperFor");
-        throw new UnsupportedOperationException("HPCCResultSet: isWrapperFor Not supported yet.");
+        return iface != null && iface.isInstance(this);
+    }
+
+    private static XMLInputFactory createStAXFactory()
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // Mirror the DOM path, which is not namespace aware, and never resolve external content
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Parses a raw WsSQL result payload (schema and dataset elements without a common root)
+     * using the parser selected by the connection's ResultParser property.
+     */
+    public int parseResult(String result) throws Exception
+    {
+        List<List> tempRows = applyWindow(readResultRows(result, resultMetadata));
+        if (tempRows.size() > 0)
+        {
+            if (spillStore != null)
+                spillStore.addWindow(windowStartIndex, tempRows);
+            setRows(tempRows);
+        }
+
+        //the response latency includes query execution, only its size is representative
+        if (windowSizer != null && result != null)
+            windowSizer.recordWindow(tempRows.size(), result.length(), -1);
+
+        if (tempRows.size() > 0)
+            startParallelFetch();
+
+        return tempRows.size();
+    }
+
+    private ResultWindow readResultRows(String result, HPCCResultSetMetadata metadata) throws Exception
+    {
+        long startNanos = System.nanoTime();
+        ResultWindow window;
+        if (domResultParser)
+        {
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            DocumentBuilder db = dbf.newDocumentBuilder();
+            window = readDatasetRows(db.parse(new InputSource(new StringReader("<root>" + result + "</root>"))), metadata);
+            if (columnarStorage && window.rows.size() > 0)
+                window.rows = HPCCColumnarPage.fromRows(window.metadata, window.rows);
+        }
+        else
+            window = readDatasetStreamRows(new RootElementReader(result), metadata);
+
+        if (result != null)
+        {
+            long parseNanos = System.nanoTime() - startNanos;
+            if (statementMetrics != null)
+                statementMetrics.recordResultParsed(window.rows.size(), result.length(), parseNanos);
+            else if (metrics != null)
+                metrics.recordResultParsed(window.rows.size(), result.length(), parseNanos);
+            if (queryTimings != null)
+                queryTimings.recordParse(window.rows.size(), result.length(), parseNanos);
+        }
+
+        return window;
+    }
+
+    /**
+     * Streaming counterpart of parseDataset(Document), rows are read with a StAX pull parser
+     * and the cell values are written directly into the result rows.
+     */
+    public int parseDatasetStream(Reader xml) throws Exception
+    {
+        List<List> tempRows = applyWindow(readDatasetStreamRows(xml, resultMetadata));
+        if (tempRows.size() > 0)
+            setRows(tempRows);
+
+        return tempRows.size();
+    }
+
+    private ResultWindow readDatasetStreamRows(Reader xml, HPCCResultSetMetadata metadata) throws Exception
+    {
+        HPCCJDBCUtils.traceoutln(Level.INFO, "Received xml results, streaming results...");
+
+        long startTime = System.currentTimeMillis();
+
+        ResultWindow window = new ResultWindow(metadata);
+        List<List> datasetRows = null;
+        List<List> rootRows = null;
+        boolean foundDataset = false;
+        boolean foundSchema = false;
+        boolean foundPendingRows = false;
+        String currentDataset = null;
+        Exception resexception = null;
+        ArrayList<HPCCColumnMetaData> metadatacols = null;
+        StringBuilder text = new StringBuilder();
+        HashMap<String, HPCCColumnMetaData> cellColumns = new HashMap<String, HPCCColumnMetaData>();
+
+        XMLStreamReader reader = staxFactory.createXMLStreamReader(xml);
+        try
+        {
+            while (reader.hasNext())
+            {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT)
+                {
+                    String elementName = getStreamLocalName(reader);
+                    if (elementName.equals("Dataset"))
+                    {
+                        foundDataset = true;
+                        currentDataset = reader.getAttributeValue(null, "name");
+                        HPCCJDBCUtils.traceoutln(Level.INFO, "Found dataset: {}", currentDataset);
+                    }
+                    else if (elementName.equals("Row"))
+                    {
+                        List<List> targetRows = null;
+                        if (currentDataset == null && !foundDataset)
+                        {
+                            // The root element might itself be the Dataset element
+                            if (rootRows == null)
+                                rootRows = createRowStore(window.metadata);
+                            targetRows = rootRows;
+                        }
+                        else if (wsSQLResultSetName.equals(currentDataset))
+                        {
+                            if (datasetRows == null)
+                                datasetRows = createRowStore(window.metadata);
+                            targetRows = datasetRows;
+                        }
+
+                        if (targetRows != null)
+                        {
+                            foundPendingRows |= readStreamRow(reader, targetRows, window.metadata, cellColumns, text);
+                        }
+                        else if (!wsSQLResultCountName.equals(currentDataset))
+                        {
+                            skipStreamElement(reader);
+                        }
+                    }
+                    else if (elementName.equals("WSSQLSelectQueryResultCount") && wsSQLResultCountName.equals(currentDataset))
+                    {
+                        window.totalRowCount = Long.parseLong(readStreamText(reader, text).trim());
+                    }
+                    else if (elementName.equals("XmlSchema"))
+                    {
+                        if (!foundSchema && window.metadata == null)
+                        {
+                            HPCCJDBCUtils.traceoutln(Level.INFO, "Found results schema");
+                            metadatacols = readStreamSchema(reader);
+                            if (metadatacols != null)
+                                window.metadata = new HPCCResultSetMetadata(metadatacols, tablename);
+                        }
+                        else
+                            skipStreamElement(reader);
+
+                        foundSchema = true;
+                    }
+                    else if (elementName.equals("Exception") && resexception == null)
+                    {
+                        resexception = readStreamException(reader, text);
+                    }
+                }
+                else if (event == XMLStreamConstants.END_ELEMENT)
+                {
+                    if (currentDataset != null && getStreamLocalName(reader).equals("Dataset"))
+                        currentDataset = null;
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        if (!foundDataset && resexception != null)
+            throw resexception;
+
+        if (window.metadata == null)
+            throw new Exception("Could not find result schema");
+
+        List<List> tempRows = foundDataset ? datasetRows : rootRows;
+        if (tempRows == null)
+            tempRows = new ArrayList<List>();
+        else
+        {
+            if (foundPendingRows)
+                resolvePendingRows(tempRows, window.metadata);
+            if (columnarStorage && !(tempRows instanceof HPCCColumnarPage))
+                tempRows = HPCCColumnarPage.fromRows(window.metadata, tempRows);
+        }
+
+        HPCCJDBCUtils.traceoutln(Level.INFO,  "Results rows found: {}", tempRows.size());
+
+        long elapsedTime = System.currentTimeMillis() - startTime;
+        HPCCJDBCUtils.traceoutln(Level.INFO, "Finished Parsing results.");
+        HPCCJDBCUtils.traceoutln(Level.INFO, "Total elapsed http request/response time in milliseconds: {}", elapsedTime);
+
+        window.rows = tempRows;
+        return window;
+    }
+
+    private static String getStreamLocalName(XMLStreamReader reader)
+    {
+        String name = reader.getLocalName();
+        int prefixEnd = name.indexOf(':');
+        return prefixEnd < 0 ? name : name.substring(prefixEnd + 1);
+    }
+
+    /**
+     * Reads the current Row element. If the result schema has not been seen yet, the row is kept as
+     * name/value pairs and resolved once the schema is known; returns true in that case.
+     */
+    private static boolean readStreamRow(XMLStreamReader reader, List<List> targetRows, HPCCResultSetMetadata metadata, HashMap<String, HPCCColumnMetaData> cellColumns, StringBuilder text) throws Exception
+    {
+        if (metadata == null)
+        {
+            PendingRow pending = new PendingRow();
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+            {
+                pending.add(getStreamLocalName(reader));
+                pending.add(readStreamText(reader, text));
+            }
+            targetRows.add(pending);
+            return true;
+        }
+
+        if (targetRows instanceof HPCCColumnarPage)
+        {
+            HPCCColumnarPage page = (HPCCColumnarPage) targetRows;
+            page.startRow();
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+            {
+                HPCCColumnMetaData col = getStreamColumn(reader.getLocalName(), metadata, cellColumns);
+                if (col != null)
+                    page.setCell(col.getIndex(), readStreamText(reader, text));
+                else
+                    skipStreamElement(reader);
+            }
+            return false;
+        }
+
+        ArrayList rowValues = metadata.createDefaultResultRow();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+        {
+            HPCCColumnMetaData col = getStreamColumn(reader.getLocalName(), metadata, cellColumns);
+            if (col != null)
+                rowValues.set(col.getIndex(), readStreamText(reader, text));
+            else
+                skipStreamElement(reader);
+        }
+        targetRows.add(rowValues);
+        return false;
+    }
+
+    private static HPCCColumnMetaData getStreamColumn(String cellName, HPCCResultSetMetadata metadata, HashMap<String, HPCCColumnMetaData> cellColumns)
+    {
+        HPCCColumnMetaData col = cellColumns.get(cellName);
+        if (col == null && metadata.containsColByNameOrAlias(cellName))
+        {
+            col = metadata.getColByNameOrAlias(cellName);
+            cellColumns.put(cellName, col);
+        }
+        return col;
+    }
+
+    private List<List> createRowStore(HPCCResultSetMetadata metadata)
+    {
+        if (columnarStorage && metadata != null)
+            return new HPCCColumnarPage(metadata, fetchSize);
+
+        return new ArrayList<List>();
+    }
+
+    private static void resolvePendingRows(List<List> targetRows, HPCCResultSetMetadata metadata)
+    {
+        for (int rowindex = 0; rowindex < targetRows.size(); rowindex++)
+        {
+            List row = targetRows.get(rowindex);
+            if (row instanceof PendingRow)
+            {
+                ArrayList rowValues = metadata.createDefaultResultRow();
+                for (int cellindex = 0; cellindex + 1 < row.size(); cellindex += 2)
+                {
+                    String cellName = (String) row.get(cellindex);
+                    if (metadata.containsColByNameOrAlias(cellName))
+                        rowValues.set(metadata.getColByNameOrAlias(cellName).getIndex(), row.get(cellindex + 1));
+                }
+                targetRows.set(rowindex, rowValues);
+            }
+        }
+    }
+
+    /**
+     * Returns the text content of the current element, including the text of any nested elements
+     * (same as Node.getTextContent). The reader is left on the element's end tag.
+     */
+    private static String readStreamText(XMLStreamReader reader, StringBuilder text) throws Exception
+    {
+        text.setLength(0);
+        int depth = 0;
+        while (true)
+        {
+            int event = reader.next();
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE)
+                text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            else if (event == XMLStreamConstants.START_ELEMENT)
+                depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT && depth-- == 0)
+                break;
+        }
+
+        return text.length() == 0 ? "" : text.toString();
+    }
+
+    private static void skipStreamElement(XMLStreamReader reader) throws Exception
+    {
+        int depth = 0;
+        while (true)
+        {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+                depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT && depth-- == 0)
+                break;
+        }
+    }
+
+    private static Exception readStreamException(XMLStreamReader reader, StringBuilder text) throws Exception
+    {
+        Exception resexception = new Exception("HPCCJDBC: Error in response");
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+        {
+            if (getStreamLocalName(reader).equals("Message"))
+                resexception = new Exception("HPCCJDBC: Error in response: \'" + readStreamText(reader, text) + "\'");
+            else
+                skipStreamElement(reader);
+        }
+        return resexception;
+    }
+
+    /**
+     * Reads the XmlSchema element (see parseDataset(Document) for a sample schema) and returns the
+     * columns declared by the Row element, custom simple types are mapped to their base type.
+     */
+    private static ArrayList<HPCCColumnMetaData> readStreamSchema(XMLStreamReader reader) throws Exception
+    {
+        HashMap<String, String> customTypeMap = new HashMap<String, String>();
+        ArrayList<String> rowFields = null;
+        String simpleTypeName = null;
+        int depth = 0;
+        int rowDepth = -1;
+
+        while (depth >= 0)
+        {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                depth++;
+                String elementName = getStreamLocalName(reader);
+                if (elementName.equals("simpleType"))
+                {
+                    simpleTypeName = reader.getAttributeValue(null, "name");
+                }
+                else if (elementName.equals("restriction"))
+                {
+                    String base = reader.getAttributeValue(null, "base");
+                    if (simpleTypeName != null && base != null)
+                        customTypeMap.put(simpleTypeName, base);
+                }
+                else if (elementName.equals("element"))
+                {
+                    if (rowFields == null && "Row".equals(reader.getAttributeValue(null, "name")))
+                    {
+                        rowFields = new ArrayList<String>();
+                        rowDepth = depth;
+                    }
+                    else if (rowDepth > 0 && depth == rowDepth + 3) // Row/complexType/sequence/element
+                    {
+                        String typename = reader.getAttributeValue(null, "type");
+                        if (typename != null)
+                        {
+                            rowFields.add(reader.getAttributeValue(null, "name"));
+                            rowFields.add(typename);
+                        }
+                    }
+                }
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+            {
+                if (depth == rowDepth)
+                    rowDepth = -1;
+                else if (simpleTypeName != null && getStreamLocalName(reader).equals("simpleType"))
+                    simpleTypeName = null;
+                depth--;
+            }
+        }
+
+        if (rowFields == null)
+            return null;
+
+        ArrayList<HPCCColumnMetaData> metadatacols = new ArrayList<HPCCColumnMetaData>();
+        for (int fieldindex = 0; fieldindex + 1 < rowFields.size(); fieldindex += 2)
+        {
+            String typename = rowFields.get(fieldindex + 1);
+            if (customTypeMap.containsKey(typename))
+                typename = customTypeMap.get(typename);
+            metadatacols.add(new HPCCColumnMetaData(rowFields.get(fieldindex), fieldindex / 2, HPCCJDBCUtils.mapXSDTypeName2SQLtype(typename)));
+        }
+
+        return metadatacols;
+    }
+
+    private static class ResultWindowFetch
+    {
+        final int                  start;
+        final int                  count;
+        final Future<ResultWindow> window;
+
+        ResultWindowFetch(int start, int count, Future<ResultWindow> window)
+        {
+            this.start = start;
+            this.count = count;
+            this.window = window;
+        }
+    }
+
+    /**
+     * Rows of a result window, with the row count and the schema found in the same response.
+     */
+    private static class ResultWindow
+    {
+        List<List>            rows;
+        long                  totalRowCount = InvalidRowCount;
+        HPCCResultSetMetadata metadata;
+
+        ResultWindow(HPCCResultSetMetadata metadata)
+        {
+            this.metadata = metadata;
+        }
+    }
+
+    /**
+     * Row read before the result schema, holds alternating cell name and value entries.
+     */
+    @SuppressWarnings("serial")
+    private static class PendingRow extends ArrayList<String>
+    {
+    }
+
+    /**
+     * Presents a result payload enclosed in a root element, without copying the payload.
+     */
+    private static class RootElementReader extends Reader
+    {
+        private final String [] parts;
+        private int             partIndex = 0;
+        private int             partOffset = 0;
+
+        public RootElementReader(String payload)
+        {
+            parts = new String [] {"<root>", payload != null ? payload : "", "</root>"};
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException
+        {
+            if (len == 0)
+                return 0;
+
+            while (partIndex < parts.length && partOffset >= parts[partIndex].length())
+            {
+                partIndex++;
+                partOffset = 0;
+            }
+
+            if (partIndex >= parts.length)
+                return -1;
+
+            int count = Math.min(len, parts[partIndex].length() - partOffset);
+            parts[partIndex].getChars(partOffset, partOffset + count, cbuf, off);
+            partOffset += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            partIndex = parts.length;
+        }
     }
 
     public int parseDataset(String xml) throws Exception
@@ -2128,11 +3045,21 @@ public class HPCCResultSet implements ResultSet
     }
 
     public int parseDataset(Document dom) throws Exception
+    {
+        List<List> tempRows = applyWindow(readDatasetRows(dom, resultMetadata));
+        if (tempRows.size() > 0)
+            setRows(tempRows);
+
+        return tempRows.size();
+    }
+
+    private ResultWindow readDatasetRows(Document dom, HPCCResultSetMetadata metadata) throws Exception
     {
         HPCCJDBCUtils.traceoutln(Level.INFO, "Received xml results, parsing results...");
 
         long startTime = System.currentTimeMillis();
 
+        ResultWindow window = new ResultWindow(metadata);
         NodeList rowList = null;
         ArrayList<HPCCColumnMetaData> metadatacols = null;
 
@@ -2142,14 +3069,14 @@ public class HPCCResultSet implements ResultSet
         int dsCount = 0;
         if (dsList != null && (dsCount = dsList.getLength()) > 0)
         {
-            HPCCJDBCUtils.traceoutln(Level.INFO, "Found " + dsList.getLength() + " result datsets");
+            HPCCJDBCUtils.traceoutln(Level.INFO, "Found {} result datsets", dsList.getLength());
             // The dataset element is encapsulated within a Result element
             // need to fetch appropriate resulst dataset
             for (int datasetindex = 0; datasetindex < dsCount; datasetindex++)
             {
                 Element ds = (Element) dsList.item(datasetindex);
                 String dsName = ds.getAttribute("name");
-                HPCCJDBCUtils.traceoutln(Level.INFO, "Found dataset: " + dsName);
+                HPCCJDBCUtils.traceoutln(Level.INFO, "Found dataset: {}", dsName);
                 if (dsName.equals(wsSQLResultSetName))
                 {
                     rowList = ds.getElementsByTagName("Row");
@@ -2161,7 +3088,7 @@ public class HPCCResultSet implements ResultSet
                     {
                         Node item = rowNodes.item(0);
                         if (item != null)
-                            totalRowCount = Long.parseLong(item.getTextContent());
+                            window.totalRowCount = Long.parseLong(item.getTextContent());
                     }
                 }
 
@@ -2298,21 +3225,21 @@ public class HPCCResultSet implements ResultSet
             }
         }
 
-        if (resultMetadata == null)
+        if (window.metadata == null)
         {
             if (metadatacols != null)
-                resultMetadata = new HPCCResultSetMetadata(metadatacols, tablename);
+                window.metadata = new HPCCResultSetMetadata(metadatacols, tablename);
             else
                 throw new Exception("Could not find result schema");
         }
 
-        int rowcount = encapsulateDataSet(rowList);
+        window.rows = createDataSetRows(rowList, window.metadata);
 
         long elapsedTime = System.currentTimeMillis() - startTime;
         HPCCJDBCUtils.traceoutln(Level.INFO, "Finished Parsing results.");
-        HPCCJDBCUtils.traceoutln(Level.INFO, "Total elapsed http request/response time in milliseconds: " + elapsedTime);
+        HPCCJDBCUtils.traceoutln(Level.INFO, "Total elapsed http request/response time in milliseconds: {}", elapsedTime);
 
-        return rowcount;
+        return window;
     }
 
     //Introduced in java 1.7 @Override
@@ -34,14 +34,17 @@ public class HPCCResultSetMetadata implements ResultSetMetaData
     private String                   schemaName  = "";
     private String                   catalogName = HPCCJDBCUtils.HPCCCATALOGNAME;
     private HashMap<String, HPCCColumnMetaData> columnListHash = null;
+    private HPCCColumnConverter[]    columnConverters = null;
 
     private void generateExpectedRetColsHash()
     {
         columnListHash = new HashMap<String, HPCCColumnMetaData>();
+        columnConverters = new HPCCColumnConverter[columnList.size()];
 
         int colIndex = 0;
         for (HPCCColumnMetaData col : columnList)
         {
+            columnConverters[colIndex] = HPCCColumnConverter.forSqlType(col.getSqlType());
             col.setIndex(colIndex++);
             columnListHash.put(col.getColumnNameOrAlias().toUpperCase(), col);
         }
@@ -62,6 +65,23 @@ public class HPCCResultSetMetadata implements ResultSetMetaData
         }
     }
 
+    public List<HPCCColumnMetaData> getColumnList()
+    {
+        return columnList;
+    }
+
+    /**
+     * @param column 1 based column index
+     * @return converter producing getObject values for the column
+     */
+    public HPCCColumnConverter getColumnConverter(int column) throws SQLException
+    {
+        if (columnConverters != null && column >= 1 && column <= columnConverters.length)
+            return columnConverters[column - 1];
+        else
+            throw new SQLException("Invalid Column Index = " + column);
+    }
+
     public boolean containsColByNameOrAlias(String nameOrAlias)
     {
        return  columnListHash.containsKey(nameOrAlias.toUpperCase());
@@ -158,7 +178,7 @@ public class HPCCResultSetMetadata implements ResultSetMetaData
     {
         //"Get the designated column's number of decimal digits."
         //http://docs.oracle.com/javase/1.4.2/docs/api/java/sql/ResultSetMetaData.html#getScale%28int%29
-        HPCCJDBCUtils.traceoutln(Level.ALL,  "getPrecision ( " + column +" )");
+        HPCCJDBCUtils.traceoutln(Level.ALL,  "getPrecision ( {} )", column);
         if (column >= 1 && column <= columnList.size())
             return columnList.get(column - 1).getColumnChars();
         else
@@ -169,7 +189,7 @@ public class HPCCResultSetMetadata implements ResultSetMetaData
     {
         //Gets the designated column's number of digits to right of the decimal point.
         //http://docs.oracle.com/javase/1.4.2/docs/api/java/sql/ResultSetMetaData.html#getScale%28int%29
-        HPCCJDBCUtils.traceoutln(Level.ALL,  "getScale ( " + column +" )");
+        HPCCJDBCUtils.traceoutln(Level.ALL,  "getScale ( {} )", column);
         if (column >= 1 && column <= columnList.size())
             return columnList.get(column - 1).getDecimalDigits();
         else
@@ -178,7 +198,7 @@ public class HPCCResultSetMetadata implements ResultSetMetaData
 
     public String getTableName(int column) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.ALL,  "getTableName ( " + column +" )");
+        HPCCJDBCUtils.traceoutln(Level.ALL,  "getTableName ( {} )", column);
         if (column >= 1 && column <= columnList.size())
             return columnList.get(column - 1).getTableName();
         else
@@ -187,17 +207,17 @@ public class HPCCResultSetMetadata implements ResultSetMetaData
 
     public String getCatalogName(int column) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.ALL,  "getCatalogName ( " + column +" ) : " + catalogName);
+        HPCCJDBCUtils.traceoutln(Level.ALL,  "getCatalogName ( {} ) : {}", column, catalogName);
         return catalogName;
     }
 
     public int getColumnType(int column) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.ALL,  "HPCCResultSetMetadata.getColumnType(column : " + column +" )");
+        HPCCJDBCUtils.traceoutln(Level.ALL,  "HPCCResultSetMetadata.getColumnType(column : {} )", column);
         if (column >= 1 && column <= columnList.size())
         {
             int sqlType = columnList.get(column - 1).getSqlType();
-            HPCCJDBCUtils.traceoutln(Level.ALL,  "SQLTYPE : " + sqlType +" )");
+            HPCCJDBCUtils.traceoutln(Level.ALL,  "SQLTYPE : {} )", sqlType);
             return sqlType;
         }
         else
@@ -206,13 +226,13 @@ public class HPCCResultSetMetadata implements ResultSetMetaData
 
     public String getColumnTypeName(int column) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.ALL,  "HPCCResultSetMetadata.getColumnTypeName(column : " + column +" )");
+        HPCCJDBCUtils.traceoutln(Level.ALL,  "HPCCResultSetMetadata.getColumnTypeName(column : {} )", column);
         if (column >= 1 && column <= columnList.size())
         {
             try
             {
                 String sqlTypeName = HPCCJDBCUtils.getSQLTypeName(columnList.get(column - 1).getSqlType());
-                HPCCJDBCUtils.traceoutln(Level.ALL,  "SQLTYPEName : " + sqlTypeName +" )");
+                HPCCJDBCUtils.traceoutln(Level.ALL,  "SQLTYPEName : {} )", sqlTypeName);
                 return sqlTypeName;
             }
             catch (Exception e)
@@ -226,29 +246,29 @@ public class HPCCResultSetMetadata implements ResultSetMetaData
 
     public boolean isReadOnly(int column) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.ALL,  "isReadOnly ( " + column +" ) : true");
+        HPCCJDBCUtils.traceoutln(Level.ALL,  "isReadOnly ( {} ) : true", column);
         return true;
     }
 
     public boolean isWritable(int column) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.ALL,  "isWritable ( " + column +" ) : false");
+        HPCCJDBCUtils.traceoutln(Level.ALL,  "isWritable ( {} ) : false", column);
         return false;
     }
 
     public boolean isDefinitelyWritable(int column) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.ALL,  "isDefinitelyWritable ( " + column +" ) : false");
+        HPCCJDBCUtils.traceoutln(Level.ALL,  "isDefinitelyWritable ( {} ) : false", column);
         return false;
     }
 
     public String getColumnClassName(int column) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.ALL,  "HPCCResultSetMetadata.getColumnClassName(column : " + column +" )");
+        HPCCJDBCUtils.traceoutln(Level.ALL,  "HPCCResultSetMetadata.getColumnClassName(column : {} )", column);
         if (column >= 1 && column <= columnList.size())
         {
             String convertSQLtype2JavaClassName = HPCCJDBCUtils.convertSQLtype2JavaClassName(columnList.get(column - 1).getSqlType());
-            HPCCJDBCUtils.traceoutln(Level.ALL,  "Column class name: " + convertSQLtype2JavaClassName +" )");
+            HPCCJDBCUtils.traceoutln(Level.ALL,  "Column class name: {} )", convertSQLtype2JavaClassName);
             return convertSQLtype2JavaClassName;
         }
         else
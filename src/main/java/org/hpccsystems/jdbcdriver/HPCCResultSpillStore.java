@@ -0,0 +1,278 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+/**
+ * Holds the result windows already read by a scroll insensitive HPCCResultSet.
+ *
+ * Only the most recently used windows are kept in memory, older ones are written once to a temporary
+ * file and mapped back in when the cursor returns to them. Each spilled window is stored as its row
+ * count followed by, for each row, the number of cells and each cell as a length prefixed UTF-8 value
+ * (length -1 marks a null cell).
+ */
+public class HPCCResultSpillStore
+{
+    private final static Charset                UTF8 = Charset.forName("UTF-8");
+    private final static int                    NULLCELL = -1;
+
+    private final int                           windowsInMemory;
+    private final File                          spillDirectory;
+    private final TreeMap<Integer, Window>      windows = new TreeMap<Integer, Window>();
+    private final LinkedHashMap<Integer, Window> residentWindows = new LinkedHashMap<Integer, Window>(16, 0.75f, true);
+
+    private File                                spillFile = null;
+    private RandomAccessFile                    spillRAF = null;
+    private FileChannel                         spillChannel = null;
+    private long                                spillFileSize = 0;
+    private int                                 rowCount = 0;
+
+    private static class Window
+    {
+        final int       start;
+        final int       count;
+        List<List>      rows;
+        long            offset = -1;
+        int             length = 0;
+
+        Window(int start, List<List> rows)
+        {
+            this.start = start;
+            this.count = rows.size();
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * @param windowsInMemory number of windows held in memory, at least one
+     * @param spillDirectory  directory of the temporary spill file, the default temporary directory if null
+     */
+    public HPCCResultSpillStore(int windowsInMemory, File spillDirectory)
+    {
+        this.windowsInMemory = Math.max(1, windowsInMemory);
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Number of rows stored, windows are expected to be added in order without gaps.
+     */
+    public synchronized int getRowCount()
+    {
+        return rowCount;
+    }
+
+    public synchronized int getWindowCount()
+    {
+        return windows.size();
+    }
+
+    public synchronized int getResidentWindowCount()
+    {
+        return residentWindows.size();
+    }
+
+    public synchronized long getSpillFileSize()
+    {
+        return spillFileSize;
+    }
+
+    public synchronized void addWindow(int start, List<List> rows) throws IOException
+    {
+        if (rows == null || rows.size() == 0 || windows.containsKey(start))
+            return;
+
+        Window window = new Window(start, rows);
+        windows.put(start, window);
+        rowCount = Math.max(rowCount, start + window.count);
+        makeResident(window);
+    }
+
+    /**
+     * Start index of the window holding the row at the given (zero based) index, -1 if not stored.
+     */
+    public synchronized int getWindowStart(int index)
+    {
+        Window window = findWindow(index);
+        return window != null ? window.start : -1;
+    }
+
+    /**
+     * Rows of the window holding the row at the given (zero based) index, read back from the spill file if needed.
+     */
+    public synchronized List<List> getWindowRows(int index) throws IOException
+    {
+        Window window = findWindow(index);
+        if (window == null)
+            return null;
+
+        if (window.rows == null)
+        {
+            window.rows = readWindow(window);
+            makeResident(window);
+        }
+        else
+            residentWindows.get(window.start); //touch
+
+        return window.rows;
+    }
+
+    public synchronized void close()
+    {
+        windows.clear();
+        residentWindows.clear();
+        rowCount = 0;
+
+        try
+        {
+            if (spillChannel != null)
+                spillChannel.close();
+            if (spillRAF != null)
+                spillRAF.close();
+        }
+        catch (IOException e)
+        {
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "HPCCResultSpillStore: could not close spill file: {}", e.getLocalizedMessage());
+        }
+
+        if (spillFile != null && !spillFile.delete())
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "HPCCResultSpillStore: could not delete spill file {}", spillFile);
+
+        spillChannel = null;
+        spillRAF = null;
+        spillFile = null;
+        spillFileSize = 0;
+    }
+
+    private Window findWindow(int index)
+    {
+        Map.Entry<Integer, Window> entry = windows.floorEntry(index);
+        if (entry == null || index >= entry.getValue().start + entry.getValue().count)
+            return null;
+
+        return entry.getValue();
+    }
+
+    private void makeResident(Window window) throws IOException
+    {
+        residentWindows.put(window.start, window);
+
+        Iterator<Window> eldest = residentWindows.values().iterator();
+        while (residentWindows.size() > windowsInMemory && eldest.hasNext())
+        {
+            Window evicted = eldest.next();
+            if (evicted == window)
+                continue;
+
+            if (evicted.offset < 0)
+                writeWindow(evicted);
+
+            evicted.rows = null;
+            eldest.remove();
+        }
+    }
+
+    private void writeWindow(Window window) throws IOException
+    {
+        if (spillChannel == null)
+        {
+            spillFile = File.createTempFile("hpccjdbc", ".spill", spillDirectory);
+            spillRAF = new RandomAccessFile(spillFile, "rw");
+            spillChannel = spillRAF.getChannel();
+            HPCCJDBCUtils.traceoutln(Level.INFO, "HPCCResultSpillStore: spilling result windows to {}", spillFile);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(window.count * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(window.count);
+        for (List row : window.rows)
+        {
+            int cellCount = row.size();
+            out.writeInt(cellCount);
+            for (int i = 0; i < cellCount; i++)
+            {
+                Object cell = row.get(i);
+                if (cell == null)
+                    out.writeInt(NULLCELL);
+                else
+                {
+                    byte [] value = cell.toString().getBytes(UTF8);
+                    out.writeInt(value.length);
+                    out.write(value);
+                }
+            }
+        }
+        out.flush();
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        window.offset = spillFileSize;
+        window.length = buffer.remaining();
+
+        long position = window.offset;
+        while (buffer.hasRemaining())
+            position += spillChannel.write(buffer, position);
+
+        spillFileSize += window.length;
+    }
+
+    private List<List> readWindow(Window window) throws IOException
+    {
+        MappedByteBuffer buffer = spillChannel.map(FileChannel.MapMode.READ_ONLY, window.offset, window.length);
+
+        int count = buffer.getInt();
+        List<List> rows = new ArrayList<List>(count);
+        for (int r = 0; r < count; r++)
+        {
+            int cellCount = buffer.getInt();
+            ArrayList row = new ArrayList(cellCount);
+            for (int i = 0; i < cellCount; i++)
+            {
+                int length = buffer.getInt();
+                if (length == NULLCELL)
+                    row.add(null);
+                else
+                {
+                    byte [] value = new byte[length];
+                    buffer.get(value);
+                    row.add(new String(value, UTF8));
+                }
+            }
+            rows.add(row);
+        }
+
+        return rows;
+    }
+}
@@ -21,10 +21,27 @@ package org.hpccsystems.jdbcdriver;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 
+import org.hpccsystems.ws.client.platform.Workunit;
+import org.hpccsystems.ws.client.wrappers.gen.wssql.ECLWorkunitWrapper;
 import org.hpccsystems.ws.client.wrappers.gen.wssql.ExecuteSQLResponseWrapper;
 
 /**
@@ -40,23 +57,96 @@ public class HPCCStatement implements Statement
     protected HPCCConnection           hpccConnection;
     protected SQLWarning               warnings;
     protected HPCCResultSet            result        = null;
+    protected ArrayDeque<HPCCResultSet> pendingResults = new ArrayDeque<HPCCResultSet>();
+    protected List<HPCCResultSet>      keptResults   = new ArrayList<HPCCResultSet>();
+    protected volatile int             queryTimeoutSeconds = 0;
+    protected volatile int             maxRows       = 0;
+    protected volatile int             fetchSize     = 0;
+    protected int                      resultSetType = ResultSet.TYPE_FORWARD_ONLY;
+    private final Set<Execution>       activeExecutions =
+            Collections.newSetFromMap(new ConcurrentHashMap<Execution, Boolean>());
 
     protected HPCCDatabaseMetaData     dbMetadata;
+    protected HPCCStatementMetrics     metrics;
     protected static final String      className = "HPCCStatement";
     public static final String         hpccResultSetName = "HPCC Result";
 
+    /*
+     * One synchronous, asynchronous or batched execution: the future its callers wait on, its query timeout
+     * and, once WsSQL returned it, the workunit to abort when the execution is cancelled or times out.
+     */
+    protected static final class Execution
+    {
+        final CompletableFuture<HPCCResultSet> future = new CompletableFuture<HPCCResultSet>();
+        final HPCCConnection                   connection;
+        final int                              timeoutSeconds;
+        private final long                     startNanos = System.nanoTime();
+        private String                         wuid = null;
+        private boolean                        abortRequested = false;
+
+        Execution(HPCCConnection connection, int timeoutSeconds)
+        {
+            this.connection = connection;
+            this.timeoutSeconds = timeoutSeconds;
+        }
+
+        /**
+         * @return milliseconds left until the query timeout expires, Long.MAX_VALUE without a timeout
+         */
+        long getRemainingMillis()
+        {
+            if (timeoutSeconds <= 0)
+                return Long.MAX_VALUE;
+
+            return TimeUnit.SECONDS.toMillis(timeoutSeconds) - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        synchronized void setWorkunit(String wuid)
+        {
+            this.wuid = wuid;
+        }
+
+        /*
+         * Both the thread stopping the execution and the one polling its workunit ask for the abort,
+         * whichever finds the workunit known first gets it.
+         */
+        synchronized String takeWorkunitToAbort()
+        {
+            if (wuid == null || abortRequested)
+                return null;
+
+            abortRequested = true;
+            return wuid;
+        }
+    }
+
+    protected interface ExecutionTask
+    {
+        HPCCResultSet execute(Execution execution) throws Exception;
+    }
+
     public HPCCStatement(Connection conn)
     {
-        HPCCJDBCUtils.traceoutln(Level.INFO,   className + "Constructor(conn)");
+        this(conn, ResultSet.TYPE_FORWARD_ONLY);
+    }
+
+    /**
+     * @param resultSetType TYPE_FORWARD_ONLY or TYPE_SCROLL_INSENSITIVE
+     */
+    public HPCCStatement(Connection conn, int resultSetType)
+    {
+        HPCCJDBCUtils.traceoutln(Level.INFO,   className + "Constructor(conn, {})", resultSetType);
         this.hpccConnection = (HPCCConnection)conn;
         this.dbMetadata = hpccConnection.getDatabaseMetaData();
+        this.resultSetType = resultSetType;
+        this.metrics = new HPCCStatementMetrics(hpccConnection.getMetrics());
     }
 
     protected ResultSet executeHPCCQuery() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.INFO,  className + ": executeQuery()");
-        HPCCJDBCUtils.traceoutln(Level.INFO,  "\tAttempting to process sql query: " + sqlQuery);
-        result = null;
+        HPCCJDBCUtils.traceoutln(Level.INFO,  "\tAttempting to process sql query: {}", sqlQuery);
+        clearResults();
 
         try
         {
@@ -75,10 +165,14 @@ public class HPCCStatement implements Statement
                     throw new SQLException(message);
                 }
 
-                ExecuteSQLResponseWrapper executeSQL = hpccConnection.executeSQL(sqlQuery);
-
-                result = new HPCCResultSet(hpccConnection, executeSQL.getWorkunit().getWuid(),hpccResultSetName);
-                result.parseDataset("<root>"+executeSQL.getResult()+"</root>");
+                final String sql = sqlQuery;
+                result = awaitExecution(new ExecutionTask()
+                {
+                    public HPCCResultSet execute(Execution execution) throws Exception
+                    {
+                        return executeSQL(sql, execution);
+                    }
+                });
             }
             else
                 throw new SQLException(className + "is closed, cannot execute query");
@@ -91,10 +185,313 @@ public class HPCCStatement implements Statement
         return result;
     }
 
+    private HPCCResultSet executeSQL(String sql, Execution execution) throws Exception
+    {
+        HPCCQueryTimings timings = new HPCCQueryTimings(sql);
+        long startNanos = System.nanoTime();
+        ExecuteSQLResponseWrapper executeSQL = execution.connection.executeSQL(sql, execution.connection.getWorkunitPollMillis(),
+                getResultLimit(), getResultWindowSize());
+        String executeResult = awaitWorkunit(execution, executeSQL.getWorkunit(), executeSQL.getResult());
+        long executeNanos = System.nanoTime() - startNanos;
+        metrics.recordExecuteSQL(executeNanos);
+        timings.recordExecute(executeNanos, executeResult == null ? 0 : executeResult.length());
+
+        HPCCResultSet resultset = createResultSet(executeSQL.getWorkunit().getWuid());
+        resultset.setQueryTimings(timings);
+        resultset.parseResult(executeResult);
+
+        return resultset;
+    }
+
+    /**
+     * Executes the SQL on the driver's shared executor, see executeQueryAsync(String, Executor).
+     */
+    public CompletableFuture<HPCCResultSet> executeQueryAsync(String sql) throws SQLException
+    {
+        return executeQueryAsync(sql, HPCCDriverExecutor.getSharedExecutor());
+    }
+
+    /**
+     * Submits the SQL for execution on the given executor and returns without waiting for the WsSQL round trip.
+     * The future completes with the result set, or exceptionally with an SQLException. The statement's current
+     * result set is not affected, several asynchronous queries can be in flight on the same statement.
+     *
+     * Reachable through Statement.unwrap(HPCCStatement.class).
+     */
+    public CompletableFuture<HPCCResultSet> executeQueryAsync(final String sql, Executor executor) throws SQLException
+    {
+        HPCCJDBCUtils.traceoutln(Level.INFO,  className + ": executeQueryAsync({})", sql);
+
+        if (isClosed())
+            throw new SQLException(className + " is closed, cannot execute query");
+
+        if (sql == null || sql.isEmpty())
+            throw new SQLException(className + ":  Cannot execute empty SQL command");
+
+        return executeAsync(new ExecutionTask()
+        {
+            public HPCCResultSet execute(Execution execution) throws Exception
+            {
+                return executeSQL(sql, execution);
+            }
+        }, executor);
+    }
+
+    /*
+     * Statement level maxRows and fetchSize override the connection's EclResultLimit and PageSize.
+     */
+    protected int getResultLimit()
+    {
+        return maxRows > 0 ? maxRows : hpccConnection.getEclResultLimit();
+    }
+
+    protected int getResultWindowSize()
+    {
+        return fetchSize > 0 ? fetchSize : hpccConnection.getPageSize();
+    }
+
+    /*
+     * Adaptive window sizing applies unless the statement asked for a specific fetch size.
+     */
+    protected HPCCFetchWindowSizer createWindowSizer()
+    {
+        if (fetchSize > 0 || !hpccConnection.isAdaptiveFetch())
+            return null;
+
+        return new HPCCFetchWindowSizer(getResultWindowSize(), hpccConnection.getAdaptiveFetchMaxSize(), hpccConnection.getAdaptiveFetchMemoryBytes());
+    }
+
+    protected HPCCResultSet createResultSet(String wuid)
+    {
+        HPCCResultSet resultset = new HPCCResultSet(hpccConnection, wuid, hpccResultSetName, getResultWindowSize(), createWindowSizer());
+        resultset.setStatementMetrics(metrics);
+
+        if (resultSetType != ResultSet.TYPE_FORWARD_ONLY)
+            resultset.enableScrolling(hpccConnection.getScrollWindowsInMemory(), hpccConnection.getScrollSpillDirectory());
+
+        return resultset;
+    }
+
+    /*
+     * WsSQL waits up to WorkunitPollMillis for the workunit and returns its id with the response. A workunit still
+     * running at that point is polled from here on, so cancel() and an expired query timeout can abort it instead of
+     * leaving it to occupy the cluster until it completes. Without a timeout or cancel the workunit is left alone.
+     * Returns the result carried by the response or, if the workunit had to be polled, its first result window.
+     */
+    protected String awaitWorkunit(Execution execution, ECLWorkunitWrapper workunit, String result) throws Exception
+    {
+        if (!HPCCConnection.isWorkunitRunning(workunit))
+            return result;
+
+        String wuid = workunit.getWuid();
+        String state = workunit.getState();
+        int pollMillis = execution.connection.getWorkunitPollMillis();
+        execution.setWorkunit(wuid);
+        HPCCJDBCUtils.traceoutln(Level.FINE, "Polling workunit {} ({})", wuid, state);
+
+        while (HPCCConnection.isWorkunitRunning(state))
+        {
+            long remainingMillis = execution.getRemainingMillis();
+            if (remainingMillis <= 0)
+                expireExecution(execution);
+            else
+                waitForCompletion(execution.future, Math.min(pollMillis, remainingMillis));
+
+            if (execution.future.isDone())
+            {
+                abortWorkunit(execution);
+                throw new SQLException(className + ": execution of workunit " + wuid + " stopped");
+            }
+
+            state = execution.connection.getWorkunitState(wuid);
+        }
+
+        if (Workunit.isFailedState(state))
+            throw new SQLException(className + ": workunit " + wuid + " completed in state " + state);
+
+        return execution.connection.fetchResults(wuid, 0, getResultWindowSize(), true).getResult();
+    }
+
+    /*
+     * Returns early once the execution is cancelled or times out.
+     */
+    private static void waitForCompletion(CompletableFuture<HPCCResultSet> future, long waitMillis) throws InterruptedException
+    {
+        try
+        {
+            future.get(waitMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException e)
+        {
+        }
+        catch (CancellationException e)
+        {
+        }
+        catch (TimeoutException e)
+        {
+        }
+    }
+
+    private void abortWorkunit(Execution execution)
+    {
+        String wuid = execution.takeWorkunitToAbort();
+        if (wuid == null)
+            return;
+
+        try
+        {
+            execution.connection.abortWorkunit(wuid);
+        }
+        catch (Exception e)
+        {
+            HPCCJDBCUtils.traceoutln(Level.WARNING, "Could not abort workunit {}: {}", wuid, e.getLocalizedMessage());
+        }
+    }
+
+    private SQLTimeoutException expireExecution(Execution execution)
+    {
+        SQLTimeoutException timeout = new SQLTimeoutException(className + ": query timeout (" + execution.timeoutSeconds + "s) expired");
+        if (execution.future.completeExceptionally(timeout))
+        {
+            metrics.recordError();
+            abortWorkunit(execution);
+        }
+
+        return timeout;
+    }
+
+    /*
+     * Synchronous executions run on the driver executor, so the calling thread can stop waiting once the query
+     * timeout expires or the statement is cancelled; the execution's workunit is aborted in either case.
+     */
+    protected HPCCResultSet awaitExecution(ExecutionTask task) throws SQLException
+    {
+        return awaitResult(submitExecution(task, HPCCDriverExecutor.getSharedExecutor()));
+    }
+
+    protected HPCCResultSet awaitResult(Execution execution) throws SQLException
+    {
+        try
+        {
+            if (execution.timeoutSeconds > 0)
+                return execution.future.get(execution.timeoutSeconds, TimeUnit.SECONDS);
+            else
+                return execution.future.get();
+        }
+        catch (ExecutionException e)
+        {
+            throw toSQLException(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        }
+        catch (TimeoutException e)
+        {
+            throw expireExecution(execution);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            if (execution.future.completeExceptionally(new SQLException(className + ": query execution interrupted")))
+                abortWorkunit(execution);
+            throw new SQLException(className + ": query execution interrupted");
+        }
+    }
+
+    protected CompletableFuture<HPCCResultSet> executeAsync(ExecutionTask task, Executor executor)
+    {
+        return submitExecution(task, executor).future;
+    }
+
+    private Execution submitExecution(final ExecutionTask task, Executor executor)
+    {
+        final Execution execution = registerExecution();
+        try
+        {
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    runExecution(task, execution);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            execution.future.completeExceptionally(new SQLException(className + ": could not schedule query execution", e));
+        }
+
+        return execution;
+    }
+
+    /*
+     * The query timeout is taken when the execution is registered.
+     */
+    protected Execution registerExecution()
+    {
+        final Execution execution = new Execution(hpccConnection, queryTimeoutSeconds);
+        activeExecutions.add(execution);
+        execution.future.whenComplete(new BiConsumer<HPCCResultSet, Throwable>()
+        {
+            public void accept(HPCCResultSet resultset, Throwable error)
+            {
+                activeExecutions.remove(execution);
+            }
+        });
+
+        return execution;
+    }
+
+    protected void runExecution(ExecutionTask task, Execution execution)
+    {
+        if (execution.future.isDone())
+            return;
+
+        try
+        {
+            if (isClosed())
+                throw new SQLException(className + " is closed, cannot execute query");
+
+            HPCCResultSet resultset = task.execute(execution);
+
+            //timed out or cancelled while the request was outstanding
+            if (!execution.future.complete(resultset))
+                resultset.close();
+        }
+        catch (Exception e)
+        {
+            if (execution.future.completeExceptionally(toSQLException(e)))
+                metrics.recordError();
+        }
+    }
+
+    private static SQLException toSQLException(Exception e)
+    {
+        if (e instanceof SQLException)
+            return (SQLException) e;
+
+        return new SQLException(e.getLocalizedMessage(), e);
+    }
+
+    /*
+     * Statements which produce several result sets (batches) expose the first as the current result,
+     * the rest are handed out by getMoreResults.
+     */
+    protected void addResult(HPCCResultSet resultset)
+    {
+        if (result == null)
+            result = resultset;
+        else
+            pendingResults.add(resultset);
+    }
+
+    protected void clearResults()
+    {
+        result = null;
+        pendingResults.clear();
+        keptResults.clear();
+    }
+
     protected SQLException convertToSQLExceptionAndAddWarn(Exception e)
     {
-        SQLException sqlexcept = new SQLException(e.getLocalizedMessage());
-        sqlexcept.setStackTrace(e.getStackTrace());
+        SQLException sqlexcept = toSQLException(e);
 
         if (warnings == null)
             warnings = new SQLWarning();
@@ -106,7 +503,7 @@ public class HPCCStatement implements Statement
 
     public ResultSet executeQuery(String sql) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.INFO,  className + ": executeQuery(" + sql + ")");
+        HPCCJDBCUtils.traceoutln(Level.INFO,  className + ": executeQuery({})", sql);
         sqlQuery = sql;
 
         return executeHPCCQuery();
@@ -126,7 +523,7 @@ public class HPCCStatement implements Statement
             {
                 closed = true;
                 hpccConnection = null;
-                result = null;
+                clearResults();
                 sqlQuery = null;
                 dbMetadata = null;
             }
@@ -143,22 +540,26 @@ public class HPCCStatement implements Statement
         throw new UnsupportedOperationException(className + ": setMaxFieldSize(int max) Not supported yet.");
     }
 
+    /**
+     * @return the statement's row limit, 0 if the connection's EclResultLimit applies
+     */
     public int getMaxRows() throws SQLException
     {
-        try
-        {
-            HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": getMaxRows()");
-            return Integer.parseInt(this.hpccConnection.getProperty("EclLimit"));
-        }
-        catch (Exception e)
-        {
-            throw new SQLException("Could not determine MaxRows");
-        }
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": getMaxRows()");
+        return maxRows;
     }
 
+    /**
+     * Limits the rows returned by subsequent executions of this statement, 0 reverts to the connection's EclResultLimit.
+     */
     public void setMaxRows(int max) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setMaxRows(int max) Not supported yet.");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setMaxRows({})", max);
+
+        if (max < 0)
+            throw new SQLException(className + ": max rows must be >= 0");
+
+        maxRows = max;
     }
 
     public void setEscapeProcessing(boolean enable) throws SQLException
@@ -169,17 +570,37 @@ public class HPCCStatement implements Statement
     public int getQueryTimeout() throws SQLException
     {
         HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": getQueryTimeout()");
-        return 0;
+        return queryTimeoutSeconds;
     }
 
+    /**
+     * Applies to executions started afterwards. Once it expires the caller is released with an SQLTimeoutException
+     * and the query's workunit, if still running, is aborted.
+     */
     public void setQueryTimeout(int seconds) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setQueryTimeout()");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setQueryTimeout({})", seconds);
+
+        if (seconds < 0)
+            throw new SQLException(className + ": query timeout must be >= 0");
+
+        queryTimeoutSeconds = seconds;
     }
 
+    /**
+     * Releases all threads waiting on this statement's executions, including asynchronous and batched ones, with an
+     * SQLException and aborts their workunits. A workunit whose id WsSQL has not returned yet (at most
+     * WorkunitPollMillis after submission) is aborted as soon as the id arrives; results arriving are discarded.
+     */
     public void cancel() throws SQLException
     {
-        throw new UnsupportedOperationException(className + ": cancel()  Not supported yet.");
+        HPCCJDBCUtils.traceoutln(Level.INFO,  "{}: cancel() {} active execution(s)", className, activeExecutions.size());
+
+        for (Execution execution : activeExecutions)
+        {
+            if (execution.future.completeExceptionally(new SQLException(className + ": query cancelled")))
+                abortWorkunit(execution);
+        }
     }
 
     public SQLWarning getWarnings() throws SQLException
@@ -201,7 +622,7 @@ public class HPCCStatement implements Statement
 
     public boolean execute(String sql) throws SQLException
     {
-        HPCCJDBCUtils.traceoutln(Level.INFO,  className + ": execute(" + sql + ")");
+        HPCCJDBCUtils.traceoutln(Level.INFO,  className + ": execute({})", sql);
 
         sqlQuery = sql;
 
@@ -210,9 +631,9 @@ public class HPCCStatement implements Statement
 
     public boolean execute() throws SQLException
     {
-        result = null;
+        clearResults();
         HPCCJDBCUtils.traceoutln(Level.INFO,  className + ": execute()");
-        HPCCJDBCUtils.traceoutln(Level.INFO,  "\tAttempting to process sql query: " + sqlQuery);
+        HPCCJDBCUtils.traceoutln(Level.INFO,  "\tAttempting to process sql query: {}", sqlQuery);
         try
         {
             result = (HPCCResultSet) executeHPCCQuery();
@@ -238,7 +659,7 @@ public class HPCCStatement implements Statement
 
     public boolean getMoreResults() throws SQLException
     {
-        throw new UnsupportedOperationException(className + ": getMoreResults Not supported yet.");
+        return getMoreResults(CLOSE_CURRENT_RESULT);
     }
 
     public void setFetchDirection(int direction) throws SQLException
@@ -251,14 +672,22 @@ public class HPCCStatement implements Statement
         return ResultSet.FETCH_FORWARD;
     }
 
+    /**
+     * Sets the result window size of subsequent executions of this statement, 0 reverts to the connection's PageSize.
+     */
     public void setFetchSize(int rows) throws SQLException
     {
-        result.setFetchSize(rows);
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": setFetchSize({})", rows);
+
+        if (rows < 0)
+            throw new SQLException(className + ": fetch size must be >= 0");
+
+        fetchSize = rows;
     }
 
     public int getFetchSize() throws SQLException
     {
-        return result.getFetchSize();
+        return fetchSize;
     }
 
     public int getResultSetConcurrency() throws SQLException
@@ -266,9 +695,18 @@ public class HPCCStatement implements Statement
         return result.getConcurrency();
     }
 
+    /**
+     * Counters of this statement's executions and result sets, reachable through Statement.unwrap(HPCCStatement.class).
+     * Latency distributions are kept by the connection's metrics.
+     */
+    public HPCCStatementMetrics getMetrics()
+    {
+        return metrics;
+    }
+
     public int getResultSetType() throws SQLException
     {
-        return result.getType();
+        return resultSetType;
     }
 
     public void addBatch(String sql) throws SQLException
@@ -293,7 +731,29 @@ public class HPCCStatement implements Statement
 
     public boolean getMoreResults(int current) throws SQLException
     {
-        throw new UnsupportedOperationException(className + ": getMoreResults(int current) Not supported yet.");
+        HPCCJDBCUtils.traceoutln(Level.FINEST,  className + ": getMoreResults({})", current);
+
+        if (current != CLOSE_CURRENT_RESULT && current != KEEP_CURRENT_RESULT && current != CLOSE_ALL_RESULTS)
+            throw new SQLException(className + ": getMoreResults invalid argument: " + current);
+
+        if (result != null)
+        {
+            if (current == KEEP_CURRENT_RESULT)
+                keptResults.add(result);
+            else
+                result.close();
+        }
+
+        if (current == CLOSE_ALL_RESULTS)
+        {
+            for (HPCCResultSet kept : keptResults)
+                kept.close();
+            keptResults.clear();
+        }
+
+        result = pendingResults.poll();
+
+        return result != null;
     }
 
     public ResultSet getGeneratedKeys() throws SQLException
@@ -356,12 +816,15 @@ public class HPCCStatement implements Statement
 
     public <T> T unwrap(Class<T> iface) throws SQLException
     {
-        throw new UnsupportedOperationException(className + ": Not supported yet.");
+        if (iface != null && iface.isInstance(this))
+            return iface.cast(this);
+
+        throw new SQLException(className + ": not a wrapper for " + iface);
     }
 
     public boolean isWrapperFor(Class<?> iface) throws SQLException
     {
-        throw new UnsupportedOperationException(className + ": Not supported yet.");
+        return iface != null && iface.isInstance(this);
     }
 
     //Introduced in java 1.7 @Override
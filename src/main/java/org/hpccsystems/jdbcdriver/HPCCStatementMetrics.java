@@ -0,0 +1,149 @@
+/*##############################################################################
+
+Copyright (C) 2011 HPCC Systems.
+
+All rights reserved. This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as
+published by the Free Software Foundation, either version 3 of the
+License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program. If not, see <http://www.gnu.org/licenses/>.
+############################################################################## */
+
+
+package org.hpccsystems.jdbcdriver;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plain counters of a statement's executions and result sets. Latency histograms are kept at the
+ * connection and driver level only (HPCCMetrics): every sample is counted here and recorded once
+ * into the connection's metrics, which roll up into the driver's.
+ */
+public class HPCCStatementMetrics
+{
+    private final HPCCMetrics           connectionMetrics;
+
+    private final LongAdder             executions = new LongAdder();
+    private final LongAdder             executeNanos = new LongAdder();
+    private final LongAdder             fetches = new LongAdder();
+    private final LongAdder             fetchNanos = new LongAdder();
+    private final LongAdder             rowsParsed = new LongAdder();
+    private final LongAdder             bytesReceived = new LongAdder();
+    private final LongAdder             parseNanos = new LongAdder();
+    private final LongAdder             errors = new LongAdder();
+
+    /**
+     * @param connectionMetrics metrics every sample is also recorded into
+     */
+    public HPCCStatementMetrics(HPCCMetrics connectionMetrics)
+    {
+        this.connectionMetrics = connectionMetrics;
+    }
+
+    public void recordExecuteSQL(long nanos)
+    {
+        executions.increment();
+        executeNanos.add(nanos);
+        connectionMetrics.recordExecuteSQL(nanos);
+    }
+
+    public void recordExecutePreparedSQL(long nanos)
+    {
+        executions.increment();
+        executeNanos.add(nanos);
+        connectionMetrics.recordExecutePreparedSQL(nanos);
+    }
+
+    public void recordFetchResults(long nanos)
+    {
+        fetches.increment();
+        fetchNanos.add(nanos);
+        connectionMetrics.recordFetchResults(nanos);
+    }
+
+    public void recordResultParsed(int rows, long bytes, long nanos)
+    {
+        rowsParsed.add(rows);
+        bytesReceived.add(bytes);
+        parseNanos.add(nanos);
+        connectionMetrics.recordResultParsed(rows, bytes, nanos);
+    }
+
+    public void recordError()
+    {
+        errors.increment();
+        connectionMetrics.recordError();
+    }
+
+    /**
+     * @return the number of ExecuteSQL and ExecutePreparedSQL requests
+     */
+    public long getExecutions()
+    {
+        return executions.sum();
+    }
+
+    public double getExecuteMillis()
+    {
+        return executeNanos.sum() / 1000000.0;
+    }
+
+    public long getFetches()
+    {
+        return fetches.sum();
+    }
+
+    public double getFetchMillis()
+    {
+        return fetchNanos.sum() / 1000000.0;
+    }
+
+    public long getRowsParsed()
+    {
+        return rowsParsed.sum();
+    }
+
+    public long getBytesReceived()
+    {
+        return bytesReceived.sum();
+    }
+
+    public double getParseMillis()
+    {
+        return parseNanos.sum() / 1000000.0;
+    }
+
+    public long getErrors()
+    {
+        return errors.sum();
+    }
+
+    /**
+     * Clears these counters only, the connection keeps its totals.
+     */
+    public void reset()
+    {
+        executions.reset();
+        executeNanos.reset();
+        fetches.reset();
+        fetchNanos.reset();
+        rowsParsed.reset();
+        bytesReceived.reset();
+        parseNanos.reset();
+        errors.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("executions=%d execute=%.3fms fetches=%d fetch=%.3fms rows=%d bytes=%d parse=%.3fms errors=%d", getExecutions(),
+                getExecuteMillis(), getFetches(), getFetchMillis(), getRowsParsed(), getBytesReceived(), getParseMillis(), getErrors());
+    }
+}
@@ -0,0 +1,286 @@
+package org.hpccsystems.jdbcdriver.tests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.hpccsystems.jdbcdriver.HPCCConnection;
+import org.hpccsystems.jdbcdriver.HPCCDataSource;
+import org.hpccsystems.jdbcdriver.HPCCJDBCUtils;
+
+/**
+ * Exercises the HPCCDataSource connection pool: borrowing, returning, reuse of the physical connection
+ * with its state reset, the pool size bound, closing the pool, and validation of idle connections. Runs against the embedded
+ * HPCCMockESPServer unless a Config file pointing at a real HPCC cluster is given.
+ */
+public class HPCCDataSourceTest
+{
+    private static final String DEFAULTSQL = "select * from tutorial::persons";
+
+    private int                 passed = 0;
+    private int                 failed = 0;
+
+    public static void usage()
+    {
+        System.out.println("********************************************************************");
+        System.out.println("HPCC JDBC DataSource Test Usage:");
+        System.out.println(" HPCCDataSourceTest [options]\n "
+                + "where options:\n "
+                + "Sql=<query executed through the pooled connections>\n "
+                + "Config=<File path to HPCC connection config file, omit to run against the mock server>\n");
+        System.out.println(" eg. HPCCDataSourceTest Config=/tmp/hpcc.properties");
+        System.out.println();
+        System.out.println("********************************************************************\n");
+        System.exit(0);
+    }
+
+    private void check(boolean condition, String description)
+    {
+        if (condition)
+        {
+            passed++;
+            System.out.println(" PASS: " + description);
+        }
+        else
+        {
+            failed++;
+            System.out.println(" FAIL: " + description);
+        }
+    }
+
+    private static HPCCConnection physical(Connection connection) throws SQLException
+    {
+        return connection.unwrap(HPCCConnection.class);
+    }
+
+    private void borrowAndReturn(HPCCDataSource dataSource, String sql) throws SQLException
+    {
+        System.out.println("Borrow and return:");
+        Connection connection = dataSource.getConnection();
+        check(connection.isValid(5), "borrowed connection is valid");
+        check(dataSource.getActiveConnectionCount() == 1 && dataSource.getIdleConnectionCount() == 0, "pool reports one active connection");
+
+        Statement statement = connection.createStatement();
+        check(statement.getConnection() == connection, "statement returns the logical connection");
+
+        ResultSet resultset = statement.executeQuery(sql);
+        check(resultset.getStatement() == statement, "result set returns the statement it came from");
+        int rows = 0;
+        while (resultset.next())
+            rows++;
+        check(rows > 0, "query read " + rows + " rows");
+
+        DatabaseMetaData metadata = connection.getMetaData();
+        check(metadata.getConnection() == connection, "metadata returns the logical connection");
+
+        connection.setCatalog("pooltest");
+        connection.setClientInfo("ApplicationName", "HPCCDataSourceTest");
+        Statement leftOpen = connection.createStatement();
+        leftOpen.executeQuery(sql);
+
+        connection.close();
+        check(connection.isClosed(), "closed handle reports closed");
+        check(leftOpen.isClosed(), "statement left open is closed on return");
+        check(dataSource.getActiveConnectionCount() == 0 && dataSource.getIdleConnectionCount() == 1, "connection returned to the pool");
+
+        try
+        {
+            connection.createStatement();
+            check(false, "closed handle rejects new statements");
+        }
+        catch (SQLException e)
+        {
+            check(true, "closed handle rejects new statements");
+        }
+    }
+
+    private void reuse(HPCCDataSource dataSource, String sql) throws SQLException
+    {
+        System.out.println("Reuse:");
+        Connection first = dataSource.getConnection();
+        HPCCConnection firstPhysical = physical(first);
+        String catalog = first.getCatalog();
+        first.close();
+
+        Connection second = dataSource.getConnection();
+        check(physical(second) == firstPhysical, "idle physical connection is reused");
+        check(second != first, "each borrower gets its own logical handle");
+        check(first.isClosed() && !second.isClosed(), "only the new handle is open");
+        check(catalog != null && catalog.equals(second.getCatalog()), "catalog is reset on return");
+        check(second.getClientInfo("ApplicationName") == null, "client info is reset on return");
+        check(second.getWarnings() == null, "warnings are cleared on return");
+        check(second.getAutoCommit(), "auto commit is reset on return");
+
+        Statement statement = second.createStatement();
+        ResultSet resultset = statement.executeQuery(sql);
+        check(resultset.next(), "reused connection executes queries");
+        second.close();
+    }
+
+    private void bound(HPCCDataSource dataSource) throws SQLException
+    {
+        System.out.println("Pool bound:");
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+        HPCCConnection firstPhysical = physical(first);
+        check(firstPhysical != physical(second), "concurrent borrowers get distinct physical connections");
+
+        long startMillis = System.currentTimeMillis();
+        try
+        {
+            dataSource.getConnection().close();
+            check(false, "borrowing beyond the pool size times out");
+        }
+        catch (SQLException e)
+        {
+            check(System.currentTimeMillis() - startMillis >= 900, "borrowing beyond the pool size times out");
+        }
+
+        first.close();
+        Connection third = dataSource.getConnection();
+        check(physical(third) == firstPhysical, "returned connection is handed to the next borrower");
+        third.close();
+        second.close();
+        check(dataSource.getIdleConnectionCount() == 2, "both connections are idle");
+    }
+
+    private void closePool(HPCCDataSource dataSource) throws SQLException
+    {
+        System.out.println("Close:");
+        Connection connection = dataSource.getConnection();
+        HPCCConnection borrowed = physical(connection);
+        Connection idle = dataSource.getConnection();
+        HPCCConnection idlePhysical = physical(idle);
+        idle.close();
+
+        dataSource.close();
+        check(idlePhysical.isClosed(), "idle connections are closed with the pool");
+        check(!borrowed.isClosed(), "borrowed connections stay open until returned");
+
+        connection.close();
+        check(borrowed.isClosed(), "connection returned to a closed pool is closed");
+
+        try
+        {
+            dataSource.getConnection();
+            check(false, "closed pool rejects borrowers");
+        }
+        catch (SQLException e)
+        {
+            check(true, "closed pool rejects borrowers");
+        }
+    }
+
+    private void validation(Properties connectionProps, HPCCMockESPServer mock) throws SQLException
+    {
+        System.out.println("Validation:");
+        HPCCDataSource dataSource = new HPCCDataSource(null, connectionProps);
+        dataSource.setValidationIdleMillis(0);
+        dataSource.setLoginTimeout(1);
+        try
+        {
+            Connection connection = dataSource.getConnection();
+            HPCCConnection validated = physical(connection);
+            connection.close();
+
+            connection = dataSource.getConnection();
+            check(physical(connection) == validated, "connection passing validation is reused");
+            connection.close();
+
+            //only the mock server can be taken down from here
+            if (mock == null)
+                return;
+
+            mock.stop();
+            check(!validated.isValid(1), "connection to a stopped server is not valid");
+            try
+            {
+                dataSource.getConnection().close();
+                check(false, "connection failing validation is not handed out");
+            }
+            catch (SQLException e)
+            {
+                check(validated.isClosed(), "connection failing validation is not handed out");
+            }
+        }
+        finally
+        {
+            dataSource.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, SQLException
+    {
+        Properties testArgs = new Properties();
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equalsIgnoreCase("-h") || args[i].equalsIgnoreCase("-help"))
+                usage();
+
+            int separator = args[i].indexOf('=');
+            if (separator > 0)
+                testArgs.put(args[i].substring(0, separator).trim().toUpperCase(), HPCCJDBCUtils.handleQuotedString(args[i].substring(separator + 1).trim()));
+        }
+
+        String sql = testArgs.getProperty("SQL", DEFAULTSQL);
+
+        Properties connectionProps = new Properties();
+        HPCCMockESPServer mock = null;
+        if (testArgs.containsKey("CONFIG"))
+        {
+            FileInputStream params = new FileInputStream(new File(testArgs.getProperty("CONFIG")));
+            connectionProps.load(params);
+            params.close();
+        }
+        else
+        {
+            mock = new HPCCMockESPServer();
+            mock.setResultRows(100);
+            mock.start(0);
+
+            connectionProps.put("ServerAddress", mock.getServerAddress());
+            connectionProps.put("LazyLoad", "true");
+        }
+
+        if (!connectionProps.containsKey("TraceLevel"))
+            connectionProps.put("TraceLevel", "OFF");
+
+        System.out.println("----------------------HPCCJDBC DataSource Test-------------------------");
+        System.out.println(" Target:     " + (mock != null ? "mock " + mock.getServerAddress() : connectionProps.getProperty("ServerAddress")));
+
+        HPCCDataSourceTest test = new HPCCDataSourceTest();
+        HPCCDataSource dataSource = new HPCCDataSource(null, connectionProps);
+        dataSource.setMaxPoolSize(2);
+        dataSource.setLoginTimeout(1);
+        try
+        {
+            test.borrowAndReturn(dataSource, sql);
+            test.reuse(dataSource, sql);
+            test.bound(dataSource);
+            test.closePool(dataSource);
+            test.validation(connectionProps, mock);
+        }
+        catch (SQLException e)
+        {
+            test.failed++;
+            System.out.println(" FAIL: unexpected exception: " + e.getLocalizedMessage());
+        }
+        finally
+        {
+            dataSource.close();
+            if (mock != null)
+                mock.stop();
+        }
+
+        System.out.println("========================================================================");
+        System.out.println(" Completed:  " + test.passed + " passed, " + test.failed + " failed");
+
+        System.exit(test.failed == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,193 @@
+package org.hpccsystems.jdbcdriver.tests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import org.hpccsystems.jdbcdriver.HPCCDriver;
+import org.hpccsystems.jdbcdriver.HPCCJDBCUtils;
+
+/**
+ * Multi-threaded load driver reporting throughput and latency percentiles of the connect, execute
+ * and fullscan workloads. Runs against the embedded HPCCMockESPServer unless a Config file pointing
+ * at a real HPCC cluster is given.
+ */
+public class HPCCDriverLoadTest
+{
+    private static final String DEFAULTSQL = "select * from tutorial::persons";
+
+    public static void usage()
+    {
+        System.out.println("********************************************************************");
+        System.out.println("HPCC JDBC Load Test Usage:");
+        System.out.println(" HPCCDriverLoadTest [options]\n "
+                + "where options:\n "
+                + "Workload=<connect|execute|fullscan> (default execute)\n "
+                + "Threads=<concurrent client threads> (default 8)\n "
+                + "Iterations=<operations per thread> (default 100)\n "
+                + "Connections=<connections shared by the execute and fullscan threads> (default 0, one per thread)\n "
+                + "Sql=<query executed by the execute and fullscan workloads>\n "
+                + "Config=<File path to HPCC connection config file, omit to run against the mock server>\n "
+                + "Rows=<mock result rows> (default 1000)\n "
+                + "LatencyMillis=<mock response latency> (default 5)\n "
+                + "JitterMillis=<mock response latency jitter> (default 0)\n "
+                + "ErrorRate=<fraction of mock responses failing> (default 0)\n");
+        System.out.println(" eg. HPCCDriverLoadTest Workload=fullscan Threads=16 Connections=2 Rows=100000 LatencyMillis=20");
+        System.out.println();
+        System.out.println("********************************************************************\n");
+        System.exit(0);
+    }
+
+    private static int intArg(Properties args, String name, int defaultValue)
+    {
+        return HPCCJDBCUtils.stringToInt(args.getProperty(name.toUpperCase()), defaultValue);
+    }
+
+    private static long percentile(long [] sorted, double percentile)
+    {
+        if (sorted.length == 0)
+            return 0;
+
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.min(Math.max(index, 0), sorted.length - 1)];
+    }
+
+    private static String millis(long nanos)
+    {
+        return String.format("%.3f ms", nanos / 1000000.0);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, SQLException
+    {
+        Properties testArgs = new Properties();
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equalsIgnoreCase("-h") || args[i].equalsIgnoreCase("-help"))
+                usage();
+
+            int separator = args[i].indexOf('=');
+            if (separator > 0)
+                testArgs.put(args[i].substring(0, separator).trim().toUpperCase(), HPCCJDBCUtils.handleQuotedString(args[i].substring(separator + 1).trim()));
+        }
+
+        String workload = testArgs.getProperty("WORKLOAD", HPCCDriverLoadTestThread.WORKLOADEXECUTE).toLowerCase();
+        if (!workload.equals(HPCCDriverLoadTestThread.WORKLOADCONNECT) && !workload.equals(HPCCDriverLoadTestThread.WORKLOADEXECUTE)
+                && !workload.equals(HPCCDriverLoadTestThread.WORKLOADFULLSCAN))
+        {
+            System.out.println("Unknown workload: " + workload);
+            usage();
+        }
+
+        int threadCount = intArg(testArgs, "Threads", 8);
+        int iterations = intArg(testArgs, "Iterations", 100);
+        int connectionCount = workload.equals(HPCCDriverLoadTestThread.WORKLOADCONNECT) ? 0 : Math.max(0, intArg(testArgs, "Connections", 0));
+        String sql = testArgs.getProperty("SQL", DEFAULTSQL);
+
+        Properties connectionProps = new Properties();
+        HPCCMockESPServer mock = null;
+        if (testArgs.containsKey("CONFIG"))
+        {
+            FileInputStream loadparams = new FileInputStream(new File(testArgs.getProperty("CONFIG")));
+            connectionProps.load(loadparams);
+            loadparams.close();
+        }
+        else
+        {
+            mock = new HPCCMockESPServer();
+            mock.setResultRows(intArg(testArgs, "Rows", 1000));
+            mock.setLatency(intArg(testArgs, "LatencyMillis", 5), intArg(testArgs, "JitterMillis", 0));
+            mock.setErrorRate(Double.parseDouble(testArgs.getProperty("ERRORRATE", "0")));
+            mock.start(0);
+
+            connectionProps.put("ServerAddress", mock.getServerAddress());
+            connectionProps.put("LazyLoad", "true");
+        }
+
+        if (!connectionProps.containsKey("TraceLevel"))
+            connectionProps.put("TraceLevel", "OFF");
+
+        System.out.println("-----------------------HPCCJDBC Driver Load Test------------------------");
+        System.out.println(" Target:     " + (mock != null ? "mock " + mock.getServerAddress() : connectionProps.getProperty("ServerAddress")));
+        System.out.println(" Workload:   " + workload + " x " + iterations + " on " + threadCount + " threads"
+                + (connectionCount > 0 ? " sharing " + connectionCount + " connections" : ""));
+        if (!workload.equals(HPCCDriverLoadTestThread.WORKLOADCONNECT))
+            System.out.println(" Sql:        " + sql);
+
+        HPCCDriver driver = new HPCCDriver();
+        Connection [] connections = new Connection[connectionCount];
+        for (int i = 0; i < connectionCount; i++)
+            connections[i] = driver.connect("", connectionProps);
+
+        CountDownLatch start = new CountDownLatch(1);
+        HPCCDriverLoadTestThread [] threads = new HPCCDriverLoadTestThread[threadCount];
+        for (int i = 0; i < threadCount; i++)
+        {
+            if (connectionCount > 0)
+                threads[i] = new HPCCDriverLoadTestThread(driver, connections[i % connectionCount], workload, sql, iterations, start);
+            else
+                threads[i] = new HPCCDriverLoadTestThread(driver, connectionProps, workload, sql, iterations, start);
+            threads[i].start();
+        }
+
+        //the execute workloads connect before the start signal, give them a moment so connecting is not measured
+        Thread.sleep(workload.equals(HPCCDriverLoadTestThread.WORKLOADCONNECT) ? 0 : 1000);
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (HPCCDriverLoadTestThread thread : threads)
+            thread.join();
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        for (Connection connection : connections)
+        {
+            if (connection != null)
+                connection.close();
+        }
+
+        int failures = 0;
+        long rowsRead = 0;
+        long [] latencies = new long[0];
+        Exception lastFailure = null;
+        for (HPCCDriverLoadTestThread thread : threads)
+        {
+            long [] threadLatencies = thread.getLatencies();
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + threadLatencies.length);
+            System.arraycopy(threadLatencies, 0, latencies, offset, threadLatencies.length);
+
+            failures += thread.getFailures();
+            rowsRead += thread.getRowsRead();
+            if (thread.getLastFailure() != null)
+                lastFailure = thread.getLastFailure();
+        }
+        Arrays.sort(latencies);
+
+        double elapsedSeconds = elapsedNanos / 1000000000.0;
+        System.out.println("========================================================================");
+        System.out.println(String.format(" Completed:  %d ok, %d failed in %.2f s", latencies.length, failures, elapsedSeconds));
+        System.out.println(String.format(" Throughput: %.1f ops/s", latencies.length / elapsedSeconds));
+        if (rowsRead > 0)
+            System.out.println(String.format(" Rows read:  %d (%.0f rows/s)", rowsRead, rowsRead / elapsedSeconds));
+        System.out.println(" Latency:    p50 " + millis(percentile(latencies, 50)) + ", p90 " + millis(percentile(latencies, 90))
+                + ", p99 " + millis(percentile(latencies, 99)) + ", p99.9 " + millis(percentile(latencies, 99.9))
+                + ", max " + millis(percentile(latencies, 100)));
+        if (lastFailure != null)
+            System.out.println(" Last failure: " + lastFailure);
+
+        if (mock != null)
+        {
+            System.out.println(" Mock requests:");
+            for (Map.Entry<String, Long> count : mock.getRequestCounts().entrySet())
+                System.out.println("   " + count.getKey() + ": " + count.getValue() + " (" + mock.getErrorCount(count.getKey()) + " failed)");
+            System.out.println(String.format("   %.1f MB sent", mock.getBytesSent() / (1024.0 * 1024.0)));
+            mock.stop();
+        }
+
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,166 @@
+package org.hpccsystems.jdbcdriver.tests;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import org.hpccsystems.jdbcdriver.HPCCDriver;
+
+public class HPCCDriverLoadTestThread extends Thread
+{
+    public static final String WORKLOADCONNECT  = "connect";
+    public static final String WORKLOADEXECUTE  = "execute";
+    public static final String WORKLOADFULLSCAN = "fullscan";
+
+    private HPCCDriver     thedriver;
+    private Properties     theprops;
+    private String         theworkload;
+    private String         thesql;
+    private int            theiterations;
+    private CountDownLatch startsignal;
+    private Connection     sharedconnection;
+    private long []        latencies;
+    private int            completed;
+    private int            failures;
+    private long           rowsRead;
+    private Exception      lastfailure;
+
+    public HPCCDriverLoadTestThread(HPCCDriver driver, Properties connprops, String workload, String SqlStr, int iterations, CountDownLatch start)
+    {
+        thedriver = driver;
+        theprops = connprops;
+        theworkload = workload;
+        thesql = SqlStr;
+        theiterations = iterations;
+        startsignal = start;
+        sharedconnection = null;
+        latencies = new long[iterations];
+        completed = 0;
+        failures = 0;
+        rowsRead = 0;
+    }
+
+    /**
+     * Runs the execute and fullscan workloads on the given connection, shared with other threads, rather than on its own.
+     */
+    public HPCCDriverLoadTestThread(HPCCDriver driver, Connection shared, String workload, String SqlStr, int iterations, CountDownLatch start)
+    {
+        this(driver, (Properties) null, workload, SqlStr, iterations, start);
+        sharedconnection = shared;
+    }
+
+    @Override
+    public void run()
+    {
+        Connection connection = null;
+        try
+        {
+            if (!WORKLOADCONNECT.equals(theworkload) && sharedconnection == null)
+                connection = thedriver.connect("", theprops);
+
+            startsignal.await();
+
+            for (int i = 0; i < theiterations; i++)
+            {
+                long start = System.nanoTime();
+                try
+                {
+                    if (WORKLOADCONNECT.equals(theworkload))
+                        connect();
+                    else
+                        execute(sharedconnection != null ? sharedconnection : connection, WORKLOADFULLSCAN.equals(theworkload));
+
+                    latencies[completed++] = System.nanoTime() - start;
+                }
+                catch (Exception e)
+                {
+                    lastfailure = e;
+                    failures++;
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            lastfailure = e;
+            failures = theiterations - completed;
+        }
+        finally
+        {
+            if (connection != null)
+            {
+                try
+                {
+                    connection.close();
+                }
+                catch (Exception e) {}
+            }
+        }
+    }
+
+    private void connect() throws Exception
+    {
+        Connection connection = thedriver.connect("", theprops);
+        if (connection == null)
+            throw new Exception("Could not connect");
+
+        try
+        {
+            if (connection.getWarnings() != null)
+                throw new Exception("Connection reported warnings: " + connection.getWarnings().getNextException());
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    private void execute(Connection connection, boolean fullscan) throws Exception
+    {
+        Statement statement = connection.createStatement();
+        try
+        {
+            ResultSet resultset = statement.executeQuery(thesql);
+            if (fullscan)
+            {
+                int columns = resultset.getMetaData().getColumnCount();
+                while (resultset.next())
+                {
+                    for (int column = 1; column <= columns; column++)
+                        resultset.getString(column);
+                    rowsRead++;
+                }
+            }
+            resultset.close();
+        }
+        finally
+        {
+            statement.close();
+        }
+    }
+
+    /**
+     * Latencies in nanoseconds of the iterations which completed successfully.
+     */
+    public long [] getLatencies()
+    {
+        return Arrays.copyOf(latencies, completed);
+    }
+
+    public int getFailures()
+    {
+        return failures;
+    }
+
+    public long getRowsRead()
+    {
+        return rowsRead;
+    }
+
+    public Exception getLastFailure()
+    {
+        return lastfailure;
+    }
+}
@@ -0,0 +1,429 @@
+package org.hpccsystems.jdbcdriver.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for the ESP services the driver talks to (WsSQL, WsDfu, and the ECLWatch
+ * services reached while connecting), so load tests can run without an HPCC cluster.
+ *
+ * SOAP requests are dispatched on the name of their body element. ExecuteSQL, PrepareSQL,
+ * ExecutePreparedSQL, GetResults, GetDBMetaData (getTables), DFUQuery (getLogicalFiles) and
+ * GetDBSystemInfo are answered from the recorded responses under mockesp/, any other request
+ * gets an empty response element in the request's namespace.
+ *
+ * Result windows honor the requested ResultWindowStart/ResultWindowCount over a result of
+ * setResultRows rows built from the recorded rows in mockesp/wssqlresult.xml.
+ */
+public class HPCCMockESPServer
+{
+    private static final String        SOAPENVELOPENS      = "http://schemas.xmlsoap.org/soap/envelope/";
+    private static final String        RECORDINGS          = "mockesp/";
+    private static final String        RECORDEDRESULT      = "wssqlresult.xml";
+    private static final String        DATASETSTART        = "<Dataset name='WsSQLResult'>";
+    private static final String        DATASETEND          = "</Dataset>";
+    private static final String []     RECORDEDOPERATIONS  = {"ExecuteSQL", "PrepareSQL", "ExecutePreparedSQL", "GetResults",
+                                                                "GetDBMetaData", "DFUQuery", "GetDBSystemInfo"};
+
+    private HttpServer                 server;
+    private ExecutorService            handlers;
+    private Map<String, String>        recordings          = new ConcurrentHashMap<String, String>();
+    private String                     resultSchema;
+    private List<String>               resultRows;
+
+    private volatile int               latencyMillis       = 0;
+    private volatile int               latencyJitterMillis = 0;
+    private volatile int               resultRowCount      = 100;
+    private volatile double            errorRate           = 0.0;
+
+    private AtomicLong                 wuidSequence        = new AtomicLong();
+    private Map<String, AtomicLong>    requestCounts       = new ConcurrentHashMap<String, AtomicLong>();
+    private Map<String, AtomicLong>    errorCounts         = new ConcurrentHashMap<String, AtomicLong>();
+    private AtomicLong                 bytesSent           = new AtomicLong();
+
+    public HPCCMockESPServer() throws IOException
+    {
+        for (String operation : RECORDEDOPERATIONS)
+            recordings.put(operation, readResource(RECORDINGS + operation + ".xml").trim());
+
+        loadRecordedResult();
+    }
+
+    /**
+     * Starts listening on the given port, 0 picks a free port (see getPort).
+     */
+    public synchronized void start(int port) throws IOException
+    {
+        if (server != null)
+            throw new IllegalStateException("Mock ESP server already started");
+
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        server.createContext("/", new SoapHandler());
+        server.start();
+    }
+
+    public synchronized void stop()
+    {
+        if (server == null)
+            return;
+
+        server.stop(0);
+        handlers.shutdownNow();
+        server = null;
+    }
+
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    public String getServerAddress()
+    {
+        return "http://localhost:" + getPort();
+    }
+
+    /**
+     * Every response is delayed by latencyMillis plus a uniformly distributed 0..jitterMillis.
+     */
+    public void setLatency(int latencyMillis, int jitterMillis)
+    {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = jitterMillis;
+    }
+
+    /**
+     * Total rows of every query result, served in the windows the driver requests.
+     */
+    public void setResultRows(int rowCount)
+    {
+        this.resultRowCount = rowCount;
+    }
+
+    /**
+     * Fraction (0..1) of requests answered with an ESP exception instead of the recorded response.
+     */
+    public void setErrorRate(double errorRate)
+    {
+        this.errorRate = errorRate;
+    }
+
+    public long getRequestCount(String operation)
+    {
+        AtomicLong count = requestCounts.get(operation);
+        return count == null ? 0 : count.get();
+    }
+
+    public long getErrorCount(String operation)
+    {
+        AtomicLong count = errorCounts.get(operation);
+        return count == null ? 0 : count.get();
+    }
+
+    public Map<String, Long> getRequestCounts()
+    {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : requestCounts.entrySet())
+            counts.put(entry.getKey(), entry.getValue().get());
+        return counts;
+    }
+
+    public long getBytesSent()
+    {
+        return bytesSent.get();
+    }
+
+    private static void increment(Map<String, AtomicLong> counts, String operation)
+    {
+        AtomicLong count = counts.get(operation);
+        if (count == null)
+        {
+            counts.putIfAbsent(operation, new AtomicLong());
+            count = counts.get(operation);
+        }
+        count.incrementAndGet();
+    }
+
+    private class SoapHandler implements HttpHandler
+    {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            try
+            {
+                String request = new String(readFully(exchange.getRequestBody()), StandardCharsets.UTF_8);
+                byte [] response;
+
+                if (!"POST".equalsIgnoreCase(exchange.getRequestMethod()) || request.isEmpty())
+                {
+                    response = new byte[0];
+                }
+                else
+                {
+                    Element operationElement = parseOperation(request);
+                    String operation = operationElement.getLocalName();
+                    if (operation.endsWith("Request"))
+                        operation = operation.substring(0, operation.length() - "Request".length());
+
+                    increment(requestCounts, operation);
+                    simulateLatency();
+
+                    String body;
+                    if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate)
+                    {
+                        increment(errorCounts, operation);
+                        body = createException(operation, operationElement.getNamespaceURI());
+                    }
+                    else
+                        body = createResponse(operation, operationElement);
+
+                    response = envelope(body).getBytes(StandardCharsets.UTF_8);
+                }
+
+                exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=UTF-8");
+                exchange.sendResponseHeaders(200, response.length == 0 ? -1 : response.length);
+                if (response.length > 0)
+                {
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(response);
+                    out.close();
+                    bytesSent.addAndGet(response.length);
+                }
+            }
+            catch (Exception e)
+            {
+                byte [] fault = envelope("<soap:Fault><faultcode>soap:Server</faultcode><faultstring>"
+                        + escape(String.valueOf(e.getMessage())) + "</faultstring></soap:Fault>").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=UTF-8");
+                exchange.sendResponseHeaders(500, fault.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(fault);
+                out.close();
+            }
+            finally
+            {
+                exchange.close();
+            }
+        }
+    }
+
+    private void simulateLatency() throws InterruptedException
+    {
+        int delay = latencyMillis;
+        if (latencyJitterMillis > 0)
+            delay += ThreadLocalRandom.current().nextInt(latencyJitterMillis + 1);
+        if (delay > 0)
+            Thread.sleep(delay);
+    }
+
+    private static Element parseOperation(String request) throws Exception
+    {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        DocumentBuilder db = dbf.newDocumentBuilder();
+        Document dom = db.parse(new InputSource(new StringReader(request)));
+
+        NodeList bodies = dom.getElementsByTagNameNS(SOAPENVELOPENS, "Body");
+        if (bodies.getLength() == 0)
+            throw new IllegalArgumentException("Request is not a SOAP envelope");
+
+        for (Node child = bodies.item(0).getFirstChild(); child != null; child = child.getNextSibling())
+        {
+            if (child.getNodeType() == Node.ELEMENT_NODE)
+                return (Element) child;
+        }
+        throw new IllegalArgumentException("SOAP request body is empty");
+    }
+
+    private static String getRequestValue(Element operationElement, String name)
+    {
+        NodeList values = operationElement.getElementsByTagNameNS("*", name);
+        if (values.getLength() == 0)
+            return null;
+        return values.item(0).getTextContent().trim();
+    }
+
+    private static int getRequestInt(Element operationElement, String name, int defaultValue)
+    {
+        String value = getRequestValue(operationElement, name);
+        if (value == null || value.isEmpty())
+            return defaultValue;
+
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e)
+        {
+            return defaultValue;
+        }
+    }
+
+    private String createResponse(String operation, Element operationElement)
+    {
+        String namespace = operationElement.getNamespaceURI() == null ? "" : operationElement.getNamespaceURI();
+        String recording = recordings.get(operation);
+        if (recording == null)
+            return "<" + operation + "Response xmlns=\"" + namespace + "\"/>";
+
+        //WsSQL spells the workunit id element WuId, older service versions WUID
+        String wuid = getRequestValue(operationElement, "WuId");
+        if (wuid == null)
+            wuid = getRequestValue(operationElement, "WUID");
+        if (wuid == null || wuid.isEmpty())
+            wuid = String.format("W20240101-%06d", wuidSequence.incrementAndGet());
+
+        int totalRows = resultRowCount;
+        int windowStart = Math.min(Math.max(getRequestInt(operationElement, "ResultWindowStart", 0), 0), totalRows);
+        int windowCount = getRequestInt(operationElement, "ResultWindowCount", totalRows);
+        if (windowCount <= 0 || windowStart + windowCount > totalRows)
+            windowCount = totalRows - windowStart;
+
+        String response = recording.replace("{namespace}", namespace).replace("{wuid}", wuid)
+                                   .replace("{windowstart}", String.valueOf(windowStart))
+                                   .replace("{windowcount}", String.valueOf(windowCount));
+        if (response.contains("{result}"))
+            response = response.replace("{result}", escape(createResult(windowStart, windowCount, totalRows)));
+
+        return response;
+    }
+
+    private static String createException(String operation, String namespace)
+    {
+        return "<" + operation + "Response xmlns=\"" + (namespace == null ? "" : namespace) + "\"><Exceptions><Source>MockESP</Source>"
+                + "<Exception><Code>-1</Code><Audience>user</Audience><Source>MockESP</Source><Message>Injected " + operation
+                + " failure</Message></Exception></Exceptions></" + operation + "Response>";
+    }
+
+    /**
+     * WsSQL result for rows [windowStart, windowStart + windowCount) of a totalRows result.
+     */
+    public String createResult(int windowStart, int windowCount, int totalRows)
+    {
+        StringBuilder result = new StringBuilder(resultSchema.length() + windowCount * 400);
+        result.append(resultSchema).append(DATASETSTART);
+        for (int i = windowStart; i < windowStart + windowCount; i++)
+            result.append(resultRows.get(i % resultRows.size()));
+        result.append(DATASETEND);
+        result.append("<Dataset name='WsSQLCount'><Row><WSSQLSelectQueryResultCount>").append(totalRows)
+              .append("</WSSQLSelectQueryResultCount></Row></Dataset>");
+        return result.toString();
+    }
+
+    private static String envelope(String body)
+    {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><soap:Envelope xmlns:soap=\"" + SOAPENVELOPENS + "\"><soap:Body>"
+                + body + "</soap:Body></soap:Envelope>";
+    }
+
+    private static String escape(String text)
+    {
+        StringBuilder escaped = new StringBuilder(text.length() + text.length() / 8);
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            switch (c)
+            {
+                case '<':
+                    escaped.append("&lt;");
+                    break;
+                case '>':
+                    escaped.append("&gt;");
+                    break;
+                case '&':
+                    escaped.append("&amp;");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private void loadRecordedResult() throws IOException
+    {
+        String recorded = readResource(RECORDINGS + RECORDEDRESULT);
+        int datasetStart = recorded.indexOf(DATASETSTART);
+        int datasetEnd = recorded.indexOf(DATASETEND, datasetStart);
+        resultSchema = recorded.substring(0, datasetStart);
+
+        List<String> rows = new ArrayList<String>();
+        int rowStart = recorded.indexOf("<Row>", datasetStart);
+        while (rowStart >= 0 && rowStart < datasetEnd)
+        {
+            int rowEnd = recorded.indexOf("</Row>", rowStart) + "</Row>".length();
+            rows.add(recorded.substring(rowStart, rowEnd));
+            rowStart = recorded.indexOf("<Row>", rowEnd);
+        }
+        resultRows = rows;
+    }
+
+    private static String readResource(String name) throws IOException
+    {
+        InputStream in = HPCCMockESPServer.class.getResourceAsStream(name);
+        if (in == null)
+            throw new IOException("Mock ESP recording not found: " + name);
+
+        try
+        {
+            return new String(readFully(in), StandardCharsets.UTF_8);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static byte [] readFully(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte [] buffer = new byte[8192];
+        int length;
+        while ((length = in.read(buffer)) != -1)
+            bytes.write(buffer, 0, length);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Runs the mock standalone: HPCCMockESPServer [port] [resultRows] [latencyMillis]
+     */
+    public static void main(String[] args) throws Exception
+    {
+        HPCCMockESPServer mock = new HPCCMockESPServer();
+        if (args.length > 1)
+            mock.setResultRows(Integer.parseInt(args[1]));
+        if (args.length > 2)
+            mock.setLatency(Integer.parseInt(args[2]), 0);
+
+        mock.start(args.length > 0 ? Integer.parseInt(args[0]) : 8510);
+        System.out.println("Mock ESP listening on " + mock.getServerAddress());
+    }
+}